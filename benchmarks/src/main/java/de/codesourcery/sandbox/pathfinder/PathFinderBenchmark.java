@@ -0,0 +1,177 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Throughput of path queries on generated scenes.
+ *
+ * <p>Every trial generates a scene from a seed and picks a fixed set of queries between
+ * random free cells, so results for different search modes and scene implementations
+ * are comparable. Besides queries per second, the <code>expansions</code> and
+ * <code>queries</code> counters report the nodes expanded and queries run per iteration,
+ * their ratio is the number of expansions per query.</p>
+ *
+ * <pre>
+ * (cd .. ; mvn install -DskipTests)
+ * mvn package
+ * java -jar target/benchmarks.jar PathFinderBenchmark -prof gc
+ * java -jar target/benchmarks.jar PathFinderBenchmark -p size=1000 -p generator=MAZE,ROOMS -p searchMode=JPS
+ * java -jar target/benchmarks.jar PathFinderBenchmark -p sceneType=SCENE -p searchMode=ARRAY_ASTAR,BIDIRECTIONAL_ASTAR
+ * </pre>
+ * <p><code>-prof gc</code> adds the allocation rate (<code>gc.alloc.rate.norm</code> is bytes per query).
+ * The object-based {@link SearchMode#ASTAR} gets very slow on the larger scenes, use
+ * <code>-p</code> to restrict the parameters.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g","-Xmx4g"})
+public class PathFinderBenchmark
+{
+    private static final int QUERY_COUNT = 64;
+
+    public static enum SceneType
+    {
+        /**
+         * {@link Scene}, one byte per cell.
+         */
+        SCENE {
+            @Override
+            public IScene createScene(int width, int height) {
+                return new Scene( width , height );
+            }
+        },
+        /**
+         * {@link QuadTreeScene} storing regions, the point mode would need one
+         * node per occupied cell.
+         */
+        QUADTREE {
+            @Override
+            public IScene createScene(int width, int height) {
+                return new QuadTreeScene( width , height , QuadTreeScene.Mode.REGIONS );
+            }
+        };
+
+        public abstract IScene createScene(int width,int height);
+    }
+
+    @Param({"100","500","1000","4000"})
+    public int size;
+
+    @Param({"OPEN","NOISE_10","NOISE_25","NOISE_35","MAZE","ROOMS"})
+    public SceneGenerator generator;
+
+    @Param({"SCENE","QUADTREE"})
+    public SceneType sceneType;
+
+    @Param({"ASTAR","ARRAY_ASTAR_DIAGONAL","JPS"})
+    public SearchMode searchMode;
+
+    @Param({"42"})
+    public long seed;
+
+    private IPathFinder finder;
+    private PathNode[] starts;
+    private PathNode[] targets;
+    private int nextQuery;
+
+    /**
+     * Per-iteration counters, reported next to the throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+        public long queries;
+        public long expansions;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            queries = 0;
+            expansions = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final IScene scene = generator.generate( sceneType.createScene( size , size ) , seed );
+        finder = searchMode.createPathFinder( scene );
+
+        final Random rnd = new Random( seed );
+        starts = new PathNode[ QUERY_COUNT ];
+        targets = new PathNode[ QUERY_COUNT ];
+        for ( int i = 0 ; i < QUERY_COUNT ; i++ ) {
+            starts[i] = randomFreeCell( rnd , scene );
+            targets[i] = randomFreeCell( rnd , scene );
+        }
+        nextQuery = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if ( finder instanceof HierarchicalPathFinder ) {
+            ((HierarchicalPathFinder) finder).dispose();
+        } else if ( finder instanceof DStarLitePathFinder ) {
+            ((DStarLitePathFinder) finder).dispose();
+        }
+        finder = null;
+    }
+
+    @Benchmark
+    public PathNode findPath(Counters counters)
+    {
+        final int query = nextQuery;
+        nextQuery = ( query + 1 ) % QUERY_COUNT;
+        final PathNode result = finder.findPath( starts[ query ] , targets[ query ] );
+        counters.queries++;
+        counters.expansions += getExpandedNodes( finder );
+        return result;
+    }
+
+    private static int getExpandedNodes(IPathFinder finder)
+    {
+        if ( finder instanceof AbstractPathFinder ) {
+            return ((AbstractPathFinder) finder).getExpandedNodes();
+        } else if ( finder instanceof DStarLitePathFinder ) {
+            return ((DStarLitePathFinder) finder).getExpandedNodes();
+        } else if ( finder instanceof PathFinder ) {
+            return ((PathFinder) finder).getExpandedNodes();
+        }
+        return 0;
+    }
+
+    private static PathNode randomFreeCell(Random rnd,IScene scene)
+    {
+        while ( true )
+        {
+            final int x = rnd.nextInt( scene.getWidth() );
+            final int y = rnd.nextInt( scene.getHeight() );
+            if ( scene.isFree( x , y ) ) {
+                return new PathNode( x , y );
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction time of a {@link QuadTree} from a random point set, calling
+ * {@link QuadTree#store(int, int, Object)} per point versus {@link QuadTree#bulkLoad(int, int, int[], int[], Object[], ForkJoinPool)}.
+ *
+ * <pre>
+ * (cd .. ; mvn install -DskipTests)
+ * mvn package
+ * java -jar target/benchmarks.jar QuadTreeBuildBenchmark -prof gc
+ * </pre>
+ * <p>With <code>-prof gc</code>, <code>gc.alloc.rate.norm</code> is the number of bytes allocated per build.
+ * For the incremental build that is all nodes created along the way, for the bulk load the final nodes 
+ * plus the temporary key/index arrays, which are only alive during the build and bound its peak.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g","-Xmx4g"})
+public class QuadTreeBuildBenchmark
+{
+    @Param({"100000","1000000"})
+    public int points;
+
+    // edge length of the square the points are spread over
+    @Param({"4096"})
+    public int size;
+
+    @Param({"1","4"})
+    public int parallelism;
+
+    @Param({"42"})
+    public long seed;
+
+    private int[] xs;
+    private int[] ys;
+    private Byte[] values;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        final Random rnd = new Random( seed );
+        xs = new int[ points ];
+        ys = new int[ points ];
+        values = new Byte[ points ];
+        for ( int i = 0 ; i < points ; i++ )
+        {
+            xs[i] = rnd.nextInt( size );
+            ys[i] = rnd.nextInt( size );
+            values[i] = IScene.OCCUPIED;
+        }
+        pool = new ForkJoinPool( parallelism );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public QuadTree<Byte> incrementalStore()
+    {
+        final QuadTree<Byte> tree = new QuadTree<Byte>( size , size );
+        for ( int i = 0 ; i < points ; i++ ) {
+            tree.store( xs[i] , ys[i] , values[i] );
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public QuadTree<Byte> bulkLoad() {
+        return QuadTree.bulkLoad( size , size , xs , ys , values , pool );
+    }
+}
@@ -0,0 +1,291 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Base class for path finders that keep all search state in primitive arrays 
+ * indexed by cell (<code>y*width+x</code>).
+ * 
+ * <p>The arrays are allocated once per instance and re-used for every query. Instead of 
+ * clearing them, each query increments a generation counter and a cell's g-score/parent 
+ * are only considered valid if its stamp matches the current generation.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public abstract class AbstractPathFinder implements IPathFinder
+{
+    public static final int STRAIGHT_COST = 10;
+    public static final int DIAGONAL_COST = 14;
+
+    protected final IScene scene;
+    protected final int width;
+    protected final int height;
+
+    protected final int[] gScore;
+    protected final int[] parent;
+    protected final CellPriorityQueue openList;
+
+    // generation a cell was last reached in
+    private final int[] visited;
+    // generation a cell was last expanded in
+    private final int[] closed;
+    private int generation;
+
+    private int expandedNodes;
+    private int heuristicCalls;
+
+    private volatile ISearchListener searchListener;
+    private volatile ConnectivityIndex connectivityIndex;
+
+    protected AbstractPathFinder(IScene scene) 
+    {
+        this.scene = scene;
+        this.width = scene.getWidth();
+        this.height = scene.getHeight();
+
+        final int cellCount = width * height;
+        this.gScore = new int[ cellCount ];
+        this.parent = new int[ cellCount ];
+        this.visited = new int[ cellCount ];
+        this.closed = new int[ cellCount ];
+        this.openList = new CellPriorityQueue( cellCount );
+    }
+
+    /**
+     * Sets the listener that receives the statistics of every query.
+     * 
+     * @param listener listener or <code>null</code>
+     */
+    @Override
+    public final void setSearchListener(ISearchListener listener) {
+        this.searchListener = listener;
+    }
+
+    @Override
+    public final void setConnectivityIndex(ConnectivityIndex index) {
+        this.connectivityIndex = index;
+    }
+
+    @Override
+    public final PathNode findPath(PathNode start, PathNode target)
+    {
+        final ISearchListener listener = searchListener;
+        if ( listener == null ) {
+            return doFindPath( start , target );
+        }
+        final long startTime = System.nanoTime();
+        final PathNode result = doFindPath( start , target );
+        listener.searchFinished( this , getStatistics( System.nanoTime() - startTime , result != null ) );
+        return result;
+    }
+
+    private PathNode doFindPath(PathNode start, PathNode target)
+    {
+        if ( start.equals( target ) ) { // trivial case
+            startSearch();
+            return start;
+        }
+        final ConnectivityIndex index = connectivityIndex;
+        if ( index != null && ! index.isConnected( start.x() , start.y() , target.x() , target.y() ) ) {
+            startSearch();
+            return null;
+        }
+        final int targetCell = findPath( cellIndex( start.x() , start.y() ) , cellIndex( target.x() , target.y() ) );
+        return targetCell == -1 ? null : toPathNode( targetCell );
+    }
+
+    /**
+     * Returns the statistics of the last query.
+     * 
+     * @param wallTimeNanos
+     * @param pathFound
+     * @return
+     */
+    protected SearchStatistics getStatistics(long wallTimeNanos,boolean pathFound) 
+    {
+        return new SearchStatistics( expandedNodes , openList.getInsertCount() , openList.getPeakSize() , 
+                openList.getUpdateCount() , heuristicCalls , wallTimeNanos , pathFound );
+    }
+
+    /**
+     * Runs the actual search.
+     * 
+     * @param startCell
+     * @param targetCell
+     * @return the target cell or -1 if no path was found
+     */
+    protected abstract int findPath(int startCell,int targetCell);
+
+    /**
+     * Invalidates the state of the previous query.
+     */
+    protected final void startSearch() 
+    {
+        openList.clear();
+        generation++;
+        if ( generation == Integer.MAX_VALUE ) { // wrap-around, happens every 2^31 queries
+            Arrays.fill( visited , 0 );
+            Arrays.fill( closed , 0 );
+            generation = 1;
+        }
+        expandedNodes = 0;
+        heuristicCalls = 0;
+        openList.resetStatistics();
+    }
+
+    /**
+     * Returns the generation of the current query, cells 
+     * stamped with this value belong to the current query.
+     * 
+     * @return
+     */
+    protected final int generation() {
+        return generation;
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last query.
+     * 
+     * @return
+     */
+    public final int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    protected final void incExpandedNodes() {
+        expandedNodes++;
+    }
+
+    protected final int getHeuristicCalls() {
+        return heuristicCalls;
+    }
+
+    protected final void incHeuristicCalls() {
+        heuristicCalls++;
+    }
+
+    protected final boolean isVisited(int cell) {
+        return visited[cell] == generation;
+    }
+
+    protected final boolean isClosed(int cell) {
+        return closed[cell] == generation;
+    }
+
+    protected final void markClosed(int cell) {
+        closed[cell] = generation;
+        expandedNodes++;
+    }
+
+    /**
+     * Records a (better) way to reach a cell.
+     * 
+     * @param cell
+     * @param g
+     * @param parentCell parent cell or -1
+     */
+    protected final void visit(int cell,int g,int parentCell) 
+    {
+        visited[cell] = generation;
+        gScore[cell] = g;
+        parent[cell] = parentCell;
+    }
+
+    /**
+     * Bounds-checked {@link IScene#isFree(int, int)}.
+     * 
+     * @param x
+     * @param y
+     * @return <code>false</code> if the coordinates are outside of the scene or the cell is occupied
+     */
+    protected final boolean isFree(int x,int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && scene.isFree( x , y );
+    }
+
+    /**
+     * Returns the cost of the cheapest path between two cells on an 
+     * empty grid when moving along the 4 axis.
+     * 
+     * @param xDelta
+     * @param yDelta
+     * @return
+     */
+    protected static int manhattanDistance(int xDelta,int yDelta) 
+    {
+        final int dx = xDelta >= 0 ? xDelta : -xDelta;
+        final int dy = yDelta >= 0 ? yDelta : -yDelta;
+        return ( dx + dy ) * STRAIGHT_COST;
+    }
+
+    /**
+     * Returns the cost of the cheapest path between two cells on an 
+     * empty grid when moving along the axis and diagonals.
+     * 
+     * @param xDelta
+     * @param yDelta
+     * @return
+     */
+    protected static int octileDistance(int xDelta,int yDelta) 
+    {
+        final int dx = xDelta >= 0 ? xDelta : -xDelta;
+        final int dy = yDelta >= 0 ? yDelta : -yDelta;
+        return dx < dy ? 
+                STRAIGHT_COST * (dy-dx) + DIAGONAL_COST * dx : 
+                STRAIGHT_COST * (dx-dy) + DIAGONAL_COST * dy;
+    }
+
+    protected final int cellIndex(int x,int y) {
+        return y*width+x;
+    }
+
+    protected final int cellX(int cell) {
+        return cell % width;
+    }
+
+    protected final int cellY(int cell) {
+        return cell / width;
+    }
+
+    /**
+     * Returns the open list key for a node, orders by <code>f</code> and 
+     * prefers larger <code>g</code> values when <code>f</code> is equal.
+     * 
+     * @param f
+     * @param g
+     * @return
+     */
+    protected static long openListKey(int f,int g) {
+        return ( (long) f << 32 ) | ( Integer.MAX_VALUE - g );
+    }
+
+    /**
+     * Creates a {@link PathNode} chain by following the parent cells 
+     * starting at the given cell.
+     * 
+     * @param targetCell
+     * @return
+     */
+    protected PathNode toPathNode(int targetCell) 
+    {
+        int count = 0;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            count++;
+        }
+        final int[] cells = new int[count];
+        int i = count;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            cells[--i] = cell;
+        }
+
+        PathNode result = null;
+        for ( int cell : cells ) 
+        {
+            result = new PathNode( cellX( cell ) , cellY( cell ) , result );
+            result.g( gScore[cell] );
+            result.f( gScore[cell] );
+        }
+        return result;
+    }
+}
@@ -1,25 +1,42 @@
 package de.codesourcery.sandbox.pathfinder;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class AbstractScene implements IScene
 {
     protected final int width;
     protected final int height;
     
+    private final List<ISceneListener> listeners = new CopyOnWriteArrayList<>();
+    
+    // only modified by the writing thread
+    private volatile long version;
+    
     public static IScene createInstance(int width,int height) {
         return new Scene(width,height);
     }
     
     protected AbstractScene(int width,int height) 
+    {
+        this(width,height,0);
+    }
+    
+    /**
+     * Creates a scene that starts at a given version, for snapshots.
+     */
+    protected AbstractScene(int width,int height,long version) 
     {
         if ( width < 1 || height < 1 ) {
             throw new IllegalArgumentException("Invalid width/height: "+width+" x "+height);
         }
         this.width = width;
         this.height = height;
+        this.version = version;
     }
     
     @Override
@@ -34,6 +51,231 @@ public abstract class AbstractScene implements IScene
         return width;
     }
 
+    @Override
+    public final long getVersion()
+    {
+        return version;
+    }
+    
+    @Override
+    public final void addSceneListener(ISceneListener listener)
+    {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        listeners.add( listener );
+    }
+    
+    @Override
+    public final void removeSceneListener(ISceneListener listener)
+    {
+        listeners.remove( listener );
+    }
+    
+    /**
+     * To be invoked by subclasses after cells have been changed, increments
+     * the scene version and notifies all listeners.
+     * 
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     */
+    protected final void notifyCellsChanged(int x,int y,int width,int height) 
+    {
+        version++;
+        if ( listeners.isEmpty() ) {
+            return;
+        }
+        for ( ISceneListener l : listeners ) {
+            l.cellsChanged( this , x , y , width , height );
+        }
+    }
+
+    @Override
+    public boolean hasLineOfSight(int x1, int y1, int x2, int y2)
+    {
+        if ( x1 < 0 || y1 < 0 || x2 < 0 || y2 < 0 || x1 >= width || x2 >= width || y1 >= height || y2 >= height ) {
+            return false;
+        }
+
+        // supercover traversal, collecting the cells of each row into one span
+        final int nx = Math.abs( x2 - x1 );
+        final int ny = Math.abs( y2 - y1 );
+        final int stepX = x2 > x1 ? 1 : -1;
+        final int stepY = y2 > y1 ? 1 : -1;
+
+        int x = x1;
+        int y = y1;
+        int spanStart = x1;
+        for ( int ix = 0 , iy = 0 ; ix < nx || iy < ny ; ) 
+        {
+            final long decision = ( 1 + 2L * ix ) * ny - ( 1 + 2L * iy ) * nx;
+            if ( decision == 0 ) 
+            {
+                // through a corner, (x+stepX,y) and (x,y+stepY) are both touched
+                x += stepX;
+                if ( ! isRowSpanFree( y , spanStart , x ) ) {
+                    return false;
+                }
+                spanStart = x - stepX;
+                y += stepY;
+                ix++;
+                iy++;
+            } 
+            else if ( decision < 0 ) {
+                x += stepX;
+                ix++;
+            } 
+            else 
+            {
+                if ( ! isRowSpanFree( y , spanStart , x ) ) {
+                    return false;
+                }
+                y += stepY;
+                spanStart = x;
+                iy++;
+            }
+        }
+        return isRowSpanFree( y , spanStart , x );
+    }
+
+    /**
+     * Returns whether all cells of a row span are free, used by {@link #hasLineOfSight(int, int, int, int)}.
+     * 
+     * <p>Subclasses should override this method if they can check runs of cells faster 
+     * than cell by cell.</p>
+     * 
+     * @param y
+     * @param xa first or last column of the span (inclusive)
+     * @param xb other end of the span (inclusive)
+     * @return
+     */
+    protected boolean isRowSpanFree(int y,int xa,int xb) 
+    {
+        final int end = Math.max( xa , xb );
+        for ( int x = Math.min( xa , xb ) ; x <= end ; x++ ) 
+        {
+            if ( ! isFree( x , y ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a read-only copy of all cells, subclasses should override this method
+     * if they can share their data with snapshots.
+     */
+    @Override
+    public IScene snapshot() {
+        return Scene.readOnlyCopy( this );
+    }
+    
+    @Override
+    public final void visitOccupiedSpans(IRowSpanVisitor visitor) {
+        visitOccupiedSpans( 0 , height , visitor );
+    }
+    
+    /**
+     * Visits occupied spans by reading cell by cell.
+     * 
+     * <p>Subclasses should override this method if they can find runs of cells faster.</p>
+     */
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor)
+    {
+        checkRows( firstRow , endRow );
+        for ( int y = firstRow ; y < endRow ; y++ ) 
+        {
+            int x = 0;
+            while ( x < width ) 
+            {
+                final byte value = read( x , y );
+                final int start = x++;
+                while ( x < width && read( x , y ) == value ) {
+                    x++;
+                }
+                if ( value != IScene.FREE ) {
+                    visitor.visit( y , start , x , value );
+                }
+            }
+        }
+    }
+    
+    protected final void checkRows(int firstRow,int endRow) 
+    {
+        if ( firstRow < 0 || endRow > height || firstRow > endRow ) {
+            throw new IllegalArgumentException("Invalid row range "+firstRow+"..."+endRow+" (height: "+height+")");
+        }
+    }
+    
+    /**
+     * Merges the runs of set bits found in consecutive 64-bit words of a row into maximal spans,
+     * for scenes that store one bit per cell.
+     */
+    protected static final class BitSpanCollector 
+    {
+        private final IRowSpanVisitor visitor;
+        private final int width;
+        
+        private int y;
+        private int start = -1;
+        private int end;
+        
+        public BitSpanCollector(IRowSpanVisitor visitor,int width) 
+        {
+            this.visitor = visitor;
+            this.width = width;
+        }
+        
+        public void startRow(int y) 
+        {
+            this.y = y;
+            this.start = -1;
+        }
+        
+        /**
+         * Adds the occupied cells of a word, words need to be added left to right.
+         * 
+         * @param bits one bit per cell, bit 0 is the leftmost cell
+         * @param originX column of bit 0
+         */
+        public void add(long bits,int originX) 
+        {
+            while ( bits != 0 ) 
+            {
+                final int from = Long.numberOfTrailingZeros( bits );
+                final long gaps = ~bits & ( 0xffffffffffffffffL << from );
+                final int to = gaps == 0 ? 64 : Long.numberOfTrailingZeros( gaps );
+                addRun( originX + from , originX + to );
+                bits = to == 64 ? 0 : bits & ( 0xffffffffffffffffL << to );
+            }
+        }
+        
+        private void addRun(int from,int to) 
+        {
+            if ( start != -1 && from == end ) {
+                end = to;
+                return;
+            }
+            endRow();
+            start = from;
+            end = to;
+        }
+        
+        /**
+         * Reports the last pending span of the current row.
+         */
+        public void endRow() 
+        {
+            if ( start != -1 && start < width ) {
+                visitor.visit( y , start , Math.min( end , width ) , IScene.OCCUPIED );
+            }
+            start = -1;
+        }
+    }
+
     public static void save(final ObjectOutputStream out,IScene scene) throws IOException
     {
         out.writeInt( scene.getWidth() );
@@ -64,9 +306,14 @@ public abstract class AbstractScene implements IScene
         final int height = in.readInt();
         final IScene result = createInstance(width,height);
         
-        while ( in.available() > 0 ) {
+        while ( true ) {
 
-            int x = in.readInt();
+            final int x;
+            try {
+                x = in.readInt();
+            } catch(EOFException e) {
+                break;
+            }
             int y = in.readInt();
             byte value = in.readByte();
             if ( value != IScene.FREE ) {
@@ -0,0 +1,103 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * A* search that keeps all state in primitive arrays.
+ * 
+ * <p>Unlike {@link PathFinder} this implementation carries <code>g</code> incrementally and 
+ * does not allocate any objects while expanding nodes.</p>
+ * 
+ * <p>When diagonal moves are enabled, a diagonal step is only possible if both
+ * cells adjacent to it along the axis are free (no corner cutting).</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class ArrayPathFinder extends AbstractPathFinder
+{
+    private final boolean allowDiagonalMoves;
+
+    public ArrayPathFinder(IScene scene) {
+        this(scene,false);
+    }
+
+    public ArrayPathFinder(IScene scene,boolean allowDiagonalMoves) {
+        super(scene);
+        this.allowDiagonalMoves = allowDiagonalMoves;
+    }
+
+    @Override
+    protected int findPath(int startCell, int targetCell)
+    {
+        startSearch();
+
+        final int targetX = cellX( targetCell );
+        final int targetY = cellY( targetCell );
+
+        visit( startCell , 0 , -1 );
+        openList.insertOrUpdate( startCell , openListKey( estimatedCost( cellX( startCell ) , cellY( startCell ) , targetX , targetY ) , 0 ) );
+
+        while ( ! openList.isEmpty() ) 
+        {
+            final int current = openList.poll();
+            if ( current == targetCell ) {
+                return current;
+            }
+            markClosed( current );
+
+            final int x = cellX( current );
+            final int y = cellY( current );
+            final int g = gScore[current] + STRAIGHT_COST;
+
+            final boolean east = isFree( x + 1 , y );
+            final boolean west = isFree( x - 1 , y );
+            final boolean south = isFree( x , y + 1 );
+            final boolean north = isFree( x , y - 1 );
+
+            if ( east ) {
+                maybeAddNeighbor( current , x + 1 , y , g , targetX , targetY );
+            }
+            if ( west ) {
+                maybeAddNeighbor( current , x - 1 , y , g , targetX , targetY );
+            }
+            if ( south ) {
+                maybeAddNeighbor( current , x , y + 1 , g , targetX , targetY );
+            }
+            if ( north ) {
+                maybeAddNeighbor( current , x , y - 1 , g , targetX , targetY );
+            }
+
+            if ( allowDiagonalMoves ) 
+            {
+                final int diagonalG = gScore[current] + DIAGONAL_COST;
+                if ( north && east && isFree( x + 1 , y - 1 ) ) {
+                    maybeAddNeighbor( current , x + 1 , y - 1 , diagonalG , targetX , targetY );
+                }
+                if ( north && west && isFree( x - 1 , y - 1 ) ) {
+                    maybeAddNeighbor( current , x - 1 , y - 1 , diagonalG , targetX , targetY );
+                }
+                if ( south && east && isFree( x + 1 , y + 1 ) ) {
+                    maybeAddNeighbor( current , x + 1 , y + 1 , diagonalG , targetX , targetY );
+                }
+                if ( south && west && isFree( x - 1 , y + 1 ) ) {
+                    maybeAddNeighbor( current , x - 1 , y + 1 , diagonalG , targetX , targetY );
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void maybeAddNeighbor(int parentCell,int x,int y,int g,int targetX,int targetY) 
+    {
+        final int cell = cellIndex( x , y );
+        if ( isClosed( cell ) || ( isVisited( cell ) && gScore[cell] <= g ) ) {
+            return;
+        }
+        visit( cell , g , parentCell );
+        openList.insertOrUpdate( cell , openListKey( g + estimatedCost( x , y , targetX , targetY ) , g ) );
+    }
+
+    private int estimatedCost(int x,int y,int targetX,int targetY) 
+    {
+        incHeuristicCalls();
+        return allowDiagonalMoves ? octileDistance( targetX - x , targetY - y ) : manhattanDistance( targetX - x , targetY - y );
+    }
+}
@@ -0,0 +1,260 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Bidirectional A* that searches forward from the start and backward from the 
+ * target at the same time, always expanding the side with the smaller open list.
+ * 
+ * <p>Whenever a cell is reached by one search that the other search has already reached, 
+ * the combined cost is a candidate for the best path (<code>mu</code>). With a consistent heuristic, 
+ * every path that has not been found yet costs at least the smallest <code>f</code> on either open list, 
+ * so the search stops as soon as one of them is no longer below <code>mu</code>. This keeps 
+ * paths optimal.</p>
+ * 
+ * <p>Uses the same movement rules as {@link ArrayPathFinder}.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class BidirectionalPathFinder extends AbstractPathFinder
+{
+    private final boolean allowDiagonalMoves;
+
+    // state of backward search, stamped with the same generation as the forward search
+    private final int[] backwardGScore;
+    private final int[] backwardParent;
+    private final int[] backwardVisited;
+    private final int[] backwardClosed;
+    private final CellPriorityQueue backwardOpenList;
+
+    private int startX;
+    private int startY;
+    private int targetX;
+    private int targetY;
+
+    // best path found so far
+    private int bestCost;
+    private int meetingCell;
+
+    public BidirectionalPathFinder(IScene scene) {
+        this(scene,false);
+    }
+
+    public BidirectionalPathFinder(IScene scene,boolean allowDiagonalMoves) 
+    {
+        super(scene);
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        final int cellCount = width * height;
+        backwardGScore = new int[ cellCount ];
+        backwardParent = new int[ cellCount ];
+        backwardVisited = new int[ cellCount ];
+        backwardClosed = new int[ cellCount ];
+        backwardOpenList = new CellPriorityQueue( cellCount );
+    }
+
+    @Override
+    protected int findPath(int startCell, int targetCell)
+    {
+        startSearch();
+        backwardOpenList.clear();
+        backwardOpenList.resetStatistics();
+        final int generation = generation();
+        if ( generation == 1 ) { // generation counter wrapped around
+            Arrays.fill( backwardVisited , 0 );
+            Arrays.fill( backwardClosed , 0 );
+        }
+
+        startX = cellX( startCell );
+        startY = cellY( startCell );
+        targetX = cellX( targetCell );
+        targetY = cellY( targetCell );
+        bestCost = Integer.MAX_VALUE;
+        meetingCell = -1;
+
+        visit( startCell , 0 , -1 );
+        openList.insertOrUpdate( startCell , openListKey( estimatedCost( startX , startY , targetX , targetY ) , 0 ) );
+
+        backwardVisited[ targetCell ] = generation;
+        backwardGScore[ targetCell ] = 0;
+        backwardParent[ targetCell ] = -1;
+        backwardOpenList.insertOrUpdate( targetCell , openListKey( estimatedCost( targetX , targetY , startX , startY ) , 0 ) );
+
+        while ( ! openList.isEmpty() && ! backwardOpenList.isEmpty() ) 
+        {
+            final int forwardF = (int) ( openList.peekKey() >>> 32 );
+            final int backwardF = (int) ( backwardOpenList.peekKey() >>> 32 );
+            if ( forwardF >= bestCost || backwardF >= bestCost ) {
+                break;
+            }
+            if ( openList.size() <= backwardOpenList.size() ) {
+                expandForward( openList.poll() );
+            } else {
+                expandBackward( backwardOpenList.poll() );
+            }
+        }
+        return meetingCell == -1 ? -1 : targetCell;
+    }
+
+    /**
+     * Includes the backward search, the peak open list size is the sum of the peaks of both directions.
+     */
+    @Override
+    protected SearchStatistics getStatistics(long wallTimeNanos, boolean pathFound)
+    {
+        return new SearchStatistics( getExpandedNodes() , 
+                openList.getInsertCount() + backwardOpenList.getInsertCount() , 
+                openList.getPeakSize() + backwardOpenList.getPeakSize() , 
+                openList.getUpdateCount() + backwardOpenList.getUpdateCount() , 
+                getHeuristicCalls() , wallTimeNanos , pathFound );
+    }
+
+    private void expandForward(int current) 
+    {
+        markClosed( current );
+        final int x = cellX( current );
+        final int y = cellY( current );
+        final int g = gScore[current];
+
+        final boolean east = isFree( x + 1 , y );
+        final boolean west = isFree( x - 1 , y );
+        final boolean south = isFree( x , y + 1 );
+        final boolean north = isFree( x , y - 1 );
+
+        if ( east ) {
+            relaxForward( current , x + 1 , y , g + STRAIGHT_COST );
+        }
+        if ( west ) {
+            relaxForward( current , x - 1 , y , g + STRAIGHT_COST );
+        }
+        if ( south ) {
+            relaxForward( current , x , y + 1 , g + STRAIGHT_COST );
+        }
+        if ( north ) {
+            relaxForward( current , x , y - 1 , g + STRAIGHT_COST );
+        }
+        if ( allowDiagonalMoves ) 
+        {
+            if ( north && east && isFree( x + 1 , y - 1 ) ) {
+                relaxForward( current , x + 1 , y - 1 , g + DIAGONAL_COST );
+            }
+            if ( north && west && isFree( x - 1 , y - 1 ) ) {
+                relaxForward( current , x - 1 , y - 1 , g + DIAGONAL_COST );
+            }
+            if ( south && east && isFree( x + 1 , y + 1 ) ) {
+                relaxForward( current , x + 1 , y + 1 , g + DIAGONAL_COST );
+            }
+            if ( south && west && isFree( x - 1 , y + 1 ) ) {
+                relaxForward( current , x - 1 , y + 1 , g + DIAGONAL_COST );
+            }
+        }
+    }
+
+    private void relaxForward(int parentCell,int x,int y,int g) 
+    {
+        final int cell = cellIndex( x , y );
+        if ( isClosed( cell ) || ( isVisited( cell ) && gScore[cell] <= g ) ) {
+            return;
+        }
+        visit( cell , g , parentCell );
+        openList.insertOrUpdate( cell , openListKey( g + estimatedCost( x , y , targetX , targetY ) , g ) );
+
+        if ( backwardVisited[ cell ] == generation() ) {
+            maybeUpdateBestPath( cell , g + backwardGScore[ cell ] );
+        }
+    }
+
+    private void expandBackward(int current) 
+    {
+        backwardClosed[ current ] = generation();
+        incExpandedNodes();
+
+        final int x = cellX( current );
+        final int y = cellY( current );
+        final int g = backwardGScore[current];
+
+        final boolean east = isFree( x + 1 , y );
+        final boolean west = isFree( x - 1 , y );
+        final boolean south = isFree( x , y + 1 );
+        final boolean north = isFree( x , y - 1 );
+
+        if ( east ) {
+            relaxBackward( current , x + 1 , y , g + STRAIGHT_COST );
+        }
+        if ( west ) {
+            relaxBackward( current , x - 1 , y , g + STRAIGHT_COST );
+        }
+        if ( south ) {
+            relaxBackward( current , x , y + 1 , g + STRAIGHT_COST );
+        }
+        if ( north ) {
+            relaxBackward( current , x , y - 1 , g + STRAIGHT_COST );
+        }
+        if ( allowDiagonalMoves ) 
+        {
+            if ( north && east && isFree( x + 1 , y - 1 ) ) {
+                relaxBackward( current , x + 1 , y - 1 , g + DIAGONAL_COST );
+            }
+            if ( north && west && isFree( x - 1 , y - 1 ) ) {
+                relaxBackward( current , x - 1 , y - 1 , g + DIAGONAL_COST );
+            }
+            if ( south && east && isFree( x + 1 , y + 1 ) ) {
+                relaxBackward( current , x + 1 , y + 1 , g + DIAGONAL_COST );
+            }
+            if ( south && west && isFree( x - 1 , y + 1 ) ) {
+                relaxBackward( current , x - 1 , y + 1 , g + DIAGONAL_COST );
+            }
+        }
+    }
+
+    private void relaxBackward(int parentCell,int x,int y,int g) 
+    {
+        final int cell = cellIndex( x , y );
+        final int generation = generation();
+        if ( backwardClosed[ cell ] == generation || ( backwardVisited[ cell ] == generation && backwardGScore[cell] <= g ) ) {
+            return;
+        }
+        backwardVisited[ cell ] = generation;
+        backwardGScore[ cell ] = g;
+        backwardParent[ cell ] = parentCell;
+        backwardOpenList.insertOrUpdate( cell , openListKey( g + estimatedCost( x , y , startX , startY ) , g ) );
+
+        if ( isVisited( cell ) ) {
+            maybeUpdateBestPath( cell , g + gScore[ cell ] );
+        }
+    }
+
+    private void maybeUpdateBestPath(int cell,int cost) 
+    {
+        if ( cost < bestCost ) {
+            bestCost = cost;
+            meetingCell = cell;
+        }
+    }
+
+    private int estimatedCost(int x,int y,int targetX,int targetY) 
+    {
+        incHeuristicCalls();
+        return allowDiagonalMoves ? octileDistance( targetX - x , targetY - y ) : manhattanDistance( targetX - x , targetY - y );
+    }
+
+    /**
+     * Joins the forward path to the meeting cell with the backward path from there to the target.
+     */
+    @Override
+    protected PathNode toPathNode(int targetCell)
+    {
+        PathNode result = super.toPathNode( meetingCell );
+        for ( int cell = backwardParent[ meetingCell ] ; cell != -1 ; cell = backwardParent[ cell ] ) 
+        {
+            final int x = cellX( cell );
+            final int y = cellY( cell );
+            final int g = result.g() + ( x != result.x() && y != result.y() ? DIAGONAL_COST : STRAIGHT_COST );
+            result = new PathNode( x , y , result );
+            result.g( g );
+            result.f( g );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Monotone priority queue for Dijkstra searches with small integer edge costs (Dial's algorithm).
+ * 
+ * <p>Uses a ring of <code>maxEdgeCost+1</code> buckets, so all queued keys must lie 
+ * in the range <code>[ currentKey() , currentKey() + maxEdgeCost ]</code>. This always holds when
+ * only adding keys of the form <code>currentKey() + edgeCost</code>. Adding and polling cells 
+ * are O(1) (amortized). When the queue is empty, adding a key outside of this range 
+ * moves the range.</p>
+ * 
+ * <p>The queue does not support decrease-key, callers add a cell again with the smaller key 
+ * and skip outdated entries when polling them.</p>
+ */
+public final class BucketQueue
+{
+    private final int[][] buckets;
+    private final int[] sizes;
+    private int size;
+    private int currentKey;
+
+    public BucketQueue(int maxEdgeCost) 
+    {
+        if ( maxEdgeCost < 1 ) {
+            throw new IllegalArgumentException("Invalid max. edge cost: "+maxEdgeCost);
+        }
+        buckets = new int[ maxEdgeCost + 1 ][];
+        sizes = new int[ maxEdgeCost + 1 ];
+        for ( int i = 0 ; i < buckets.length ; i++ ) {
+            buckets[i] = new int[16];
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() 
+    {
+        Arrays.fill( sizes , 0 );
+        size = 0;
+        currentKey = 0;
+    }
+
+    /**
+     * Returns the key of the cell most recently returned by {@link #poll()}.
+     * 
+     * @return
+     */
+    public int currentKey() {
+        return currentKey;
+    }
+
+    public void add(int cell,int key) 
+    {
+        if ( key < currentKey || key - currentKey >= buckets.length ) 
+        {
+            if ( size != 0 ) {
+                throw new IllegalArgumentException("Key "+key+" out of range, current key: "+currentKey);
+            }
+            currentKey = key;
+        }
+        final int bucket = key % buckets.length;
+        int[] cells = buckets[bucket];
+        if ( sizes[bucket] == cells.length ) {
+            cells = buckets[bucket] = Arrays.copyOf( cells , cells.length * 2 );
+        }
+        cells[ sizes[bucket]++ ] = cell;
+        size++;
+    }
+
+    /**
+     * Returns the smallest queued key, the queue must not be empty.
+     * 
+     * @return
+     */
+    public int peekKey() 
+    {
+        int key = currentKey;
+        while ( sizes[ key % buckets.length ] == 0 ) {
+            key++;
+        }
+        return key;
+    }
+
+    /**
+     * Removes a cell with the smallest key, use {@link #currentKey()} to 
+     * get its key.
+     * 
+     * @return
+     */
+    public int poll() 
+    {
+        while ( sizes[ currentKey % buckets.length ] == 0 ) {
+            currentKey++;
+        }
+        final int bucket = currentKey % buckets.length;
+        size--;
+        return buckets[bucket][ --sizes[bucket] ];
+    }
+}
@@ -0,0 +1,228 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of cell indices (<code>y*width+x</code>) with <code>long</code> keys.
+ * 
+ * <p>Every cell can be queued at most once, its position inside the heap is tracked
+ * so that {@link #insertOrUpdate(int, long)} can change the key of an already queued cell (decrease-key)
+ * and {@link #remove(int)} can drop arbitrary cells in O(log n).</p>
+ * 
+ * <p>All storage is allocated up-front, none of the operations allocates memory.</p>
+ */
+public final class CellPriorityQueue
+{
+    private final int[] heap;
+    private final long[] keys;
+    private final int[] positions;
+    private int size;
+
+    // statistics since the last resetStatistics()
+    private int insertCount;
+    private int updateCount;
+    private int peakSize;
+
+    public CellPriorityQueue(int cellCount) 
+    {
+        heap = new int[ cellCount ];
+        keys = new long[ cellCount ];
+        positions = new int[ cellCount ];
+        Arrays.fill( positions , -1 );
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all cells, runs in O(size) . 
+     */
+    public void clear() 
+    {
+        for ( int i = 0 ; i < size ; i++ ) {
+            positions[ heap[i] ] = -1;
+        }
+        size = 0;
+    }
+
+    public boolean contains(int cell) {
+        return positions[cell] != -1;
+    }
+
+    /**
+     * Returns the key of a queued cell.
+     * 
+     * @param cell
+     * @return
+     */
+    public long getKey(int cell) {
+        return keys[ positions[cell] ];
+    }
+
+    /**
+     * Adds a cell or changes the key of an already queued cell.
+     * 
+     * @param cell
+     * @param key
+     */
+    public void insertOrUpdate(int cell,long key) 
+    {
+        final int pos = positions[cell];
+        if ( pos == -1 ) 
+        {
+            heap[size] = cell;
+            keys[size] = key;
+            positions[cell] = size;
+            siftUp( size++ );
+            insertCount++;
+            if ( size > peakSize ) {
+                peakSize = size;
+            }
+            return;
+        }
+        updateCount++;
+        final long oldKey = keys[pos];
+        keys[pos] = key;
+        if ( key < oldKey ) {
+            siftUp( pos );
+        } else if ( key > oldKey ) {
+            siftDown( pos );
+        }
+    }
+
+    /**
+     * Returns the number of cells added by {@link #insertOrUpdate(int, long)} since the last 
+     * {@link #resetStatistics()}.
+     * 
+     * @return
+     */
+    public int getInsertCount() {
+        return insertCount;
+    }
+
+    /**
+     * Returns the number of {@link #insertOrUpdate(int, long)} calls for already queued cells 
+     * since the last {@link #resetStatistics()}.
+     * 
+     * @return
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Returns the largest size since the last {@link #resetStatistics()}.
+     * 
+     * @return
+     */
+    public int getPeakSize() {
+        return peakSize;
+    }
+
+    public void resetStatistics() 
+    {
+        insertCount = 0;
+        updateCount = 0;
+        peakSize = size;
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public long peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Removes and returns the cell with the smallest key.
+     * 
+     * @return
+     */
+    public int poll() 
+    {
+        final int result = heap[0];
+        removeAt( 0 );
+        return result;
+    }
+
+    /**
+     * Removes a cell if it is queued.
+     * 
+     * @param cell
+     * @return <code>true</code> if the cell was queued
+     */
+    public boolean remove(int cell) 
+    {
+        final int pos = positions[cell];
+        if ( pos == -1 ) {
+            return false;
+        }
+        removeAt( pos );
+        return true;
+    }
+
+    private void removeAt(int pos) 
+    {
+        positions[ heap[pos] ] = -1;
+        size--;
+        if ( pos == size ) {
+            return;
+        }
+        heap[pos] = heap[size];
+        keys[pos] = keys[size];
+        positions[ heap[pos] ] = pos;
+        siftDown( pos );
+        siftUp( pos );
+    }
+
+    private void siftUp(int i) 
+    {
+        final int cell = heap[i];
+        final long key = keys[i];
+        while ( i > 0 ) 
+        {
+            final int parent = (i-1) >>> 1;
+            if ( keys[parent] <= key ) {
+                break;
+            }
+            heap[i] = heap[parent];
+            keys[i] = keys[parent];
+            positions[ heap[i] ] = i;
+            i = parent;
+        }
+        heap[i] = cell;
+        keys[i] = key;
+        positions[cell] = i;
+    }
+
+    private void siftDown(int i) 
+    {
+        final int cell = heap[i];
+        final long key = keys[i];
+        final int half = size >>> 1;
+        while ( i < half ) 
+        {
+            int child = 2*i+1;
+            final int right = child+1;
+            if ( right < size && keys[right] < keys[child] ) {
+                child = right;
+            }
+            if ( key <= keys[child] ) {
+                break;
+            }
+            heap[i] = heap[child];
+            keys[i] = keys[child];
+            positions[ heap[i] ] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        keys[i] = key;
+        positions[cell] = i;
+    }
+}
@@ -0,0 +1,353 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Sparse scene made of 64x64 cell chunks that are allocated on the first write.
+ *
+ * <p>A chunk stores one bit per cell, one <code>long</code> per row. Chunks without any
+ * occupied cells are not allocated at all and chunks whose cells are all occupied share a
+ * single instance, so memory is only spent on chunks containing both free and occupied
+ * cells. Like {@link PackedScene}, only {@link IScene#FREE} and {@link IScene#OCCUPIED}
+ * can be stored.</p>
+ *
+ * <p>The chunk summaries ({@link #isChunkFree(int, int)}, {@link #isChunkOccupied(int, int)},
+ * {@link #isAreaFree(int, int, int, int)}) let callers skip uniform regions of the scene.</p>
+ *
+ * <p>{@link #snapshot()} is copy-on-write at chunk granularity: a snapshot shares all chunks
+ * with the scene, the next write copies the chunk table and each chunk is copied on its first
+ * write after the snapshot. Taking a snapshot is O(1), snapshots are immutable and may be read
+ * by any number of threads while the scene is being modified.</p>
+ */
+public final class ChunkedScene extends AbstractScene
+{
+    public static final int CHUNK_SIZE = 64;
+
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // shared by all completely occupied chunks, never modified
+    private static final long[] OCCUPIED_CHUNK = new long[ CHUNK_SIZE ];
+
+    static {
+        Arrays.fill( OCCUPIED_CHUNK , 0xffffffffffffffffL );
+    }
+
+    private final int chunksX;
+    private final int chunksY;
+
+    // null for chunks without occupied cells
+    // tables are replaced instead of modified while shared with a snapshot
+    private long[][] chunks;
+    private int[] occupiedCounts;
+
+    private int allocatedChunks;
+
+    private final boolean readOnly;
+
+    // number of snapshots taken, chunks are only modified in place if copied/allocated since the last snapshot 
+    // @GuardedBy( "this" )
+    private int epoch;
+    // @GuardedBy( "this" )
+    private final int[] chunkEpochs;
+    // @GuardedBy( "this" )
+    private boolean tableShared;
+    // @GuardedBy( "this" )
+    private ChunkedScene lastSnapshot;
+
+    public ChunkedScene(int width,int height)
+    {
+        super(width,height);
+        this.chunksX = ( width + CHUNK_MASK ) >>> CHUNK_SHIFT;
+        this.chunksY = ( height + CHUNK_MASK ) >>> CHUNK_SHIFT;
+        this.chunks = new long[ chunksX * chunksY ][];
+        this.occupiedCounts = new int[ chunksX * chunksY ];
+        this.chunkEpochs = new int[ chunksX * chunksY ];
+        this.readOnly = false;
+    }
+
+    /**
+     * Creates a read-only snapshot sharing the chunks of a scene.
+     */
+    private ChunkedScene(ChunkedScene scene)
+    {
+        super( scene.width , scene.height , scene.getVersion() );
+        this.chunksX = scene.chunksX;
+        this.chunksY = scene.chunksY;
+        this.chunks = scene.chunks;
+        this.occupiedCounts = scene.occupiedCounts;
+        this.allocatedChunks = scene.allocatedChunks;
+        this.chunkEpochs = null;
+        this.readOnly = true;
+    }
+
+    /**
+     * Returns an immutable copy of the current cells, sharing all chunks with this scene.
+     *
+     * <p>May be called by any thread, concurrently with writes.</p>
+     *
+     * <p>Consecutive calls without writes in between return the same instance. Calling this 
+     * method on a snapshot returns the snapshot itself.</p>
+     */
+    @Override
+    public synchronized IScene snapshot()
+    {
+        if ( readOnly ) {
+            return this;
+        }
+        if ( lastSnapshot == null || lastSnapshot.getVersion() != getVersion() )
+        {
+            lastSnapshot = new ChunkedScene( this );
+            tableShared = true;
+            epoch++;
+        }
+        return lastSnapshot;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns whether a chunk of this scene and a chunk of another scene are the same instance, 
+     * which means that their cells are equal.
+     *
+     * <p>Chunks are never shared between unrelated scenes, for a scene and its snapshots this tells
+     * which chunks changed since the snapshot (some of the other chunks may have been changed back).</p>
+     *
+     * @param other
+     * @param chunkX
+     * @param chunkY
+     * @return
+     */
+    public boolean isSameChunk(ChunkedScene other,int chunkX,int chunkY)
+    {
+        final int index = chunkY * chunksX + chunkX;
+        return chunks[ index ] == other.chunks[ index ];
+    }
+
+    @Override
+    public byte read(int x, int y)
+    {
+        return isFree( x , y ) ? IScene.FREE : IScene.OCCUPIED;
+    }
+
+    @Override
+    public boolean isFree(int x, int y)
+    {
+        final long[] chunk = chunks[ ( y >>> CHUNK_SHIFT ) * chunksX + ( x >>> CHUNK_SHIFT ) ];
+        return chunk == null || ( chunk[ y & CHUNK_MASK ] & ( 1L << x ) ) == 0;
+    }
+
+    @Override
+    public synchronized IScene write(int x, int y, byte status)
+    {
+        if ( readOnly ) {
+            throw new IllegalStateException("Scene is read-only");
+        }
+        final int index = ( y >>> CHUNK_SHIFT ) * chunksX + ( x >>> CHUNK_SHIFT );
+        final boolean occupied = status != IScene.FREE;
+        long[] chunk = chunks[ index ];
+        if ( chunk == null )
+        {
+            if ( ! occupied ) {
+                return this;
+            }
+            chunk = setChunk( index , new long[ CHUNK_SIZE ] );
+            allocatedChunks++;
+        }
+        else if ( chunk == OCCUPIED_CHUNK )
+        {
+            if ( occupied ) {
+                return this;
+            }
+            chunk = setChunk( index , OCCUPIED_CHUNK.clone() );
+            allocatedChunks++;
+        }
+
+        final int row = y & CHUNK_MASK;
+        final long oldBits = chunk[ row ];
+        final long newBits = occupied ? oldBits | ( 1L << x ) : oldBits & ~( 1L << x );
+        if ( newBits == oldBits ) {
+            return this;
+        }
+        if ( chunkEpochs[ index ] != epoch ) {
+            // still shared with a snapshot
+            chunk = setChunk( index , chunk.clone() );
+        }
+        chunk[ row ] = newBits;
+
+        final int count = occupiedCounts[ index ] += occupied ? 1 : -1;
+        if ( count == 0 ) {
+            chunks[ index ] = null;
+            allocatedChunks--;
+        }
+        else if ( count == chunkCellCount( index ) ) {
+            chunks[ index ] = OCCUPIED_CHUNK;
+            allocatedChunks--;
+        }
+        notifyCellsChanged( x , y , 1 , 1 );
+        return this;
+    }
+
+    /**
+     * Stores a chunk that is only referenced by this scene.
+     */
+    private long[] setChunk(int index,long[] chunk)
+    {
+        if ( tableShared ) 
+        {
+            chunks = chunks.clone();
+            occupiedCounts = occupiedCounts.clone();
+            tableShared = false;
+        }
+        chunks[ index ] = chunk;
+        chunkEpochs[ index ] = epoch;
+        return chunk;
+    }
+
+    /**
+     * Returns the number of cells of a chunk that lie inside the scene.
+     */
+    private int chunkCellCount(int index)
+    {
+        final int chunkWidth = Math.min( CHUNK_SIZE , width - ( index % chunksX ) * CHUNK_SIZE );
+        final int chunkHeight = Math.min( CHUNK_SIZE , height - ( index / chunksX ) * CHUNK_SIZE );
+        return chunkWidth * chunkHeight;
+    }
+
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    /**
+     * Returns the number of chunks that currently use memory of their own.
+     *
+     * @return
+     */
+    public int getAllocatedChunkCount() {
+        return allocatedChunks;
+    }
+
+    /**
+     * Returns whether all cells of a chunk are free.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @return
+     */
+    public boolean isChunkFree(int chunkX,int chunkY) {
+        return chunks[ chunkY * chunksX + chunkX ] == null;
+    }
+
+    /**
+     * Returns whether all cells of a chunk are occupied.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @return
+     */
+    public boolean isChunkOccupied(int chunkX,int chunkY) {
+        return chunks[ chunkY * chunksX + chunkX ] == OCCUPIED_CHUNK;
+    }
+
+    /**
+     * Returns whether all cells inside a rectangle are free.
+     *
+     * <p>Free chunks are skipped, partially covered chunks are checked a row at a time.</p>
+     *
+     * @param x
+     * @param y
+     * @param w
+     * @param h
+     * @return
+     */
+    public boolean isAreaFree(int x,int y,int w,int h)
+    {
+        final int x2 = Math.min( x + w , width ) - 1;
+        final int y2 = Math.min( y + h , height ) - 1;
+        for ( int cy = y >>> CHUNK_SHIFT ; cy <= y2 >>> CHUNK_SHIFT ; cy++ )
+        {
+            for ( int cx = x >>> CHUNK_SHIFT ; cx <= x2 >>> CHUNK_SHIFT ; cx++ )
+            {
+                final long[] chunk = chunks[ cy * chunksX + cx ];
+                if ( chunk == null ) {
+                    continue;
+                }
+                if ( chunk == OCCUPIED_CHUNK ) {
+                    return false;
+                }
+                final int firstX = Math.max( x , cx << CHUNK_SHIFT ) & CHUNK_MASK;
+                final int lastX = Math.min( x2 , ( cx << CHUNK_SHIFT ) + CHUNK_MASK ) & CHUNK_MASK;
+                final long mask = ( 0xffffffffffffffffL << firstX ) & ( 0xffffffffffffffffL >>> ( CHUNK_MASK - lastX ) );
+                final int firstRow = Math.max( y , cy << CHUNK_SHIFT ) & CHUNK_MASK;
+                final int lastRow = Math.min( y2 , ( cy << CHUNK_SHIFT ) + CHUNK_MASK ) & CHUNK_MASK;
+                for ( int row = firstRow ; row <= lastRow ; row++ )
+                {
+                    if ( ( chunk[ row ] & mask ) != 0 ) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean isRowSpanFree(int y, int xa, int xb) {
+        return xa <= xb ? isAreaFree( xa , y , xb - xa + 1 , 1 ) : isAreaFree( xb , y , xa - xb + 1 , 1 );
+    }
+
+    @Override
+    public void visitOccupiedCells(ISceneVisitor cellVisitor)
+    {
+        for ( int cy = 0 ; cy < chunksY ; cy++ )
+        {
+            for ( int cx = 0 ; cx < chunksX ; cx++ )
+            {
+                final long[] chunk = chunks[ cy * chunksX + cx ];
+                if ( chunk == null ) {
+                    continue;
+                }
+                final int originX = cx << CHUNK_SHIFT;
+                final int originY = cy << CHUNK_SHIFT;
+                final int rows = Math.min( CHUNK_SIZE , height - originY );
+                // bits outside of the scene are only set in the shared occupied chunk
+                final long columnMask = width - originX >= CHUNK_SIZE ? 0xffffffffffffffffL : ( 1L << ( width - originX ) ) - 1;
+                for ( int row = 0 ; row < rows ; row++ )
+                {
+                    long bits = chunk[ row ] & columnMask;
+                    while ( bits != 0 )
+                    {
+                        cellVisitor.visit( originX + Long.numberOfTrailingZeros( bits ) , originY + row , IScene.OCCUPIED );
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor)
+    {
+        checkRows( firstRow , endRow );
+        final BitSpanCollector collector = new BitSpanCollector( visitor , width );
+        for ( int y = firstRow ; y < endRow ; y++ )
+        {
+            collector.startRow( y );
+            final int chunkRow = ( y >>> CHUNK_SHIFT ) * chunksX;
+            for ( int cx = 0 ; cx < chunksX ; cx++ )
+            {
+                final long[] chunk = chunks[ chunkRow + cx ];
+                if ( chunk != null ) {
+                    collector.add( chunk[ y & CHUNK_MASK ] , cx << CHUNK_SHIFT );
+                }
+            }
+            collector.endRow();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+
+/**
+ * Connected components of the free cells of a scene, kept in a union-find structure.
+ *
+ * <p>Cells are connected along the 4 axis. Since diagonal moves are only allowed if both
+ * adjacent cells along the axis are free, these are also the components for 8-way movement,
+ * so {@link #isConnected(int, int, int, int)} returning <code>false</code> means that no
+ * path finder will find a path.</p>
+ *
+ * <p>The index listens for scene changes. Cells becoming free are merged with their
+ * neighbors right away. Union-find cannot split components, so a cell becoming occupied is
+ * only handled incrementally if a look at its 8 neighbors proves that it did not connect
+ * anything. Otherwise the components are rebuilt (O(cells)) on the next query. Until then
+ * components may be too large, but never too small.</p>
+ *
+ * <p>Instances are thread-safe. Call {@link #dispose()} to unregister from the scene.</p>
+ */
+public final class ConnectivityIndex implements ISceneListener
+{
+    // N, NE, E, SE, S, SW, W, NW
+    private static final int[] RING_DX = {0,1,1,1,0,-1,-1,-1};
+    private static final int[] RING_DY = {-1,-1,0,1,1,1,0,-1};
+
+    private final IScene scene;
+    private final int width;
+    private final int height;
+
+    // @GuardedBy( "this" )
+    private final int[] parent;
+    // number of free cells, only valid for roots
+    // @GuardedBy( "this" )
+    private final int[] size;
+    // state of the cells as last seen by this index
+    // @GuardedBy( "this" )
+    private final boolean[] free;
+    // @GuardedBy( "this" )
+    private boolean rebuildRequired;
+    // @GuardedBy( "this" )
+    private int rebuildCount;
+
+    public ConnectivityIndex(IScene scene)
+    {
+        this.scene = scene;
+        this.width = scene.getWidth();
+        this.height = scene.getHeight();
+        this.parent = new int[ width * height ];
+        this.size = new int[ width * height ];
+        this.free = new boolean[ width * height ];
+        rebuild();
+        scene.addSceneListener( this );
+    }
+
+    /**
+     * Unregisters this index from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( this );
+    }
+
+    /**
+     * Returns whether two cells are free and in the same component.
+     *
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return
+     */
+    public synchronized boolean isConnected(int x1,int y1,int x2,int y2)
+    {
+        if ( ! scene.isFree( x1 , y1 ) || ! scene.isFree( x2 , y2 ) ) {
+            return false;
+        }
+        if ( rebuildRequired ) {
+            rebuild();
+        }
+        return find( y1 * width + x1 ) == find( y2 * width + x2 );
+    }
+
+    /**
+     * Returns an identifier of the component a cell belongs to.
+     *
+     * <p>Identifiers are only stable while the scene does not change.</p>
+     *
+     * @param x
+     * @param y
+     * @return component identifier or -1 if the cell is occupied
+     */
+    public synchronized int getComponent(int x,int y)
+    {
+        if ( ! scene.isFree( x , y ) ) {
+            return -1;
+        }
+        if ( rebuildRequired ) {
+            rebuild();
+        }
+        return find( y * width + x );
+    }
+
+    /**
+     * Returns the number of free cells in the component of a cell.
+     *
+     * @param x
+     * @param y
+     * @return size or 0 if the cell is occupied
+     */
+    public synchronized int getComponentSize(int x,int y)
+    {
+        final int component = getComponent( x , y );
+        return component == -1 ? 0 : size[ component ];
+    }
+
+    /**
+     * Returns how often the components were rebuilt from scratch.
+     *
+     * @return
+     */
+    public synchronized int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    @Override
+    public synchronized void cellsChanged(IScene scene, int x, int y, int w, int h)
+    {
+        final int x2 = Math.min( x + w , width );
+        final int y2 = Math.min( y + h , height );
+        for ( int cy = y ; cy < y2 ; cy++ )
+        {
+            for ( int cx = x ; cx < x2 ; cx++ )
+            {
+                final int cell = cy * width + cx;
+                final boolean nowFree = scene.isFree( cx , cy );
+                if ( nowFree == free[cell] ) {
+                    continue;
+                }
+                free[cell] = nowFree;
+                if ( nowFree ) {
+                    addFreeCell( cx , cy );
+                    continue;
+                }
+                // occupied cells stay part of the union-find tree
+                size[ find( cell ) ]--;
+                if ( ! rebuildRequired ) {
+                    // neighbors inside the area changed as well, the local check does not apply
+                    rebuildRequired = w > 1 || h > 1 || ! isSimple( cx , cy );
+                }
+            }
+        }
+    }
+
+    private void addFreeCell(int x,int y)
+    {
+        final int cell = y * width + x;
+        final int oldRoot = find( cell );
+        // an occupied cell stays in the tree it was part of while it was free, re-joining that tree 
+        // is only correct if a free neighbor still belongs to it
+        if ( ! rebuildRequired && size[ oldRoot ] > 0 && ! hasFreeNeighborIn( x , y , oldRoot ) ) {
+            rebuildRequired = true;
+        }
+        size[ oldRoot ]++;
+        if ( x > 0 && scene.isFree( x - 1 , y ) ) {
+            union( cell , cell - 1 );
+        }
+        if ( x + 1 < width && scene.isFree( x + 1 , y ) ) {
+            union( cell , cell + 1 );
+        }
+        if ( y > 0 && scene.isFree( x , y - 1 ) ) {
+            union( cell , cell - width );
+        }
+        if ( y + 1 < height && scene.isFree( x , y + 1 ) ) {
+            union( cell , cell + width );
+        }
+    }
+
+    private boolean hasFreeNeighborIn(int x,int y,int root)
+    {
+        final int cell = y * width + x;
+        return ( x > 0 && scene.isFree( x - 1 , y ) && find( cell - 1 ) == root ) ||
+               ( x + 1 < width && scene.isFree( x + 1 , y ) && find( cell + 1 ) == root ) ||
+               ( y > 0 && scene.isFree( x , y - 1 ) && find( cell - width ) == root ) ||
+               ( y + 1 < height && scene.isFree( x , y + 1 ) && find( cell + width ) == root );
+    }
+
+    /**
+     * Checks whether an occupied cell could have split its component. That is not the case
+     * if all free neighbors along the axis are connected to each other through the ring
+     * of 8 cells around it.
+     */
+    private boolean isSimple(int x,int y)
+    {
+        int ring = 0;
+        for ( int i = 0 ; i < 8 ; i++ )
+        {
+            final int nx = x + RING_DX[i];
+            final int ny = y + RING_DY[i];
+            if ( nx >= 0 && ny >= 0 && nx < width && ny < height && scene.isFree( nx , ny ) ) {
+                ring |= 1 << i;
+            }
+        }
+        if ( ring == 0xff ) {
+            return true;
+        }
+        // walk around the ring once, starting and ending at an occupied cell
+        final int start = Integer.numberOfTrailingZeros( ~ring );
+        int runsWithNeighbors = 0;
+        boolean runHasNeighbor = false;
+        for ( int k = 1 ; k <= 8 ; k++ )
+        {
+            final int i = ( start + k ) & 7;
+            if ( ( ring & ( 1 << i ) ) != 0 ) {
+                runHasNeighbor |= ( i & 1 ) == 0; // N, E, S, W
+            } 
+            else if ( runHasNeighbor ) 
+            {
+                runsWithNeighbors++;
+                runHasNeighbor = false;
+            }
+        }
+        return runsWithNeighbors <= 1;
+    }
+
+    private void rebuild()
+    {
+        for ( int y = 0 ; y < height ; y++ )
+        {
+            for ( int x = 0 ; x < width ; x++ )
+            {
+                final int cell = y * width + x;
+                parent[cell] = cell;
+                free[cell] = scene.isFree( x , y );
+                size[cell] = free[cell] ? 1 : 0;
+                if ( ! free[cell] ) {
+                    continue;
+                }
+                if ( x > 0 && scene.isFree( x - 1 , y ) ) {
+                    union( cell , cell - 1 );
+                }
+                if ( y > 0 && scene.isFree( x , y - 1 ) ) {
+                    union( cell , cell - width );
+                }
+            }
+        }
+        rebuildRequired = false;
+        rebuildCount++;
+    }
+
+    private int find(int cell)
+    {
+        int current = cell;
+        while ( parent[current] != current )
+        {
+            parent[current] = parent[ parent[current] ]; // path halving
+            current = parent[current];
+        }
+        return current;
+    }
+
+    private void union(int cell1,int cell2)
+    {
+        final int root1 = find( cell1 );
+        final int root2 = find( cell2 );
+        if ( root1 == root2 ) {
+            return;
+        }
+        // union by size
+        if ( size[root1] >= size[root2] ) {
+            size[root1] += size[root2];
+            parent[root2] = root1;
+        } else {
+            size[root2] += size[root1];
+            parent[root1] = root2;
+        }
+    }
+}
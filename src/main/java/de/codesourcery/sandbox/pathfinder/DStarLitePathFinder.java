@@ -0,0 +1,358 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Incremental path finder (D* Lite, Koenig/Likhachev) that keeps its search state between queries.
+ *
+ * <p>The search runs backwards from the target, so the start may move along the path
+ * between queries. As long as the target stays the same, a query only repairs the part of
+ * the previous search that was affected by scene changes (reported through the scene
+ * listener) instead of searching again from scratch. Changing the target discards the state.</p>
+ *
+ * <p>Uses the same movement rules and costs as {@link ArrayPathFinder}, so paths are optimal.
+ * Call {@link #dispose()} to unregister from the scene.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class DStarLitePathFinder implements IPathFinder, ISceneListener
+{
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    // E, W, S, N, NE, NW, SE, SW
+    private static final int[] DX = {1,-1,0,0,1,-1,1,-1};
+    private static final int[] DY = {0,0,1,-1,-1,-1,1,1};
+
+    private final IScene scene;
+    private final int width;
+    private final int height;
+    private final int directionCount;
+
+    // cost of the cheapest known path to the target
+    private final int[] g;
+    // one-step lookahead of g
+    private final int[] rhs;
+    private final CellPriorityQueue openList;
+
+    // cells changed since the last query
+    private final boolean[] changed;
+    private int[] changedCells = new int[64];
+    private int changedCount;
+
+    private int targetCell = -1;
+    private int lastStartCell;
+    private long keyModifier;
+
+    private int expandedNodes;
+    private int heuristicCalls;
+
+    private volatile ISearchListener searchListener;
+    private volatile ConnectivityIndex connectivityIndex;
+
+    public DStarLitePathFinder(IScene scene) {
+        this(scene,false);
+    }
+
+    public DStarLitePathFinder(IScene scene,boolean allowDiagonalMoves)
+    {
+        this.scene = scene;
+        this.width = scene.getWidth();
+        this.height = scene.getHeight();
+        this.directionCount = allowDiagonalMoves ? 8 : 4;
+        this.g = new int[ width * height ];
+        this.rhs = new int[ width * height ];
+        this.openList = new CellPriorityQueue( width * height );
+        this.changed = new boolean[ width * height ];
+        scene.addSceneListener( this );
+    }
+
+    /**
+     * Unregisters this finder from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( this );
+    }
+
+    /**
+     * Returns the number of cells expanded by the most recent query.
+     *
+     * @return
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * Sets the listener that receives the statistics of every query.
+     *
+     * <p>Generated nodes count every cell (re-)inserted into the queue, duplicate pushes
+     * count key changes of already queued cells.</p>
+     *
+     * @param listener listener or <code>null</code>
+     */
+    @Override
+    public void setSearchListener(ISearchListener listener) {
+        this.searchListener = listener;
+    }
+
+    /**
+     * Sets an index used to reject queries between unconnected cells without searching.
+     * 
+     * <p>A rejected query leaves the search state untouched, scene changes are still collected 
+     * and repaired by the next query that searches.</p>
+     * 
+     * @param index index for the scene of this finder or <code>null</code>
+     */
+    @Override
+    public void setConnectivityIndex(ConnectivityIndex index) {
+        this.connectivityIndex = index;
+    }
+
+    @Override
+    public void cellsChanged(IScene scene, int x, int y, int w, int h)
+    {
+        if ( targetCell == -1 ) {
+            return;
+        }
+        final int x2 = Math.min( x + w , width );
+        final int y2 = Math.min( y + h , height );
+        for ( int cy = y ; cy < y2 ; cy++ )
+        {
+            for ( int cx = x ; cx < x2 ; cx++ )
+            {
+                final int cell = cy * width + cx;
+                if ( ! changed[cell] )
+                {
+                    changed[cell] = true;
+                    if ( changedCount == changedCells.length ) {
+                        changedCells = Arrays.copyOf( changedCells , changedCount * 2 );
+                    }
+                    changedCells[ changedCount++ ] = cell;
+                }
+            }
+        }
+    }
+
+    @Override
+    public PathNode findPath(PathNode start, PathNode target)
+    {
+        final ISearchListener listener = searchListener;
+        if ( listener == null ) {
+            return doFindPath( start , target );
+        }
+        final long startTime = System.nanoTime();
+        final PathNode result = doFindPath( start , target );
+        listener.searchFinished( this , new SearchStatistics( expandedNodes , openList.getInsertCount() , openList.getPeakSize() ,
+                openList.getUpdateCount() , heuristicCalls , System.nanoTime() - startTime , result != null ) );
+        return result;
+    }
+
+    private PathNode doFindPath(PathNode start, PathNode target)
+    {
+        final int startCell = start.y * width + start.x;
+        final int newTargetCell = target.y * width + target.x;
+
+        expandedNodes = 0;
+        heuristicCalls = 0;
+        openList.resetStatistics();
+        final ConnectivityIndex index = connectivityIndex;
+        if ( index != null && startCell != newTargetCell && ! index.isConnected( start.x , start.y , target.x , target.y ) ) {
+            return null;
+        }
+        if ( newTargetCell != targetCell ) {
+            initialize( startCell , newTargetCell );
+        }
+        else
+        {
+            keyModifier += heuristic( lastStartCell , startCell );
+            lastStartCell = startCell;
+            applyChanges();
+        }
+
+        computeShortestPath( startCell );
+        return g[ startCell ] == INFINITY ? null : extractPath( startCell );
+    }
+
+    private void initialize(int startCell,int newTargetCell)
+    {
+        Arrays.fill( g , INFINITY );
+        Arrays.fill( rhs , INFINITY );
+        openList.clear();
+        openList.resetStatistics();
+        for ( int i = 0 ; i < changedCount ; i++ ) {
+            changed[ changedCells[i] ] = false;
+        }
+        changedCount = 0;
+
+        targetCell = newTargetCell;
+        lastStartCell = startCell;
+        keyModifier = 0;
+        rhs[ targetCell ] = 0;
+        openList.insertOrUpdate( targetCell , calculateKey( targetCell , startCell ) );
+    }
+
+    /**
+     * Updates all cells whose outgoing edges changed. Besides the changed cell itself
+     * these are its neighbors, including those whose diagonal moves cut its corner.
+     */
+    private void applyChanges()
+    {
+        for ( int i = 0 ; i < changedCount ; i++ )
+        {
+            final int cell = changedCells[i];
+            changed[cell] = false;
+            final int x = cell % width;
+            final int y = cell / width;
+            updateVertex( cell );
+            for ( int d = 0 ; d < 8 ; d++ )
+            {
+                final int nx = x + DX[d];
+                final int ny = y + DY[d];
+                if ( nx >= 0 && ny >= 0 && nx < width && ny < height ) {
+                    updateVertex( ny * width + nx );
+                }
+            }
+        }
+        changedCount = 0;
+    }
+
+    private void computeShortestPath(int startCell)
+    {
+        while ( ! openList.isEmpty() &&
+                ( openList.peekKey() < calculateKey( startCell , startCell ) || rhs[ startCell ] != g[ startCell ] ) )
+        {
+            final int cell = openList.peek();
+            final long oldKey = openList.peekKey();
+            final long newKey = calculateKey( cell , startCell );
+            if ( oldKey < newKey ) {
+                openList.insertOrUpdate( cell , newKey );
+                continue;
+            }
+
+            expandedNodes++;
+            openList.remove( cell );
+            if ( g[cell] > rhs[cell] ) {
+                g[cell] = rhs[cell];
+            } else {
+                g[cell] = INFINITY;
+                updateVertex( cell );
+            }
+
+            final int x = cell % width;
+            final int y = cell / width;
+            for ( int d = 0 ; d < directionCount ; d++ )
+            {
+                final int nx = x + DX[d];
+                final int ny = y + DY[d];
+                if ( nx >= 0 && ny >= 0 && nx < width && ny < height ) {
+                    updateVertex( ny * width + nx );
+                }
+            }
+        }
+    }
+
+    private void updateVertex(int cell)
+    {
+        if ( cell != targetCell )
+        {
+            final int x = cell % width;
+            final int y = cell / width;
+            int best = INFINITY;
+            for ( int d = 0 ; d < directionCount ; d++ )
+            {
+                final int cost = movementCost( x , y , d );
+                if ( cost != INFINITY )
+                {
+                    final int neighbor = g[ ( y + DY[d] ) * width + x + DX[d] ];
+                    if ( neighbor != INFINITY && neighbor + cost < best ) {
+                        best = neighbor + cost;
+                    }
+                }
+            }
+            rhs[cell] = best;
+        }
+
+        if ( g[cell] != rhs[cell] ) {
+            openList.insertOrUpdate( cell , calculateKey( cell , lastStartCell ) );
+        } else if ( openList.contains( cell ) ) {
+            openList.remove( cell );
+        }
+    }
+
+    private PathNode extractPath(int startCell)
+    {
+        PathNode result = new PathNode( startCell % width , startCell / width );
+        int cell = startCell;
+        int cost = 0;
+        while ( cell != targetCell )
+        {
+            final int x = cell % width;
+            final int y = cell / width;
+            int best = INFINITY;
+            int bestDirection = -1;
+            for ( int d = 0 ; d < directionCount ; d++ )
+            {
+                final int stepCost = movementCost( x , y , d );
+                if ( stepCost != INFINITY )
+                {
+                    final int neighbor = g[ ( y + DY[d] ) * width + x + DX[d] ];
+                    if ( neighbor != INFINITY && neighbor + stepCost < best ) {
+                        best = neighbor + stepCost;
+                        bestDirection = d;
+                    }
+                }
+            }
+            if ( bestDirection == -1 ) {
+                return null;
+            }
+            cost += movementCost( x , y , bestDirection );
+            cell = ( y + DY[bestDirection] ) * width + x + DX[bestDirection];
+            result = new PathNode( cell % width , cell / width , result );
+            result.g( cost );
+            result.f( cost );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cost of moving from a cell into the given direction.
+     *
+     * @return cost or {@link #INFINITY} if the move is blocked
+     */
+    private int movementCost(int x,int y,int direction)
+    {
+        final int nx = x + DX[direction];
+        final int ny = y + DY[direction];
+        if ( nx < 0 || ny < 0 || nx >= width || ny >= height || ! scene.isFree( x , y ) || ! scene.isFree( nx , ny ) ) {
+            return INFINITY;
+        }
+        if ( direction < 4 ) {
+            return AbstractPathFinder.STRAIGHT_COST;
+        }
+        // no cutting corners
+        if ( ! scene.isFree( nx , y ) || ! scene.isFree( x , ny ) ) {
+            return INFINITY;
+        }
+        return AbstractPathFinder.DIAGONAL_COST;
+    }
+
+    private int heuristic(int cell1,int cell2)
+    {
+        heuristicCalls++;
+        final int dx = cell1 % width - cell2 % width;
+        final int dy = cell1 / width - cell2 / width;
+        return directionCount == 8 ? AbstractPathFinder.octileDistance( dx , dy ) : AbstractPathFinder.manhattanDistance( dx , dy );
+    }
+
+    private long calculateKey(int cell,int startCell)
+    {
+        final int value = Math.min( g[cell] , rhs[cell] );
+        if ( value == INFINITY ) {
+            return Long.MAX_VALUE;
+        }
+        return ( ( (long) value + heuristic( cell , startCell ) + keyModifier ) << 32 ) | value;
+    }
+}
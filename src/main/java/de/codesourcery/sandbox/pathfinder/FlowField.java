@@ -0,0 +1,689 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+
+/**
+ * Distance map and direction field towards a single goal, for many agents sharing that goal.
+ * 
+ * <p>Distances are computed with Dijkstra's algorithm on a {@link BucketQueue}, using the same 
+ * movement rules and costs as {@link ArrayPathFinder}. Each free cell that can reach the goal 
+ * stores the direction of its next step, so agents look up their next cell in O(1) .</p>
+ * 
+ * <p>The field listens for scene changes and {@link #refresh()} repairs it incrementally: 
+ * cells whose flow ran through newly occupied cells are reset and re-propagated from their 
+ * boundary, newly free cells propagate improvements outwards. The work is proportional to the 
+ * number of cells whose distance changed.</p>
+ * 
+ * <p>Reading the field is thread-safe as long as no other thread computes or refreshes it.</p>
+ */
+public final class FlowField implements ISceneListener
+{
+    public static final int NO_DIRECTION = -1;
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    // E, W, S, N, NE, NW, SE, SW
+    private static final int[] DX = {1,-1,0,0,1,-1,1,-1};
+    private static final int[] DY = {0,0,1,-1,-1,-1,1,1};
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final IScene scene;
+    private final int width;
+    private final int height;
+    private final int goalX;
+    private final int goalY;
+    private final int goalCell;
+    private final int directionCount;
+
+    private final int[] distances;
+    private final byte[] directions;
+
+    // sequential computation
+    private final BucketQueue queue = new BucketQueue( AbstractPathFinder.DIAGONAL_COST );
+    private final LongList seeds = new LongList();
+    private final IntList affected = new IntList();
+    private final IntList candidates = new IntList();
+    private final IntList touched = new IntList();
+
+    // (x,y,width,height) of changed areas not processed yet
+    private final IntList pendingChanges = new IntList();
+    private long pendingArea;
+
+    protected static final class IntList 
+    {
+        private int[] data = new int[64];
+        private int size;
+
+        public void add(int value) 
+        {
+            if ( size == data.length ) {
+                data = Arrays.copyOf( data , size * 2 );
+            }
+            data[ size++ ] = value;
+        }
+
+        public int get(int index) {
+            return data[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    protected static final class LongList 
+    {
+        private long[] data = new long[64];
+        private int size;
+
+        public void add(long value) 
+        {
+            if ( size == data.length ) {
+                data = Arrays.copyOf( data , size * 2 );
+            }
+            data[ size++ ] = value;
+        }
+
+        public void sort() {
+            Arrays.sort( data , 0 , size );
+        }
+
+        public long get(int index) {
+            return data[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    public FlowField(IScene scene,int goalX,int goalY) {
+        this(scene,goalX,goalY,true);
+    }
+
+    /**
+     * Creates and computes a flow field.
+     * 
+     * @param scene
+     * @param goalX
+     * @param goalY
+     * @param allowDiagonalMoves
+     */
+    public FlowField(IScene scene,int goalX,int goalY,boolean allowDiagonalMoves) 
+    {
+        if ( goalX < 0 || goalY < 0 || goalX >= scene.getWidth() || goalY >= scene.getHeight() ) {
+            throw new IllegalArgumentException("Goal outside of scene: "+goalX+","+goalY);
+        }
+        this.scene = scene;
+        this.width = scene.getWidth();
+        this.height = scene.getHeight();
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.goalCell = goalY * width + goalX;
+        this.directionCount = allowDiagonalMoves ? 8 : 4;
+        this.distances = new int[ width * height ];
+        this.directions = new byte[ width * height ];
+        recompute();
+        scene.addSceneListener( this );
+    }
+
+    /**
+     * Unregisters this flow field from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( this );
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+
+    /**
+     * Returns the path cost from a cell to the goal.
+     * 
+     * @param x
+     * @param y
+     * @return cost or -1 if the goal can not be reached from this cell
+     */
+    public int getDistance(int x,int y) 
+    {
+        final int result = distances[ y * width + x ];
+        return result == UNREACHABLE ? -1 : result;
+    }
+
+    /**
+     * Returns the direction of the next step towards the goal.
+     * 
+     * @param x
+     * @param y
+     * @return direction (use {@link #directionX(int)} and {@link #directionY(int)} to get the 
+     * offset) or {@link #NO_DIRECTION} if the cell is the goal or can not reach it
+     */
+    public int getDirection(int x,int y) {
+        return directions[ y * width + x ];
+    }
+
+    /**
+     * Returns the next cell (<code>y*width+x</code>) on the way to the goal.
+     * 
+     * @param x
+     * @param y
+     * @return next cell or -1 if the cell is the goal or can not reach it
+     */
+    public int getNextCell(int x,int y) 
+    {
+        final int direction = directions[ y * width + x ];
+        return direction == NO_DIRECTION ? -1 : ( y + DY[direction] ) * width + x + DX[direction];
+    }
+
+    public static int directionX(int direction) {
+        return DX[direction];
+    }
+
+    public static int directionY(int direction) {
+        return DY[direction];
+    }
+
+    /**
+     * Returns whether scene changes are waiting to be applied by {@link #refresh()}.
+     * 
+     * @return
+     */
+    public boolean hasPendingChanges() {
+        return pendingChanges.size() > 0;
+    }
+
+    @Override
+    public void cellsChanged(IScene scene, int x, int y, int w, int h)
+    {
+        pendingChanges.add( x );
+        pendingChanges.add( y );
+        pendingChanges.add( w );
+        pendingChanges.add( h );
+        pendingArea += w * (long) h;
+    }
+
+    /**
+     * Recomputes the whole field on the current thread.
+     */
+    public void recompute() 
+    {
+        clearPendingChanges();
+        Arrays.fill( distances , UNREACHABLE );
+        Arrays.fill( directions , (byte) NO_DIRECTION );
+        if ( ! scene.isFree( goalX , goalY ) ) {
+            return;
+        }
+        distances[ goalCell ] = 0;
+        seeds.clear();
+        seeds.add( seed( goalCell , 0 ) );
+        propagate( queue , seeds , 0 , 0 , width , height , null );
+        updateDirections( 0 , 0 , width , height );
+    }
+
+    /**
+     * Recomputes the whole field in parallel.
+     * 
+     * <p>The scene is split into square tiles. Each round runs a local Dijkstra in every active 
+     * tile, seeded with the distances of the surrounding cells. Tiles next to a tile whose border 
+     * distances improved are active in the next round, until no more distances change.</p>
+     * 
+     * @param pool
+     * @param tileSize
+     */
+    public void recompute(ForkJoinPool pool,final int tileSize) 
+    {
+        clearPendingChanges();
+        Arrays.fill( distances , UNREACHABLE );
+        Arrays.fill( directions , (byte) NO_DIRECTION );
+        if ( ! scene.isFree( goalX , goalY ) ) {
+            return;
+        }
+        distances[ goalCell ] = 0;
+
+        final int tilesX = ( width + tileSize - 1 ) / tileSize;
+        final int tilesY = ( height + tileSize - 1 ) / tileSize;
+        boolean[] active = new boolean[ tilesX * tilesY ];
+        boolean[] nextActive = new boolean[ tilesX * tilesY ];
+        active[ ( goalY / tileSize ) * tilesX + goalX / tileSize ] = true;
+
+        while ( true ) 
+        {
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            for ( int tile = 0 ; tile < active.length ; tile++ ) 
+            {
+                if ( active[tile] ) {
+                    tasks.add( new RelaxTileTask( tile % tilesX , tile / tilesX , tileSize , tilesX , tilesY , nextActive ) );
+                }
+            }
+            if ( tasks.isEmpty() ) {
+                break;
+            }
+            Arrays.fill( nextActive , false );
+            pool.invoke( new InvokeAllTask( tasks ) );
+
+            final boolean[] tmp = active;
+            active = nextActive;
+            nextActive = tmp;
+        }
+
+        final List<RecursiveAction> tasks = new ArrayList<>();
+        for ( int ty = 0 ; ty < tilesY ; ty++ ) 
+        {
+            for ( int tx = 0 ; tx < tilesX ; tx++ ) 
+            {
+                final int x1 = tx * tileSize;
+                final int y1 = ty * tileSize;
+                tasks.add( new RecursiveAction() 
+                {
+                    @Override
+                    protected void compute() {
+                        updateDirections( x1 , y1 , Math.min( x1 + tileSize , width ) , Math.min( y1 + tileSize , height ) );
+                    }
+                });
+            }
+        }
+        pool.invoke( new InvokeAllTask( tasks ) );
+    }
+
+    private static final class InvokeAllTask extends RecursiveAction 
+    {
+        private final List<RecursiveAction> tasks;
+
+        public InvokeAllTask(List<RecursiveAction> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll( tasks );
+        }
+    }
+
+    private final class RelaxTileTask extends RecursiveAction 
+    {
+        private final int tileX;
+        private final int tileY;
+        private final int tileSize;
+        private final int tilesX;
+        private final int tilesY;
+        private final boolean[] nextActive;
+
+        public RelaxTileTask(int tileX,int tileY,int tileSize,int tilesX,int tilesY,boolean[] nextActive)
+        {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.tileSize = tileSize;
+            this.tilesX = tilesX;
+            this.tilesY = tilesY;
+            this.nextActive = nextActive;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final int x1 = tileX * tileSize;
+            final int y1 = tileY * tileSize;
+            final int x2 = Math.min( x1 + tileSize , width );
+            final int y2 = Math.min( y1 + tileSize , height );
+
+            // distances of neighboring tiles may be updated concurrently, they only ever 
+            // decrease and always belong to a real path so reading a stale value is harmless
+            final LongList tileSeeds = new LongList();
+            boolean borderChanged = false;
+            for ( int y = y1 ; y < y2 ; y++ ) 
+            {
+                for ( int x = x1 ; x < x2 ; x++ ) 
+                {
+                    if ( ! scene.isFree( x , y ) ) {
+                        continue;
+                    }
+                    final int cell = y * width + x;
+                    int best = distances[cell];
+                    if ( x == x1 || y == y1 || x == x2 - 1 || y == y2 - 1 ) 
+                    {
+                        for ( int d = 0 ; d < directionCount ; d++ ) 
+                        {
+                            final int nx = x + DX[d];
+                            final int ny = y + DY[d];
+                            if ( ( nx < x1 || ny < y1 || nx >= x2 || ny >= y2 ) && canMove( x , y , d ) ) 
+                            {
+                                final int neighbor = distances[ ny * width + nx ];
+                                if ( neighbor != UNREACHABLE && neighbor + cost(d) < best ) {
+                                    best = neighbor + cost(d);
+                                }
+                            }
+                        }
+                        if ( best < distances[cell] ) {
+                            distances[cell] = best;
+                            borderChanged = true;
+                        }
+                    }
+                    if ( best != UNREACHABLE ) {
+                        tileSeeds.add( seed( cell , best ) );
+                    }
+                }
+            }
+
+            borderChanged |= propagate( new BucketQueue( AbstractPathFinder.DIAGONAL_COST ) , tileSeeds , x1 , y1 , x2 , y2 , null );
+
+            if ( borderChanged ) 
+            {
+                for ( int ty = Math.max( 0 , tileY - 1 ) ; ty <= Math.min( tilesY - 1 , tileY + 1 ) ; ty++ ) 
+                {
+                    for ( int tx = Math.max( 0 , tileX - 1 ) ; tx <= Math.min( tilesX - 1 , tileX + 1 ) ; tx++ ) 
+                    {
+                        if ( tx != tileX || ty != tileY ) {
+                            nextActive[ ty * tilesX + tx ] = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies all scene changes since the last call.
+     */
+    public void refresh() 
+    {
+        if ( pendingChanges.size() == 0 ) {
+            return;
+        }
+        if ( pendingArea > ( width * (long) height ) / 4 ) {
+            recompute();
+            return;
+        }
+
+        affected.clear();
+        candidates.clear();
+        touched.clear();
+
+        for ( int i = 0 ; i < pendingChanges.size() ; i += 4 ) 
+        {
+            final int x1 = pendingChanges.get(i);
+            final int y1 = pendingChanges.get(i+1);
+            final int x2 = Math.min( x1 + pendingChanges.get(i+2) , width );
+            final int y2 = Math.min( y1 + pendingChanges.get(i+3) , height );
+            for ( int y = y1 ; y < y2 ; y++ ) 
+            {
+                for ( int x = x1 ; x < x2 ; x++ ) 
+                {
+                    final int cell = y * width + x;
+                    if ( scene.isFree( x , y ) ) 
+                    {
+                        // newly free cells may shorten paths through themselves 
+                        // and enable diagonal moves around their corners
+                        candidates.add( cell );
+                        for ( int d = 0 ; d < directionCount ; d++ ) 
+                        {
+                            if ( isInside( x + DX[d] , y + DY[d] ) ) {
+                                candidates.add( cell + DY[d] * width + DX[d] );
+                            }
+                        }
+                    } 
+                    else 
+                    {
+                        invalidateSubtree( cell );
+                        // diagonal moves cutting the corner of this cell are no longer possible
+                        for ( int d = 0 ; d < directionCount ; d++ ) 
+                        {
+                            final int nx = x + DX[d];
+                            final int ny = y + DY[d];
+                            if ( isInside( nx , ny ) ) 
+                            {
+                                final int neighbor = ny * width + nx;
+                                final int direction = directions[ neighbor ];
+                                if ( direction >= 4 && ( ( nx + DX[direction] == x && ny == y ) || ( nx == x && ny + DY[direction] == y ) ) ) {
+                                    invalidateSubtree( neighbor );
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        clearPendingChanges();
+
+        seeds.clear();
+        addSeeds( affected );
+        addSeeds( candidates );
+        propagate( queue , seeds , 0 , 0 , width , height , touched );
+
+        for ( int i = 0 ; i < touched.size() ; i++ ) 
+        {
+            final int cell = touched.get(i);
+            final int x = cell % width;
+            final int y = cell / width;
+            updateDirection( x , y );
+            for ( int d = 0 ; d < 8 ; d++ ) 
+            {
+                if ( isInside( x + DX[d] , y + DY[d] ) ) {
+                    updateDirection( x + DX[d] , y + DY[d] );
+                }
+            }
+        }
+    }
+
+    private void clearPendingChanges() 
+    {
+        pendingChanges.clear();
+        pendingArea = 0;
+    }
+
+    /**
+     * Resets a cell and all cells whose next step (transitively) leads through it.
+     * 
+     * @param root
+     */
+    private void invalidateSubtree(int root) 
+    {
+        if ( distances[root] == UNREACHABLE ) {
+            return;
+        }
+        final int start = affected.size();
+        distances[root] = UNREACHABLE;
+        directions[root] = NO_DIRECTION;
+        affected.add( root );
+        touched.add( root );
+        for ( int i = start ; i < affected.size() ; i++ ) 
+        {
+            final int cell = affected.get(i);
+            final int x = cell % width;
+            final int y = cell / width;
+            for ( int d = 0 ; d < directionCount ; d++ ) 
+            {
+                final int nx = x + DX[d];
+                final int ny = y + DY[d];
+                if ( ! isInside( nx , ny ) ) {
+                    continue;
+                }
+                final int neighbor = ny * width + nx;
+                final int direction = directions[ neighbor ];
+                if ( direction != NO_DIRECTION && nx + DX[direction] == x && ny + DY[direction] == y ) 
+                {
+                    distances[ neighbor ] = UNREACHABLE;
+                    directions[ neighbor ] = NO_DIRECTION;
+                    affected.add( neighbor );
+                    touched.add( neighbor );
+                }
+            }
+        }
+    }
+
+    /**
+     * Seeds cells with the best distance offered by their neighbors.
+     */
+    private void addSeeds(IntList cells) 
+    {
+        for ( int i = 0 ; i < cells.size() ; i++ ) 
+        {
+            final int cell = cells.get(i);
+            final int x = cell % width;
+            final int y = cell / width;
+            if ( ! scene.isFree( x , y ) ) {
+                continue;
+            }
+            int best = cell == goalCell ? 0 : UNREACHABLE;
+            for ( int d = 0 ; d < directionCount ; d++ ) 
+            {
+                if ( canMove( x , y , d ) ) 
+                {
+                    final int neighbor = distances[ ( y + DY[d] ) * width + x + DX[d] ];
+                    if ( neighbor != UNREACHABLE && neighbor + cost(d) < best ) {
+                        best = neighbor + cost(d);
+                    }
+                }
+            }
+            if ( best < distances[cell] ) 
+            {
+                distances[cell] = best;
+                touched.add( cell );
+                seeds.add( seed( cell , best ) );
+            }
+        }
+    }
+
+    /**
+     * Dijkstra search restricted to a rectangle.
+     * 
+     * @param queue
+     * @param seeds cells to start from, their distances must already be set
+     * @param x1
+     * @param y1
+     * @param x2 exclusive
+     * @param y2 exclusive
+     * @param touched receives all cells whose distance changed, may be <code>null</code>
+     * @return whether the distance of any cell on the border of the rectangle changed 
+     */
+    private boolean propagate(BucketQueue queue,LongList seeds,int x1,int y1,int x2,int y2,IntList touched) 
+    {
+        seeds.sort();
+        queue.clear();
+
+        boolean borderChanged = false;
+        int nextSeed = 0;
+        while ( true ) 
+        {
+            if ( queue.isEmpty() ) 
+            {
+                if ( nextSeed == seeds.size() ) {
+                    break;
+                }
+                final long seed = seeds.get( nextSeed++ );
+                queue.add( (int) seed , (int) ( seed >>> 32 ) );
+            }
+
+            final int minKey = queue.peekKey();
+            while ( nextSeed < seeds.size() && ( seeds.get( nextSeed ) >>> 32 ) <= minKey ) 
+            {
+                final long seed = seeds.get( nextSeed++ );
+                queue.add( (int) seed , (int) ( seed >>> 32 ) );
+            }
+
+            final int cell = queue.poll();
+            final int distance = queue.currentKey();
+            if ( distance != distances[cell] ) { // outdated entry
+                continue;
+            }
+
+            final int x = cell % width;
+            final int y = cell / width;
+            for ( int d = 0 ; d < directionCount ; d++ ) 
+            {
+                final int nx = x + DX[d];
+                final int ny = y + DY[d];
+                if ( nx < x1 || ny < y1 || nx >= x2 || ny >= y2 || ! canMove( x , y , d ) ) {
+                    continue;
+                }
+                final int neighbor = ny * width + nx;
+                final int newDistance = distance + cost(d);
+                if ( newDistance < distances[ neighbor ] ) 
+                {
+                    distances[ neighbor ] = newDistance;
+                    queue.add( neighbor , newDistance );
+                    if ( touched != null ) {
+                        touched.add( neighbor );
+                    }
+                    if ( nx == x1 || ny == y1 || nx == x2 - 1 || ny == y2 - 1 ) {
+                        borderChanged = true;
+                    }
+                }
+            }
+        }
+        return borderChanged;
+    }
+
+    private void updateDirections(int x1,int y1,int x2,int y2) 
+    {
+        for ( int y = y1 ; y < y2 ; y++ ) {
+            for ( int x = x1 ; x < x2 ; x++ ) {
+                updateDirection( x , y );
+            }
+        }
+    }
+
+    private void updateDirection(int x,int y) 
+    {
+        final int cell = y * width + x;
+        if ( cell == goalCell || distances[cell] == UNREACHABLE ) {
+            directions[cell] = NO_DIRECTION;
+            return;
+        }
+        int best = UNREACHABLE;
+        int bestDirection = NO_DIRECTION;
+        for ( int d = 0 ; d < directionCount ; d++ ) 
+        {
+            if ( canMove( x , y , d ) ) 
+            {
+                final int neighbor = distances[ ( y + DY[d] ) * width + x + DX[d] ];
+                if ( neighbor != UNREACHABLE && neighbor + cost(d) < best ) {
+                    best = neighbor + cost(d);
+                    bestDirection = d;
+                }
+            }
+        }
+        directions[cell] = (byte) bestDirection;
+    }
+
+    private boolean canMove(int x,int y,int direction) 
+    {
+        final int nx = x + DX[direction];
+        final int ny = y + DY[direction];
+        if ( ! isInside( nx , ny ) || ! scene.isFree( nx , ny ) ) {
+            return false;
+        }
+        return direction < 4 || ( scene.isFree( nx , y ) && scene.isFree( x , ny ) );
+    }
+
+    private boolean isInside(int x,int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private static int cost(int direction) {
+        return direction < 4 ? AbstractPathFinder.STRAIGHT_COST : AbstractPathFinder.DIAGONAL_COST;
+    }
+
+    private static long seed(int cell,int distance) {
+        return ( (long) distance << 32 ) | cell;
+    }
+}
@@ -0,0 +1,586 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Hierarchical path finder (HPA*, Botea/Mueller/Schaeffer) moving along the 4 axis.
+ * 
+ * <p>The scene is partitioned into square clusters. Wherever two adjacent clusters share 
+ * a run of free border cells, one or two <i>entrances</i> are placed. The entrance cells
+ * form an abstract graph whose edges are the (precomputed) distances between entrances 
+ * of the same cluster plus single steps across cluster borders.</p>
+ * 
+ * <p>A query temporarily connects start and target to the entrances of their clusters, 
+ * searches the abstract graph and then refines each abstract edge into cells with a 
+ * search that never leaves the edge's cluster. Paths are near-optimal, not optimal.</p>
+ * 
+ * <p>The finder registers itself as a scene listener. Changed cells only mark their 
+ * cluster (and borders) dirty, dirty clusters are rebuilt lazily by the next query. Call 
+ * {@link #dispose()} to unregister from the scene.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class HierarchicalPathFinder extends AbstractPathFinder implements ISceneListener
+{
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    // border runs at least this long get an entrance at each end instead of one in the middle 
+    private static final int MIN_DOUBLE_ENTRANCE_LENGTH = 6;
+
+    private static final int[] NO_CELLS = new int[0];
+
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+
+    // indexed by cy*clustersX+cx
+
+    // entrance cells of each cluster
+    private final int[][] clusterNodes;
+    // distances (in steps) between the entrances of each cluster, -1 if unreachable
+    private final int[][] clusterDistances;
+    private final boolean[] dirtyClusters;
+
+    // (left cell,right cell) pairs of entrances between cluster (cx,cy) and (cx+1,cy)
+    private final int[][] verticalEntrances;
+    private final boolean[] dirtyVerticalBorders;
+
+    // (upper cell,lower cell) pairs of entrances between cluster (cx,cy) and (cx,cy+1)
+    private final int[][] horizontalEntrances;
+    private final boolean[] dirtyHorizontalBorders;
+
+    private boolean dirty = true;
+
+    // breadth-first search inside a single cluster, indexed by local cell 
+    private final int[] localDistances;
+    private final int[] startDistances;
+    private final int[] targetDistances;
+    private final int[] localQueue;
+    private final int[] entranceBuffer;
+
+    // state of the current query
+    private int startCell;
+    private int targetCell;
+    private int startCluster;
+    private int targetCluster;
+
+    public HierarchicalPathFinder(IScene scene) {
+        this(scene,DEFAULT_CLUSTER_SIZE);
+    }
+
+    public HierarchicalPathFinder(IScene scene,int clusterSize) 
+    {
+        super(scene);
+        if ( clusterSize < 2 ) {
+            throw new IllegalArgumentException("Invalid cluster size: "+clusterSize);
+        }
+        this.clusterSize = clusterSize;
+        this.clustersX = ( width + clusterSize - 1 ) / clusterSize;
+        this.clustersY = ( height + clusterSize - 1 ) / clusterSize;
+
+        final int clusterCount = clustersX * clustersY;
+        clusterNodes = new int[ clusterCount ][];
+        clusterDistances = new int[ clusterCount ][];
+        dirtyClusters = new boolean[ clusterCount ];
+        verticalEntrances = new int[ clusterCount ][];
+        dirtyVerticalBorders = new boolean[ clusterCount ];
+        horizontalEntrances = new int[ clusterCount ][];
+        dirtyHorizontalBorders = new boolean[ clusterCount ];
+
+        final int localCells = clusterSize * clusterSize;
+        localDistances = new int[ localCells ];
+        startDistances = new int[ localCells ];
+        targetDistances = new int[ localCells ];
+        localQueue = new int[ localCells ];
+        entranceBuffer = new int[ 4 * clusterSize ];
+
+        Arrays.fill( dirtyClusters , true );
+        Arrays.fill( dirtyVerticalBorders , true );
+        Arrays.fill( dirtyHorizontalBorders , true );
+        rebuildDirtyClusters();
+
+        scene.addSceneListener( this );
+    }
+
+    /**
+     * Unregisters this finder from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( this );
+    }
+
+    @Override
+    public void cellsChanged(IScene scene, int x, int y, int w, int h)
+    {
+        final int x2 = Math.min( x + w , width ) - 1;
+        final int y2 = Math.min( y + h , height ) - 1;
+
+        final int cx1 = x / clusterSize;
+        final int cy1 = y / clusterSize;
+        final int cx2 = x2 / clusterSize;
+        final int cy2 = y2 / clusterSize;
+
+        for ( int cy = cy1 ; cy <= cy2 ; cy++ ) 
+        {
+            for ( int cx = cx1 ; cx <= cx2 ; cx++ ) {
+                dirtyClusters[ cy * clustersX + cx ] = true;
+            }
+            // vertical borders whose two columns overlap the changed area
+            for ( int cx = Math.max( 0 , cx1 - 1 ) ; cx <= cx2 && cx < clustersX - 1 ; cx++ ) 
+            {
+                final int borderX = ( cx + 1 ) * clusterSize - 1;
+                if ( x <= borderX + 1 && x2 >= borderX ) {
+                    dirtyVerticalBorders[ cy * clustersX + cx ] = true;
+                }
+            }
+        }
+
+        // horizontal borders whose two rows overlap the changed area
+        for ( int cy = Math.max( 0 , cy1 - 1 ) ; cy <= cy2 && cy < clustersY - 1 ; cy++ ) 
+        {
+            final int borderY = ( cy + 1 ) * clusterSize - 1;
+            if ( y <= borderY + 1 && y2 >= borderY ) 
+            {
+                for ( int cx = cx1 ; cx <= cx2 ; cx++ ) {
+                    dirtyHorizontalBorders[ cy * clustersX + cx ] = true;
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    @Override
+    protected int findPath(int startCell, int targetCell)
+    {
+        rebuildDirtyClusters();
+
+        if ( ! scene.isFree( cellX( startCell ) , cellY( startCell ) ) || 
+             ! scene.isFree( cellX( targetCell ) , cellY( targetCell ) ) ) 
+        {
+            return -1;
+        }
+
+        startSearch();
+
+        this.startCell = startCell;
+        this.targetCell = targetCell;
+        this.startCluster = clusterOf( startCell );
+        this.targetCluster = clusterOf( targetCell );
+
+        searchCluster( startCluster , startCell , startDistances );
+        searchCluster( targetCluster , targetCell , targetDistances );
+
+        visit( startCell , 0 , -1 );
+        openList.insertOrUpdate( startCell , openListKey( estimatedCost( startCell ) , 0 ) );
+
+        while ( ! openList.isEmpty() ) 
+        {
+            final int current = openList.poll();
+            if ( current == targetCell ) {
+                return current;
+            }
+            markClosed( current );
+            expand( current );
+        }
+        return -1;
+    }
+
+    private void expand(int current) 
+    {
+        final int g = gScore[current];
+        final int cluster = clusterOf( current );
+
+        if ( current == startCell ) 
+        {
+            final int[] nodes = clusterNodes[ startCluster ];
+            for ( int node : nodes ) 
+            {
+                final int distance = startDistances[ localIndex( startCluster , node ) ];
+                if ( distance > 0 ) {
+                    relax( node , g + distance * STRAIGHT_COST , current );
+                }
+            }
+        } 
+        else if ( cluster == targetCluster ) 
+        {
+            final int distance = targetDistances[ localIndex( targetCluster , current ) ];
+            if ( distance != -1 ) {
+                relax( targetCell , g + distance * STRAIGHT_COST , current );
+            }
+        }
+
+        if ( current == startCell && startCluster == targetCluster ) 
+        {
+            final int distance = startDistances[ localIndex( startCluster , targetCell ) ];
+            if ( distance != -1 ) {
+                relax( targetCell , g + distance * STRAIGHT_COST , current );
+            }
+        }
+
+        final int[] nodes = clusterNodes[ cluster ];
+        final int index = indexOf( nodes , current );
+        if ( index == -1 ) {
+            return;
+        }
+
+        // edges to other entrances of the same cluster
+        final int[] distances = clusterDistances[ cluster ];
+        final int nodeCount = nodes.length;
+        for ( int i = 0 , offset = index * nodeCount ; i < nodeCount ; i++ ) 
+        {
+            final int distance = distances[ offset + i ];
+            if ( distance > 0 ) {
+                relax( nodes[i] , g + distance * STRAIGHT_COST , current );
+            }
+        }
+
+        // edges to entrances of adjacent clusters
+        final int x = cellX( current );
+        final int y = cellY( current );
+        final int cx = cluster % clustersX;
+        final int cy = cluster / clustersX;
+        if ( cx > 0 && x == cx * clusterSize ) {
+            relaxPartners( verticalEntrances[ cluster - 1 ] , current , 1 , g );
+        }
+        if ( cx < clustersX - 1 && x == ( cx + 1 ) * clusterSize - 1 ) {
+            relaxPartners( verticalEntrances[ cluster ] , current , 0 , g );
+        }
+        if ( cy > 0 && y == cy * clusterSize ) {
+            relaxPartners( horizontalEntrances[ cluster - clustersX ] , current , 1 , g );
+        }
+        if ( cy < clustersY - 1 && y == ( cy + 1 ) * clusterSize - 1 ) {
+            relaxPartners( horizontalEntrances[ cluster ] , current , 0 , g );
+        }
+    }
+
+    private void relaxPartners(int[] entrances,int cell,int side,int g) 
+    {
+        for ( int i = 0 ; i < entrances.length ; i += 2 ) 
+        {
+            if ( entrances[ i + side ] == cell ) {
+                relax( entrances[ i + 1 - side ] , g + STRAIGHT_COST , cell );
+            }
+        }
+    }
+
+    private void relax(int cell,int g,int parentCell) 
+    {
+        if ( isClosed( cell ) || ( isVisited( cell ) && gScore[cell] <= g ) ) {
+            return;
+        }
+        visit( cell , g , parentCell );
+        openList.insertOrUpdate( cell , openListKey( g + estimatedCost( cell ) , g ) );
+    }
+
+    private int estimatedCost(int cell) 
+    {
+        incHeuristicCalls();
+        return manhattanDistance( cellX( targetCell ) - cellX( cell ) , cellY( targetCell ) - cellY( cell ) );
+    }
+
+    /**
+     * Refines the abstract path into a chain of adjacent cells.
+     */
+    @Override
+    protected PathNode toPathNode(int targetCell)
+    {
+        int count = 0;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            count++;
+        }
+        final int[] abstractPath = new int[count];
+        int i = count;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            abstractPath[--i] = cell;
+        }
+
+        PathNode result = new PathNode( cellX( abstractPath[0] ) , cellY( abstractPath[0] ) );
+        for ( i = 1 ; i < count ; i++ ) 
+        {
+            final int from = abstractPath[i-1];
+            final int to = abstractPath[i];
+            final int cluster = clusterOf( from );
+            if ( cluster != clusterOf( to ) ) {
+                result = append( result , to );
+                continue;
+            }
+
+            // walk downhill on the distance map of the target cell
+            searchCluster( cluster , to , localDistances );
+            int x = cellX( from );
+            int y = cellY( from );
+            int distance = localDistances[ localIndex( cluster , from ) ];
+            while ( distance > 0 ) 
+            {
+                distance--;
+                if ( distanceAt( cluster , x + 1 , y ) == distance ) {
+                    x++;
+                } else if ( distanceAt( cluster , x - 1 , y ) == distance ) {
+                    x--;
+                } else if ( distanceAt( cluster , x , y + 1 ) == distance ) {
+                    y++;
+                } else {
+                    y--;
+                }
+                result = append( result , cellIndex( x , y ) );
+            }
+        }
+        return result;
+    }
+
+    private PathNode append(PathNode path,int cell) 
+    {
+        final int g = path.g() + STRAIGHT_COST;
+        final PathNode result = new PathNode( cellX( cell ) , cellY( cell ) , path );
+        result.g( g );
+        result.f( g );
+        return result;
+    }
+
+    private int distanceAt(int cluster,int x,int y) 
+    {
+        final int originX = ( cluster % clustersX ) * clusterSize;
+        final int originY = ( cluster / clustersX ) * clusterSize;
+        if ( x < originX || y < originY || x >= originX + clusterSize || y >= originY + clusterSize || x >= width || y >= height ) {
+            return -1;
+        }
+        return localDistances[ ( y - originY ) * clusterSize + ( x - originX ) ];
+    }
+
+    private void rebuildDirtyClusters() 
+    {
+        if ( ! dirty ) {
+            return;
+        }
+
+        for ( int cy = 0 ; cy < clustersY ; cy++ ) 
+        {
+            for ( int cx = 0 ; cx < clustersX ; cx++ ) 
+            {
+                final int cluster = cy * clustersX + cx;
+                if ( dirtyVerticalBorders[ cluster ] ) 
+                {
+                    dirtyVerticalBorders[ cluster ] = false;
+                    if ( cx < clustersX - 1 ) 
+                    {
+                        verticalEntrances[ cluster ] = findEntrances( ( cx + 1 ) * clusterSize - 1 , cy * clusterSize , 1 , 0 );
+                        dirtyClusters[ cluster + 1 ] = true;
+                        dirtyClusters[ cluster ] = true;
+                    } else {
+                        verticalEntrances[ cluster ] = NO_CELLS;
+                    }
+                }
+                if ( dirtyHorizontalBorders[ cluster ] ) 
+                {
+                    dirtyHorizontalBorders[ cluster ] = false;
+                    if ( cy < clustersY - 1 ) 
+                    {
+                        horizontalEntrances[ cluster ] = findEntrances( cx * clusterSize , ( cy + 1 ) * clusterSize - 1 , 0 , 1 );
+                        dirtyClusters[ cluster + clustersX ] = true;
+                        dirtyClusters[ cluster ] = true;
+                    } else {
+                        horizontalEntrances[ cluster ] = NO_CELLS;
+                    }
+                }
+            }
+        }
+
+        for ( int cluster = 0 ; cluster < dirtyClusters.length ; cluster++ ) 
+        {
+            if ( dirtyClusters[ cluster ] ) {
+                dirtyClusters[ cluster ] = false;
+                rebuildCluster( cluster );
+            }
+        }
+        dirty = false;
+    }
+
+    /**
+     * Finds entrances along a cluster border.
+     * 
+     * @param x first cell on the near side of the border
+     * @param y first cell on the near side of the border
+     * @param dx offset to the far side of the border (1,0 for vertical borders, 0,1 for horizontal ones)
+     * @param dy
+     * @return (near cell,far cell) pairs
+     */
+    private int[] findEntrances(int x,int y,int dx,int dy) 
+    {
+        // vertical borders run along the y axis and vice versa
+        final int stepX = dy;
+        final int stepY = dx;
+        final int length = dx == 1 ? Math.min( clusterSize , height - y ) : Math.min( clusterSize , width - x );
+
+        int count = 0;
+        int runStart = -1;
+        for ( int i = 0 ; i <= length ; i++ ) 
+        {
+            final int nearX = x + i * stepX;
+            final int nearY = y + i * stepY;
+            final boolean open = i < length && scene.isFree( nearX , nearY ) && scene.isFree( nearX + dx , nearY + dy );
+            if ( open && runStart == -1 ) {
+                runStart = i;
+            } 
+            else if ( ! open && runStart != -1 ) 
+            {
+                final int runEnd = i - 1;
+                if ( runEnd - runStart + 1 >= MIN_DOUBLE_ENTRANCE_LENGTH ) {
+                    count = addEntrance( x + runStart * stepX , y + runStart * stepY , dx , dy , count );
+                    count = addEntrance( x + runEnd * stepX , y + runEnd * stepY , dx , dy , count );
+                } else {
+                    final int middle = ( runStart + runEnd ) / 2;
+                    count = addEntrance( x + middle * stepX , y + middle * stepY , dx , dy , count );
+                }
+                runStart = -1;
+            }
+        }
+        return count == 0 ? NO_CELLS : Arrays.copyOf( entranceBuffer , count );
+    }
+
+    private int addEntrance(int x,int y,int dx,int dy,int count) 
+    {
+        entranceBuffer[ count ] = cellIndex( x , y );
+        entranceBuffer[ count + 1 ] = cellIndex( x + dx , y + dy );
+        return count + 2;
+    }
+
+    private void rebuildCluster(int cluster) 
+    {
+        final int cx = cluster % clustersX;
+        final int cy = cluster / clustersX;
+
+        // collect entrance cells on our side of all four borders
+        int count = 0;
+        count = collectNodes( cx > 0 ? verticalEntrances[ cluster - 1 ] : NO_CELLS , 1 , count );
+        count = collectNodes( cx < clustersX - 1 ? verticalEntrances[ cluster ] : NO_CELLS , 0 , count );
+        count = collectNodes( cy > 0 ? horizontalEntrances[ cluster - clustersX ] : NO_CELLS , 1 , count );
+        count = collectNodes( cy < clustersY - 1 ? horizontalEntrances[ cluster ] : NO_CELLS , 0 , count );
+
+        final int[] nodes = Arrays.copyOf( entranceBuffer , count );
+        final int[] distances = new int[ count * count ];
+        if ( isClusterFree( cx , cy ) ) 
+        {
+            // no obstacles, no need to search
+            for ( int i = 0 ; i < count ; i++ ) {
+                for ( int j = 0 ; j < count ; j++ ) {
+                    distances[ i * count + j ] = Math.abs( cellX( nodes[i] ) - cellX( nodes[j] ) ) + Math.abs( cellY( nodes[i] ) - cellY( nodes[j] ) );
+                }
+            }
+            clusterNodes[ cluster ] = nodes;
+            clusterDistances[ cluster ] = distances;
+            return;
+        }
+
+        for ( int i = 0 ; i < count ; i++ ) 
+        {
+            searchCluster( cluster , nodes[i] , localDistances );
+            for ( int j = 0 ; j < count ; j++ ) {
+                distances[ i * count + j ] = localDistances[ localIndex( cluster , nodes[j] ) ];
+            }
+        }
+        clusterNodes[ cluster ] = nodes;
+        clusterDistances[ cluster ] = distances;
+    }
+
+    /**
+     * Uses the chunk summaries of {@link ChunkedScene}s (or of a {@link SnapshotView} 
+     * showing one) to check whether a cluster is free of obstacles.
+     */
+    private boolean isClusterFree(int cx,int cy) 
+    {
+        if ( scene instanceof ChunkedScene ) {
+            return ((ChunkedScene) scene).isAreaFree( cx * clusterSize , cy * clusterSize , clusterSize , clusterSize );
+        }
+        if ( scene instanceof SnapshotView && ((SnapshotView) scene).hasChunkSummaries() ) {
+            return ((SnapshotView) scene).isAreaFree( cx * clusterSize , cy * clusterSize , clusterSize , clusterSize );
+        }
+        return false;
+    }
+
+    private int collectNodes(int[] entrances,int side,int count) 
+    {
+        for ( int i = side ; i < entrances.length ; i += 2 ) 
+        {
+            final int cell = entrances[i];
+            boolean duplicate = false; // corner cells may be entrances on two borders
+            for ( int j = 0 ; j < count && ! duplicate ; j++ ) {
+                duplicate = entranceBuffer[j] == cell;
+            }
+            if ( ! duplicate ) {
+                entranceBuffer[ count++ ] = cell;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Breadth-first search that never leaves a cluster.
+     * 
+     * @param cluster
+     * @param fromCell
+     * @param distances distances in steps indexed by local cell, -1 for cells that are not reachable
+     */
+    private void searchCluster(int cluster,int fromCell,int[] distances) 
+    {
+        Arrays.fill( distances , -1 );
+
+        final int originX = ( cluster % clustersX ) * clusterSize;
+        final int originY = ( cluster / clustersX ) * clusterSize;
+        final int clusterWidth = Math.min( clusterSize , width - originX );
+        final int clusterHeight = Math.min( clusterSize , height - originY );
+
+        final int from = localIndex( cluster , fromCell );
+        distances[ from ] = 0;
+        localQueue[0] = from;
+        int head = 0;
+        int tail = 1;
+        while ( head < tail ) 
+        {
+            final int current = localQueue[ head++ ];
+            final int x = current % clusterSize;
+            final int y = current / clusterSize;
+            final int distance = distances[ current ] + 1;
+
+            if ( x + 1 < clusterWidth && distances[ current + 1 ] == -1 && scene.isFree( originX + x + 1 , originY + y ) ) {
+                distances[ current + 1 ] = distance;
+                localQueue[ tail++ ] = current + 1;
+            }
+            if ( x > 0 && distances[ current - 1 ] == -1 && scene.isFree( originX + x - 1 , originY + y ) ) {
+                distances[ current - 1 ] = distance;
+                localQueue[ tail++ ] = current - 1;
+            }
+            if ( y + 1 < clusterHeight && distances[ current + clusterSize ] == -1 && scene.isFree( originX + x , originY + y + 1 ) ) {
+                distances[ current + clusterSize ] = distance;
+                localQueue[ tail++ ] = current + clusterSize;
+            }
+            if ( y > 0 && distances[ current - clusterSize ] == -1 && scene.isFree( originX + x , originY + y - 1 ) ) {
+                distances[ current - clusterSize ] = distance;
+                localQueue[ tail++ ] = current - clusterSize;
+            }
+        }
+    }
+
+    private int clusterOf(int cell) {
+        return ( cellY( cell ) / clusterSize ) * clustersX + cellX( cell ) / clusterSize;
+    }
+
+    private int localIndex(int cluster,int cell) 
+    {
+        final int originX = ( cluster % clustersX ) * clusterSize;
+        final int originY = ( cluster / clustersX ) * clusterSize;
+        return ( cellY( cell ) - originY ) * clusterSize + ( cellX( cell ) - originX );
+    }
+
+    private static int indexOf(int[] array,int value) 
+    {
+        for ( int i = 0 ; i < array.length ; i++ ) {
+            if ( array[i] == value ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
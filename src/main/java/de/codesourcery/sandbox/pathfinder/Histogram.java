@@ -0,0 +1,152 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.beans.ConstructorProperties;
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative values with power-of-two buckets.
+ *
+ * <p>Bucket 0 counts zeros, bucket <code>i</code> counts values in <code>[2^(i-1),2^i)</code>.
+ * Recording a value is O(1) and never allocates memory, percentiles are reported as the
+ * upper bound of the bucket they fall into.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class Histogram
+{
+    public static final int BUCKET_COUNT = 64;
+
+    private final long[] buckets = new long[ BUCKET_COUNT ];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Immutable copy of a histogram.
+     */
+    public static final class Snapshot
+    {
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+        private final long[] buckets;
+
+        @ConstructorProperties({"count","sum","min","max","buckets"})
+        public Snapshot(long count, long sum, long min, long max, long[] buckets)
+        {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.buckets = buckets.clone();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        public long getP50() {
+            return getPercentile( 50 );
+        }
+
+        public long getP90() {
+            return getPercentile( 90 );
+        }
+
+        public long getP99() {
+            return getPercentile( 99 );
+        }
+
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        /**
+         * Returns an upper bound for a percentile.
+         *
+         * @param percent 0...100
+         * @return
+         */
+        public long getPercentile(double percent)
+        {
+            if ( count == 0 ) {
+                return 0;
+            }
+            final long rank = Math.max( 1 , (long) Math.ceil( count * percent / 100.0 ) );
+            long seen = 0;
+            for ( int i = 0 ; i < buckets.length ; i++ )
+            {
+                seen += buckets[i];
+                if ( seen >= rank ) {
+                    return Math.min( max , upperBound( i ) );
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count="+count+", mean="+String.format("%.1f",getMean())+", min="+min+", max="+max+
+                    ", p50<="+getP50()+", p90<="+getP90()+", p99<="+getP99();
+        }
+    }
+
+    public void record(long value)
+    {
+        if ( value < 0 ) {
+            throw new IllegalArgumentException("Negative value: "+value);
+        }
+        buckets[ bucketIndex( value ) ]++;
+        count++;
+        sum += value;
+        if ( value < min ) {
+            min = value;
+        }
+        if ( value > max ) {
+            max = value;
+        }
+    }
+
+    public void reset()
+    {
+        Arrays.fill( buckets , 0 );
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot( count , sum , count == 0 ? 0 : min , max , buckets );
+    }
+
+    static int bucketIndex(long value) {
+        return value == 0 ? 0 : Math.min( BUCKET_COUNT - 1 , 64 - Long.numberOfLeadingZeros( value ) );
+    }
+
+    /**
+     * Returns the largest value that is counted in a bucket.
+     */
+    static long upperBound(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : ( 1L << bucket ) - 1;
+    }
+}
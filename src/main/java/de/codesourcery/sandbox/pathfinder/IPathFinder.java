@@ -0,0 +1,37 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public interface IPathFinder
+{
+    /**
+     * Searches the shortest path between two cells.
+     * 
+     * @param start
+     * @param target
+     * @return last node of the path (follow {@link PathNode#parent()} to get back to the start) 
+     * or <code>null</code> if the target is not reachable 
+     */
+    public PathNode findPath(PathNode start,PathNode target);
+
+    /**
+     * Sets the listener that receives the statistics of every query.
+     * 
+     * <p>Does nothing by default, for finders that do not collect statistics.</p>
+     * 
+     * @param listener listener or <code>null</code>
+     */
+    public default void setSearchListener(ISearchListener listener) {
+    }
+
+    /**
+     * Sets an index used to reject queries between unconnected cells without searching.
+     * 
+     * <p>With an index, queries starting or ending on an occupied cell return <code>null</code>.
+     * Does nothing by default.</p>
+     * 
+     * @param index index for the scene of this finder or <code>null</code>
+     */
+    public default void setConnectivityIndex(ConnectivityIndex index) {
+    }
+}
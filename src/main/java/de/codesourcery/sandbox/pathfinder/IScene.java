@@ -28,9 +28,105 @@ public interface IScene
     
     public IScene write(int x,int y,byte status);
     
+    /**
+     * Returns an immutable view of the current cells.
+     * 
+     * <p>The snapshot does not change when this scene is modified later on, so readers on other 
+     * threads can use it for a consistent view (e.g. for the duration of a path query) without 
+     * any locking. Writing to a snapshot throws an <code>IllegalStateException</code>, taking a
+     * snapshot of a snapshot returns the same instance.</p>
+     * 
+     * <p>Snapshots are optional: scenes that cannot provide them cheaply (like a writable 
+     * {@link MappedScene}, which may be larger than the heap) throw an 
+     * <code>UnsupportedOperationException</code>.</p>
+     * 
+     * <p>{@link ChunkedScene} shares unchanged chunks with its snapshots (copy-on-write), 
+     * other implementations may need to copy all cells. Unless documented otherwise, this method 
+     * needs to be called by the thread that modifies the scene.</p>
+     * 
+     * @return snapshot, its {@link #getVersion()} is the version of this scene at the time it was taken 
+     * @throws UnsupportedOperationException if the scene does not support snapshots (like {@link MappedScene})
+     */
+    public IScene snapshot();
+    
+    /**
+     * Returns whether the straight line between the centers of two cells 
+     * only passes through free cells.
+     * 
+     * <p>All cells touched by the line are checked (supercover). Where the line 
+     * passes exactly through a corner, both cells next to the corner need to be free, 
+     * so the line never squeezes between two diagonally adjacent obstacles.</p>
+     * 
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     * @return <code>false</code> if any cell on the line is occupied or outside of the scene 
+     */
+    public boolean hasLineOfSight(int x1,int y1,int x2,int y2);
+    
     public interface ISceneVisitor {
     	public void visit(int x,int y,byte cellStatus);
     }
 
     public void visitOccupiedCells(final ISceneVisitor cellVisitor);    
+
+    /**
+     * Receives runs of adjacent cells in a row that all have the same non-free value.
+     */
+    public interface IRowSpanVisitor {
+        
+        /**
+         * @param y row
+         * @param startX first column of the span
+         * @param endX column after the last one of the span
+         * @param cellStatus value of all cells in the span
+         */
+        public void visit(int y,int startX,int endX,byte cellStatus);
+    }
+    
+    /**
+     * Visits all maximal spans of occupied cells in row-major order.
+     * 
+     * <p>Unlike {@link #visitOccupiedCells(ISceneVisitor)}, this walks the cells in memory order
+     * and invokes the visitor once per run instead of once per cell. Use {@link RowSpanSpliterator}
+     * to process the spans as a (parallel) stream.</p>
+     * 
+     * @param visitor
+     */
+    public void visitOccupiedSpans(IRowSpanVisitor visitor);
+    
+    /**
+     * Visits all maximal spans of occupied cells in a range of rows, in row-major order.
+     * 
+     * @param firstRow
+     * @param endRow row after the last one to visit
+     * @param visitor
+     */
+    public void visitOccupiedSpans(int firstRow,int endRow,IRowSpanVisitor visitor);
+    
+    public interface ISceneListener {
+        
+        /**
+         * Invoked after cells inside a rectangle have been changed.
+         * 
+         * @param scene
+         * @param x 
+         * @param y
+         * @param width
+         * @param height
+         */
+        public void cellsChanged(IScene scene,int x,int y,int width,int height);
+    }
+    
+    /**
+     * Returns a counter that is incremented every time cells are changed.
+     * 
+     * @return
+     */
+    public long getVersion();
+    
+    public void addSceneListener(ISceneListener listener);
+    
+    public void removeSceneListener(ISceneListener listener);
 }
@@ -0,0 +1,14 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Receives the statistics of every query run by a path finder.
+ *
+ * <p>Invoked on the thread that ran the query, implementations used with
+ * {@link PathService} need to be thread-safe.</p>
+ *
+ * @see IPathFinder#setSearchListener(ISearchListener)
+ */
+public interface ISearchListener
+{
+    public void searchFinished(IPathFinder finder,SearchStatistics statistics);
+}
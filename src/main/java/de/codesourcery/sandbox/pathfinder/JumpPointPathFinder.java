@@ -0,0 +1,256 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Jump Point Search (Harabor/Grastien) for uniform-cost grids.
+ * 
+ * <p>Moves along the axis and diagonals using the same rules as 
+ * <code>new ArrayPathFinder(scene,true)</code> (no corner cutting), so both return paths
+ * of equal cost. Instead of queueing every neighbor, the search only queues 
+ * <i>jump points</i>: cells where an optimal path may have to change direction.
+ * All other cells on straight or diagonal runs are skipped.</p>
+ * 
+ * <p>The returned {@link PathNode} chain contains every cell of the path,
+ * not just the jump points.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class JumpPointPathFinder extends AbstractPathFinder
+{
+    private int targetX;
+    private int targetY;
+
+    public JumpPointPathFinder(IScene scene) {
+        super(scene);
+    }
+
+    @Override
+    protected int findPath(int startCell, int targetCell)
+    {
+        startSearch();
+
+        targetX = cellX( targetCell );
+        targetY = cellY( targetCell );
+
+        visit( startCell , 0 , -1 );
+        openList.insertOrUpdate( startCell , openListKey( estimatedCost( startCell ) , 0 ) );
+
+        while ( ! openList.isEmpty() ) 
+        {
+            final int current = openList.poll();
+            if ( current == targetCell ) {
+                return current;
+            }
+            markClosed( current );
+            identifySuccessors( current );
+        }
+        return -1;
+    }
+
+    private void identifySuccessors(int current) 
+    {
+        final int x = cellX( current );
+        final int y = cellY( current );
+
+        final int parentCell = parent[current];
+        if ( parentCell == -1 ) 
+        {
+            // start node, try all directions
+            for ( int dx = -1 ; dx <= 1 ; dx++ ) 
+            {
+                for ( int dy = -1 ; dy <= 1 ; dy++ ) 
+                {
+                    if ( ( dx != 0 || dy != 0 ) && canMove( x , y , dx , dy ) ) {
+                        jumpAndAdd( current , x , y , dx , dy );
+                    }
+                }
+            }
+            return;
+        }
+
+        final int dx = Integer.signum( x - cellX( parentCell ) );
+        final int dy = Integer.signum( y - cellY( parentCell ) );
+
+        if ( dx != 0 && dy != 0 ) 
+        {
+            final boolean vertical = isFree( x , y + dy );
+            final boolean horizontal = isFree( x + dx , y );
+            if ( vertical ) {
+                jumpAndAdd( current , x , y , 0 , dy );
+            }
+            if ( horizontal ) {
+                jumpAndAdd( current , x , y , dx , 0 );
+            }
+            if ( vertical && horizontal && isFree( x + dx , y + dy ) ) {
+                jumpAndAdd( current , x , y , dx , dy );
+            }
+        } 
+        else if ( dx != 0 ) 
+        {
+            final boolean next = isFree( x + dx , y );
+            final boolean up = isFree( x , y - 1 );
+            final boolean down = isFree( x , y + 1 );
+            if ( next ) 
+            {
+                jumpAndAdd( current , x , y , dx , 0 );
+                if ( up && isFree( x + dx , y - 1 ) ) {
+                    jumpAndAdd( current , x , y , dx , -1 );
+                }
+                if ( down && isFree( x + dx , y + 1 ) ) {
+                    jumpAndAdd( current , x , y , dx , 1 );
+                }
+            }
+            if ( up ) {
+                jumpAndAdd( current , x , y , 0 , -1 );
+            }
+            if ( down ) {
+                jumpAndAdd( current , x , y , 0 , 1 );
+            }
+        } 
+        else 
+        {
+            final boolean next = isFree( x , y + dy );
+            final boolean left = isFree( x - 1 , y );
+            final boolean right = isFree( x + 1 , y );
+            if ( next ) 
+            {
+                jumpAndAdd( current , x , y , 0 , dy );
+                if ( left && isFree( x - 1 , y + dy ) ) {
+                    jumpAndAdd( current , x , y , -1 , dy );
+                }
+                if ( right && isFree( x + 1 , y + dy ) ) {
+                    jumpAndAdd( current , x , y , 1 , dy );
+                }
+            }
+            if ( left ) {
+                jumpAndAdd( current , x , y , -1 , 0 );
+            }
+            if ( right ) {
+                jumpAndAdd( current , x , y , 1 , 0 );
+            }
+        }
+    }
+
+    private boolean canMove(int x,int y,int dx,int dy) 
+    {
+        if ( dx != 0 && dy != 0 && ( ! isFree( x + dx , y ) || ! isFree( x , y + dy ) ) ) {
+            return false;
+        }
+        return isFree( x + dx , y + dy );
+    }
+
+    private void jumpAndAdd(int current,int x,int y,int dx,int dy) 
+    {
+        final int jumpPoint = jump( x + dx , y + dy , dx , dy );
+        if ( jumpPoint == -1 || isClosed( jumpPoint ) ) {
+            return;
+        }
+        final int jx = cellX( jumpPoint );
+        final int jy = cellY( jumpPoint );
+        final int g = gScore[current] + octileDistance( jx - x , jy - y );
+        if ( isVisited( jumpPoint ) && gScore[jumpPoint] <= g ) {
+            return;
+        }
+        visit( jumpPoint , g , current );
+        openList.insertOrUpdate( jumpPoint , openListKey( g + estimatedCost( jumpPoint ) , g ) );
+    }
+
+    /**
+     * Moves from a cell in a fixed direction until a jump point is found.
+     * 
+     * @param x first cell to look at
+     * @param y first cell to look at
+     * @param dx
+     * @param dy
+     * @return jump point or -1 if the run ended at an obstacle or the scene border
+     */
+    private int jump(int x,int y,int dx,int dy) 
+    {
+        while ( true ) 
+        {
+            if ( ! isFree( x , y ) ) {
+                return -1;
+            }
+            if ( x == targetX && y == targetY ) {
+                return cellIndex( x , y );
+            }
+
+            if ( dx != 0 && dy != 0 ) 
+            {
+                // diagonal runs stop wherever a straight run would find a jump point
+                if ( jump( x + dx , y , dx , 0 ) != -1 || jump( x , y + dy , 0 , dy ) != -1 ) {
+                    return cellIndex( x , y );
+                }
+                if ( ! isFree( x + dx , y ) || ! isFree( x , y + dy ) ) {
+                    return -1;
+                }
+            } 
+            else if ( dx != 0 ) 
+            {
+                // forced neighbors: a cell above/below became reachable 
+                // that could not be reached diagonally from the previous cell
+                if ( ( isFree( x , y - 1 ) && ! isFree( x - dx , y - 1 ) ) || 
+                     ( isFree( x , y + 1 ) && ! isFree( x - dx , y + 1 ) ) ) 
+                {
+                    return cellIndex( x , y );
+                }
+            } 
+            else 
+            {
+                if ( ( isFree( x - 1 , y ) && ! isFree( x - 1 , y - dy ) ) || 
+                     ( isFree( x + 1 , y ) && ! isFree( x + 1 , y - dy ) ) ) 
+                {
+                    return cellIndex( x , y );
+                }
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    private int estimatedCost(int cell) 
+    {
+        incHeuristicCalls();
+        return octileDistance( targetX - cellX( cell ) , targetY - cellY( cell ) );
+    }
+
+    /**
+     * Expands the jump points into a chain of adjacent cells.
+     */
+    @Override
+    protected PathNode toPathNode(int targetCell)
+    {
+        int count = 0;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            count++;
+        }
+        final int[] jumpPoints = new int[count];
+        int i = count;
+        for ( int cell = targetCell ; cell != -1 ; cell = parent[cell] ) {
+            jumpPoints[--i] = cell;
+        }
+
+        int x = cellX( jumpPoints[0] );
+        int y = cellY( jumpPoints[0] );
+        PathNode result = new PathNode( x , y );
+        for ( i = 1 ; i < count ; i++ ) 
+        {
+            final int nextX = cellX( jumpPoints[i] );
+            final int nextY = cellY( jumpPoints[i] );
+            final int dx = Integer.signum( nextX - x );
+            final int dy = Integer.signum( nextY - y );
+            final int stepCost = dx != 0 && dy != 0 ? DIAGONAL_COST : STRAIGHT_COST;
+            while ( x != nextX || y != nextY ) 
+            {
+                x += dx;
+                y += dy;
+                final int g = result.g() + stepCost;
+                result = new PathNode( x , y , result );
+                result.g( g );
+                result.f( g );
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,350 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pointerless quadtree that stores cells as Morton (Z-order) keys in a sorted <code>long[]</code>.
+ *
+ * <p>Interleaving the bits of x and y gives every aligned quadtree block of size 2^k x 2^k
+ * a contiguous range of keys, so the tree itself never needs to be materialized: a point lookup is a
+ * binary search, a range query decomposes the rectangle into aligned blocks and scans the key
+ * interval of each block, skipping blocks without entries after a single binary search. Entries
+ * are stored in two parallel primitive arrays (9 bytes per entry), which makes scans cache-friendly
+ * and serialization a plain array dump.</p>
+ *
+ * <p>Every cell stores a non-zero <code>byte</code>, storing 0 removes the cell. Inserting and removing
+ * shift the arrays (O(n)), so the tree is best suited for data that is read much more often than
+ * it is modified.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class LinearQuadTree
+{
+    public static final int MAGIC = 0x504c5154; // 'PLQT'
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int width;
+    private final int height;
+    // edge length of the square covered by the root
+    private final int size;
+
+    private long[] keys;
+    private byte[] values;
+    private int entryCount;
+
+    public interface IEntryVisitor
+    {
+        public void visit(int x,int y,byte value);
+    }
+
+    public LinearQuadTree(int width,int height)
+    {
+        if ( width < 1 || height < 1 ) {
+            throw new IllegalArgumentException("Invalid width/height: "+width+" x "+height);
+        }
+        this.width = width;
+        this.height = height;
+        int s = 1;
+        while ( s < width || s < height ) {
+            s <<= 1;
+        }
+        this.size = s;
+        this.keys = new long[ INITIAL_CAPACITY ];
+        this.values = new byte[ INITIAL_CAPACITY ];
+    }
+
+    private LinearQuadTree(int width,int height,long[] keys,byte[] values)
+    {
+        this(width,height);
+        this.keys = keys;
+        this.values = values;
+        this.entryCount = keys.length;
+    }
+
+    /**
+     * Returns the Morton key of a cell, bit <code>2i</code> is bit <code>i</code> of x
+     * and bit <code>2i+1</code> is bit <code>i</code> of y.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public static long mortonKey(int x,int y) {
+        return spreadBits( x ) | ( spreadBits( y ) << 1 );
+    }
+
+    public static int mortonX(long key) {
+        return compactBits( key );
+    }
+
+    public static int mortonY(long key) {
+        return compactBits( key >>> 1 );
+    }
+
+    /**
+     * Moves the lower 32 bits of a value to the even bit positions.
+     */
+    private static long spreadBits(int value)
+    {
+        long v = value & 0xffffffffL;
+        v = ( v | ( v << 16 ) ) & 0x0000ffff0000ffffL;
+        v = ( v | ( v << 8 ) ) & 0x00ff00ff00ff00ffL;
+        v = ( v | ( v << 4 ) ) & 0x0f0f0f0f0f0f0f0fL;
+        v = ( v | ( v << 2 ) ) & 0x3333333333333333L;
+        v = ( v | ( v << 1 ) ) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static int compactBits(long value)
+    {
+        long v = value & 0x5555555555555555L;
+        v = ( v | ( v >>> 1 ) ) & 0x3333333333333333L;
+        v = ( v | ( v >>> 2 ) ) & 0x0f0f0f0f0f0f0f0fL;
+        v = ( v | ( v >>> 4 ) ) & 0x00ff00ff00ff00ffL;
+        v = ( v | ( v >>> 8 ) ) & 0x0000ffff0000ffffL;
+        v = ( v | ( v >>> 16 ) ) & 0x00000000ffffffffL;
+        return (int) v;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of stored cells.
+     *
+     * @return
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the value of a cell, O(log n).
+     *
+     * @param x
+     * @param y
+     * @return value or 0 if nothing is stored for the cell
+     */
+    public byte get(int x,int y)
+    {
+        final int index = Arrays.binarySearch( keys , 0 , entryCount , mortonKey( x , y ) );
+        return index >= 0 ? values[ index ] : 0;
+    }
+
+    /**
+     * Stores the value of a cell.
+     *
+     * @param x
+     * @param y
+     * @param value value to store, 0 removes the cell
+     * @return <code>true</code> if the value of the cell changed
+     */
+    public boolean store(int x,int y,byte value)
+    {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            throw new IllegalArgumentException("Cell outside of tree: "+x+","+y);
+        }
+        final int index = Arrays.binarySearch( keys , 0 , entryCount , mortonKey( x , y ) );
+        if ( index >= 0 )
+        {
+            if ( values[ index ] == value ) {
+                return false;
+            }
+            if ( value != 0 ) {
+                values[ index ] = value;
+                return true;
+            }
+            System.arraycopy( keys , index + 1 , keys , index , entryCount - index - 1 );
+            System.arraycopy( values , index + 1 , values , index , entryCount - index - 1 );
+            entryCount--;
+            return true;
+        }
+        if ( value == 0 ) {
+            return false;
+        }
+        final int insertionPoint = -( index + 1 );
+        if ( entryCount == keys.length )
+        {
+            final int capacity = Math.max( INITIAL_CAPACITY , keys.length * 2 );
+            keys = Arrays.copyOf( keys , capacity );
+            values = Arrays.copyOf( values , capacity );
+        }
+        System.arraycopy( keys , insertionPoint , keys , insertionPoint + 1 , entryCount - insertionPoint );
+        System.arraycopy( values , insertionPoint , values , insertionPoint + 1 , entryCount - insertionPoint );
+        keys[ insertionPoint ] = mortonKey( x , y );
+        values[ insertionPoint ] = value;
+        entryCount++;
+        return true;
+    }
+
+    /**
+     * Returns whether any cell inside a rectangle is stored.
+     *
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @return
+     */
+    public boolean containsValues(int x,int y,int width,int height)
+    {
+        if ( width <= 0 || height <= 0 ) {
+            return false;
+        }
+        final IEntryVisitor ignore = new IEntryVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte value) {
+            }
+        };
+        return visitBlocks( 0 , 0 , size , x , y , x + width , y + height , ignore , true );
+    }
+
+    /**
+     * Visits all stored cells inside a rectangle in Morton order.
+     *
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @param visitor
+     */
+    public void visitRange(int x,int y,int width,int height,IEntryVisitor visitor)
+    {
+        if ( width > 0 && height > 0 ) {
+            visitBlocks( 0 , 0 , size , x , y , x + width , y + height , visitor , false );
+        }
+    }
+
+    /**
+     * Visits all stored cells in Morton order.
+     *
+     * @param visitor
+     */
+    public void visitAll(IEntryVisitor visitor)
+    {
+        for ( int i = 0 ; i < entryCount ; i++ ) {
+            visitor.visit( mortonX( keys[i] ) , mortonY( keys[i] ) , values[i] );
+        }
+    }
+
+    /**
+     * Visits the entries of an aligned block that overlap the (exclusive) query rectangle.
+     *
+     * @return <code>true</code> if <code>stopAtFirst</code> was set and an entry was found
+     */
+    private boolean visitBlocks(int bx,int by,int blockSize,int qx1,int qy1,int qx2,int qy2,IEntryVisitor visitor,boolean stopAtFirst)
+    {
+        if ( bx >= qx2 || by >= qy2 || bx + blockSize <= qx1 || by + blockSize <= qy1 ) {
+            return false;
+        }
+        final long firstKey = mortonKey( bx , by );
+        final long lastKey = firstKey + (long) blockSize * blockSize - 1;
+        final int first = lowerBound( firstKey );
+        if ( first == entryCount || keys[ first ] > lastKey ) {
+            // no entries in the whole block
+            return false;
+        }
+        if ( bx >= qx1 && by >= qy1 && bx + blockSize <= qx2 && by + blockSize <= qy2 )
+        {
+            // block completely inside the query, scan its key interval
+            for ( int i = first ; i < entryCount && keys[i] <= lastKey ; i++ )
+            {
+                visitor.visit( mortonX( keys[i] ) , mortonY( keys[i] ) , values[i] );
+                if ( stopAtFirst ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final int half = blockSize >>> 1;
+        // children in Morton order: NW, NE, SW, SE
+        return visitBlocks( bx , by , half , qx1 , qy1 , qx2 , qy2 , visitor , stopAtFirst ) ||
+               visitBlocks( bx + half , by , half , qx1 , qy1 , qx2 , qy2 , visitor , stopAtFirst ) ||
+               visitBlocks( bx , by + half , half , qx1 , qy1 , qx2 , qy2 , visitor , stopAtFirst ) ||
+               visitBlocks( bx + half , by + half , half , qx1 , qy1 , qx2 , qy2 , visitor , stopAtFirst );
+    }
+
+    /**
+     * Returns the index of the first key that is not smaller than a key.
+     */
+    private int lowerBound(long key)
+    {
+        int low = 0;
+        int high = entryCount;
+        while ( low < high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            if ( keys[ mid ] < key ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the tree as header (magic, width, height, entry count) followed by all keys and all values.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt( MAGIC );
+        out.writeInt( width );
+        out.writeInt( height );
+        out.writeInt( entryCount );
+        for ( int i = 0 ; i < entryCount ; i++ ) {
+            out.writeLong( keys[i] );
+        }
+        out.write( values , 0 , entryCount );
+    }
+
+    /**
+     * Reads a tree written by {@link #write(DataOutput)}.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static LinearQuadTree read(DataInput in) throws IOException
+    {
+        if ( in.readInt() != MAGIC ) {
+            throw new IOException("Not a linear quadtree");
+        }
+        final int width = in.readInt();
+        final int height = in.readInt();
+        final int count = in.readInt();
+        if ( width < 1 || height < 1 || count < 0 ) {
+            throw new IOException("Corrupted header: "+width+" x "+height+", "+count+" entries");
+        }
+        final long[] keys = new long[ count ];
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            keys[i] = in.readLong();
+            if ( ( i > 0 && keys[i] <= keys[i-1] ) || mortonX( keys[i] ) >= width || mortonY( keys[i] ) >= height ) {
+                throw new IOException("Corrupted key #"+i+": "+keys[i]);
+            }
+        }
+        final byte[] values = new byte[ count ];
+        in.readFully( values );
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            if ( values[i] == 0 ) {
+                throw new IOException("Corrupted value #"+i);
+            }
+        }
+        return new LinearQuadTree( width , height , keys , values );
+    }
+}
@@ -10,22 +10,30 @@ import java.awt.Point;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
-import de.codesourcery.sandbox.pathfinder.IScene.ISceneVisitor;
+import de.codesourcery.sandbox.pathfinder.SceneFormat.ISceneFactory;
 import de.codesourcery.sandbox.pathfinder.SceneRenderer.MarkerType;
+import de.codesourcery.sandbox.pathfinder.SceneRenderer.RenderMode;
 
 public class Main extends JFrame
 {
@@ -39,15 +47,34 @@ public class Main extends JFrame
     
     private static final Color ENDPOINT_MARKER = Color.GREEN;
     
+    // modified by the Swing thread only
     private volatile IScene scene;
-    private volatile PathFinder finder;
+    // snapshot of the scene searched by the finder, only used by the search thread
+    private volatile SnapshotView searchScene;
+    private volatile IPathFinder finder;
+    private volatile SearchMode searchMode = SearchMode.ASTAR;
     private volatile SceneRenderer renderer;    
+    private final SearchMetrics searchMetrics = new SearchMetrics();
+    private volatile SearchStatistics lastStatistics;
+    private volatile ConnectivityIndex connectivityIndex;
     private final TreeMap<Long,Point> marked = new TreeMap<>();    
     private JPanel panel;
     private final File tmpFile = new File("/tmp/scene.bin");
     
     private final MyMouseListener mouseListener = new MyMouseListener();
     
+    // runs all searches, so the scene can be edited while a search is running
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        
+        @Override
+        public Thread newThread(Runnable r) 
+        {
+            final Thread result = new Thread( r , "search" );
+            result.setDaemon( true );
+            return result;
+        }
+    });
+    
     public static void main(String[] args) throws IOException
     {
         new Main().run();
@@ -55,11 +82,22 @@ public class Main extends JFrame
     
     protected IScene setup(JPanel panel , List<Point> markers, int width,int height) 
     {
-        scene = Scene.createInstance(width,height);
+        final IScene newScene = new ChunkedScene(width,height);
+        scene = newScene;
         renderer = new SceneRenderer(scene,panel);
         renderer.setRenderGrid( RENDER_GRID );
+        renderer.setRenderMode( RenderMode.TILES );
         
-        finder = new PathFinder( scene );
+        searchExecutor.execute( new Runnable() {
+
+            @Override
+            public void run() 
+            {
+                searchScene = new SnapshotView( newScene );
+                connectivityIndex = new ConnectivityIndex( searchScene );
+                finder = createPathFinder();
+            }
+        });
         marked.clear();
         for ( Point p : markers ) {
             final long id = renderer.addMarker( p.x , p.y , ENDPOINT_MARKER , MarkerType.ENDPOINT );
@@ -68,8 +106,31 @@ public class Main extends JFrame
         return scene;
     }
     
+    private IPathFinder createPathFinder() 
+    {
+        final IPathFinder result = searchMode.createPathFinder( searchScene );
+        final ISearchListener listener = new ISearchListener() {
+
+            @Override
+            public void searchFinished(IPathFinder finder, SearchStatistics statistics) 
+            {
+                lastStatistics = statistics;
+                searchMetrics.searchFinished( finder , statistics );
+            }
+        };
+        result.setSearchListener( listener );
+        result.setConnectivityIndex( connectivityIndex );
+        return result;
+    }
+
     public void run() throws IOException
     {
+        try {
+            searchMetrics.register();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+
         final JPanel panel = new JPanel() {
             
             @Override
@@ -239,10 +300,40 @@ public class Main extends JFrame
                 return;
             }
             
+            if ( e.getKeyChar() == 'm' ) 
+            {
+                searchMode = searchMode.next();
+                searchExecutor.execute( new Runnable() {
+
+                    @Override
+                    public void run() 
+                    {
+                        if ( finder instanceof HierarchicalPathFinder ) {
+                            ((HierarchicalPathFinder) finder).dispose();
+                        } else if ( finder instanceof DStarLitePathFinder ) {
+                            ((DStarLitePathFinder) finder).dispose();
+                        }
+                        finder = createPathFinder();
+                        searchMetrics.reset();
+                        System.out.println("Search mode: "+searchMode);
+                    }
+                });
+                return;
+            }
+            
+            if ( e.getKeyChar() == 'r' ) 
+            {
+                final RenderMode mode = renderer.getRenderMode() == RenderMode.TILES ? RenderMode.DIRECT : RenderMode.TILES;
+                renderer.setRenderMode( mode );
+                System.out.println("Render mode: "+mode);
+                panel.repaint();
+                return;
+            }
+            
             if ( e.getKeyChar() == 's' ) {
                 System.out.println("Saving as "+tmpFile.getAbsolutePath());
                 try {
-                    final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmpFile));
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
                     try 
                     {
                         // save start/end points
@@ -252,7 +343,7 @@ public class Main extends JFrame
                             out.writeInt( p.y );
                         }
                         // save scene
-                        Scene.save( out , scene );
+                        SceneFormat.write( scene , out );
                         System.out.println("Saved.");
                     } finally {
                         out.close();
@@ -268,27 +359,27 @@ public class Main extends JFrame
                 System.out.println("Loading from "+tmpFile.getAbsolutePath());
                 try 
                 {
-                    final ObjectInputStream in = new ObjectInputStream(new FileInputStream(tmpFile));     
-                    final int markers = in.readInt();
-                    final List<Point> newMarkers = new ArrayList<>();
-                    for ( int i = 0 ; i < markers ; i++ ) {
-                        Point p = new Point( in.readInt() , in.readInt() );
-                        newMarkers.add( p );
-                    }
-                    
-                    final IScene otherScene = Scene.load( in );
-                    
-                    setup( panel , newMarkers , otherScene.getWidth() , otherScene.getHeight() );
-                    
-                    final ISceneVisitor v= new ISceneVisitor() {
+                    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tmpFile)));
+                    try 
+                    {
+                        final int markers = in.readInt();
+                        final List<Point> newMarkers = new ArrayList<>();
+                        for ( int i = 0 ; i < markers ; i++ ) {
+                            Point p = new Point( in.readInt() , in.readInt() );
+                            newMarkers.add( p );
+                        }
 
-						@Override
-						public void visit(int x, int y, byte cellStatus) {
-						    scene.write( x , y , cellStatus );
-						}
-                    };
-                    
-                    otherScene.visitOccupiedCells( v );
+                        // load straight into the new scene
+                        SceneFormat.read( in , new ISceneFactory() {
+
+                            @Override
+                            public IScene createScene(int width, int height) {
+                                return setup( panel , newMarkers , width , height );
+                            }
+                        });
+                    } finally {
+                        in.close();
+                    }
                     
                     System.out.println("loaded.");
                     panel.repaint();
@@ -307,27 +398,50 @@ public class Main extends JFrame
                 
                 final PathFinder.PathNode start = nodes.get(0);
                 final PathFinder.PathNode end = nodes.get(1);
+                searchExecutor.execute( new Runnable() {
 
-                System.out.print("Searching path ...");
-                long time = -System.currentTimeMillis();
-                PathFinder.PathNode path = finder.findPath( start , end );
-                time += System.currentTimeMillis();
-                if ( path == null ) {
-                    System.out.println(" no path found , time: "+time+" ms");
-                } else {
-                    System.out.println(" found ("+path.getNodeCount()+" nodes), time: "+time+" ms");
-                }
-                
-                if ( lastPathMarkerId != null ) {
-                    renderer.clearMarker( lastPathMarkerId );
-                }
-                
-                if ( path != null ) {
-                    lastPathMarkerId = renderer.addMarkers( path , Color.BLUE );
-                }
-                panel.repaint();
+                    @Override
+                    public void run() {
+                        search( start , end );
+                    }
+                });
             }
-        };
-        	
+        }
+        
+        /**
+         * Searches a snapshot of the current scene, invoked by the search thread.
+         */
+        private void search(PathFinder.PathNode start,PathFinder.PathNode end) 
+        {
+            searchScene.refresh();
+
+            System.out.print("Searching path ("+searchMode+") ...");
+            lastStatistics = null;
+            long time = -System.currentTimeMillis();
+            final PathFinder.PathNode path = finder.findPath( start , end );
+            time += System.currentTimeMillis();
+            if ( path == null ) {
+                System.out.println(" no path found , time: "+time+" ms");
+            } else {
+                System.out.println(" found ("+path.getNodeCount()+" nodes), time: "+time+" ms");
+            }
+            if ( lastStatistics != null ) {
+                System.out.println( lastStatistics );
+                System.out.println( searchMetrics );
+            }
+            
+            SwingUtilities.invokeLater( new Runnable() {
+
+                @Override
+                public void run() 
+                {
+                    if ( lastPathMarkerId != null ) {
+                        renderer.clearMarker( lastPathMarkerId );
+                    }
+                    lastPathMarkerId = path != null ? renderer.addMarkers( path , Color.BLUE ) : null;
+                    panel.repaint();
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,337 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Scene backed by a memory-mapped file.
+ *
+ * <p>Opening a scene only maps the file, cells are paged in by the operating system
+ * when they are first accessed and writes go directly to the file, so scenes may be
+ * much larger than the Java heap. Files larger than 2 GB are mapped as several
+ * segments of whole rows.</p>
+ *
+ * <p>Cells are stored either as one byte per cell or as one bit per cell (rows padded to
+ * 64 bits). Any number of threads may read concurrently, writes need to be serialized
+ * by the caller.</p>
+ *
+ * <p>File layout: a {@link #HEADER_SIZE} byte header (magic, format version, width, height,
+ * layout) followed by the rows.</p>
+ */
+public final class MappedScene extends AbstractScene
+{
+    public static final int MAGIC = 0x50464d53; // 'PFMS'
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+
+    // largest mapped segment
+    private static final long MAX_SEGMENT_SIZE = 1 << 30;
+
+    public static enum Layout
+    {
+        /**
+         * One byte per cell.
+         */
+        BYTES {
+            @Override
+            protected long bytesPerRow(int width) {
+                return width;
+            }
+        },
+        /**
+         * One bit per cell, each row padded to a multiple of 64 bits.
+         */
+        BITS {
+            @Override
+            protected long bytesPerRow(int width) {
+                return ( ( width + 63L ) >>> 6 ) * 8;
+            }
+        };
+
+        protected abstract long bytesPerRow(int width);
+    }
+
+    private final RandomAccessFile file;
+    private final Layout layout;
+    private final boolean readOnly;
+    private final int bytesPerRow;
+    private final int rowsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    private MappedScene(RandomAccessFile file,int width,int height,Layout layout,boolean readOnly) throws IOException
+    {
+        super(width,height);
+        this.file = file;
+        this.layout = layout;
+        this.readOnly = readOnly;
+        if ( layout.bytesPerRow( width ) > MAX_SEGMENT_SIZE ) {
+            throw new IllegalArgumentException("Scene too wide: "+width);
+        }
+        this.bytesPerRow = (int) layout.bytesPerRow( width );
+        this.rowsPerSegment = (int) Math.min( height , MAX_SEGMENT_SIZE / bytesPerRow );
+
+        final FileChannel channel = file.getChannel();
+        final int segmentCount = ( height + rowsPerSegment - 1 ) / rowsPerSegment;
+        this.segments = new MappedByteBuffer[ segmentCount ];
+        for ( int i = 0 ; i < segmentCount ; i++ )
+        {
+            final int rows = Math.min( rowsPerSegment , height - i * rowsPerSegment );
+            final long offset = HEADER_SIZE + i * (long) rowsPerSegment * bytesPerRow;
+            segments[i] = channel.map( readOnly ? MapMode.READ_ONLY : MapMode.READ_WRITE , offset , rows * (long) bytesPerRow );
+        }
+    }
+
+    /**
+     * Creates a new file holding an empty scene, an existing file is overwritten.
+     *
+     * @param file
+     * @param width
+     * @param height
+     * @param layout
+     * @return
+     * @throws IOException
+     */
+    public static MappedScene create(File file,int width,int height,Layout layout) throws IOException
+    {
+        if ( width < 1 || height < 1 ) {
+            throw new IllegalArgumentException("Invalid width/height: "+width+" x "+height);
+        }
+        final RandomAccessFile raf = new RandomAccessFile( file , "rw" );
+        try
+        {
+            raf.setLength( 0 );
+            raf.setLength( HEADER_SIZE + layout.bytesPerRow( width ) * height );
+
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( MAGIC ).putInt( FORMAT_VERSION ).putInt( width ).putInt( height ).putInt( layout.ordinal() );
+            header.rewind();
+            raf.getChannel().write( header , 0 );
+            return new MappedScene( raf , width , height , layout , false );
+        }
+        catch(IOException | RuntimeException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new file holding a copy of a scene, an existing file is overwritten.
+     *
+     * @param file
+     * @param scene
+     * @param layout
+     * @return
+     * @throws IOException
+     */
+    public static MappedScene create(File file,IScene scene,Layout layout) throws IOException
+    {
+        final MappedScene result = create( file , scene.getWidth() , scene.getHeight() , layout );
+        scene.visitOccupiedCells( new ISceneVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte cellStatus) {
+                result.write( x , y , cellStatus );
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Opens a file created by {@link #create(File, int, int, Layout)}.
+     *
+     * @param file
+     * @param readOnly
+     * @return
+     * @throws IOException
+     */
+    public static MappedScene open(File file,boolean readOnly) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile( file , readOnly ? "r" : "rw" );
+        try
+        {
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            while ( header.hasRemaining() )
+            {
+                if ( raf.getChannel().read( header , header.position() ) < 0 ) {
+                    throw new IOException("File too short: "+file.getAbsolutePath());
+                }
+            }
+            header.flip();
+            if ( header.getInt() != MAGIC ) {
+                throw new IOException("Not a scene file: "+file.getAbsolutePath());
+            }
+            final int version = header.getInt();
+            if ( version != FORMAT_VERSION ) {
+                throw new IOException("Unsupported file format version "+version+": "+file.getAbsolutePath());
+            }
+            final int width = header.getInt();
+            final int height = header.getInt();
+            final int layoutIndex = header.getInt();
+            if ( width < 1 || height < 1 || layoutIndex < 0 || layoutIndex >= Layout.values().length ) {
+                throw new IOException("Corrupted header: "+file.getAbsolutePath());
+            }
+            final Layout layout = Layout.values()[ layoutIndex ];
+            if ( raf.length() < HEADER_SIZE + layout.bytesPerRow( width ) * height ) {
+                throw new IOException("File too short: "+file.getAbsolutePath());
+            }
+            return new MappedScene( raf , width , height , layout , readOnly );
+        }
+        catch(IOException | RuntimeException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Writes all changes to the storage device.
+     */
+    public void force()
+    {
+        for ( MappedByteBuffer segment : segments ) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Closes the file, the scene must not be used afterwards.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        if ( ! readOnly ) {
+            force();
+        }
+        file.close();
+    }
+
+    @Override
+    public byte read(int x, int y)
+    {
+        if ( layout == Layout.BYTES ) {
+            return segments[ y / rowsPerSegment ].get( ( y % rowsPerSegment ) * bytesPerRow + x );
+        }
+        return isFree( x , y ) ? IScene.FREE : IScene.OCCUPIED;
+    }
+
+    @Override
+    public boolean isFree(int x, int y)
+    {
+        final ByteBuffer segment = segments[ y / rowsPerSegment ];
+        final int rowOffset = ( y % rowsPerSegment ) * bytesPerRow;
+        if ( layout == Layout.BYTES ) {
+            return segment.get( rowOffset + x ) == IScene.FREE;
+        }
+        return ( segment.get( rowOffset + ( x >>> 3 ) ) & ( 1 << ( x & 7 ) ) ) == 0;
+    }
+
+    @Override
+    public IScene write(int x, int y, byte status)
+    {
+        if ( readOnly ) {
+            throw new IllegalStateException("Scene is read-only");
+        }
+        final ByteBuffer segment = segments[ y / rowsPerSegment ];
+        final int rowOffset = ( y % rowsPerSegment ) * bytesPerRow;
+        final int index;
+        final byte newValue;
+        if ( layout == Layout.BYTES ) {
+            index = rowOffset + x;
+            newValue = status;
+        }
+        else
+        {
+            index = rowOffset + ( x >>> 3 );
+            final int bits = segment.get( index );
+            newValue = (byte) ( status == IScene.FREE ? bits & ~( 1 << ( x & 7 ) ) : bits | ( 1 << ( x & 7 ) ) );
+        }
+        if ( segment.get( index ) != newValue )
+        {
+            segment.put( index , newValue );
+            notifyCellsChanged( x , y , 1 , 1 );
+        }
+        return this;
+    }
+
+    /**
+     * Returns this scene if it is read-only. Copying the cells of a writable scene to the heap
+     * would defeat scenes larger than the heap, so snapshots of those are not supported.
+     *
+     * @throws UnsupportedOperationException if the scene is writable
+     */
+    @Override
+    public IScene snapshot()
+    {
+        if ( ! readOnly ) {
+            throw new UnsupportedOperationException("Snapshots of writable mapped scenes are not supported");
+        }
+        return this;
+    }
+
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor)
+    {
+        if ( layout == Layout.BYTES ) {
+            super.visitOccupiedSpans( firstRow , endRow , visitor );
+            return;
+        }
+        checkRows( firstRow , endRow );
+        final BitSpanCollector collector = new BitSpanCollector( visitor , width );
+        for ( int y = firstRow ; y < endRow ; y++ )
+        {
+            final ByteBuffer segment = segments[ y / rowsPerSegment ];
+            final int rowOffset = ( y % rowsPerSegment ) * bytesPerRow;
+            collector.startRow( y );
+            for ( int word = 0 ; word < bytesPerRow ; word += 8 ) {
+                collector.add( Long.reverseBytes( segment.getLong( rowOffset + word ) ) , word * 8 );
+            }
+            collector.endRow();
+        }
+    }
+
+    @Override
+    public void visitOccupiedCells(ISceneVisitor cellVisitor)
+    {
+        for ( int y = 0 ; y < height ; y++ )
+        {
+            final ByteBuffer segment = segments[ y / rowsPerSegment ];
+            final int rowOffset = ( y % rowsPerSegment ) * bytesPerRow;
+            if ( layout == Layout.BYTES )
+            {
+                for ( int x = 0 ; x < width ; x++ )
+                {
+                    final byte value = segment.get( rowOffset + x );
+                    if ( value != IScene.FREE ) {
+                        cellVisitor.visit( x , y , value );
+                    }
+                }
+                continue;
+            }
+            // rows are padded to 64 bits, scan a word at a time
+            for ( int word = 0 ; word < bytesPerRow ; word += 8 )
+            {
+                long bits = Long.reverseBytes( segment.getLong( rowOffset + word ) );
+                while ( bits != 0 )
+                {
+                    cellVisitor.visit( word * 8 + Long.numberOfTrailingZeros( bits ) , y , IScene.OCCUPIED );
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+}
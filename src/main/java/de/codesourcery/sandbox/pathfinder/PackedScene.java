@@ -0,0 +1,190 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Scene that stores one bit per cell, 64 cells per <code>long</code>.
+ *
+ * <p>Each row starts at a word boundary, so row scans and rectangle fills work
+ * on whole words. Only {@link IScene#FREE} and {@link IScene#OCCUPIED} can be stored,
+ * writing any other non-free value marks the cell as occupied.</p>
+ */
+public final class PackedScene extends AbstractScene
+{
+    private static final long ALL_BITS = 0xffffffffffffffffL;
+
+    private final int wordsPerRow;
+    private final long[] data;
+
+    public PackedScene(int width,int height)
+    {
+        super(width,height);
+        this.wordsPerRow = ( width + 63 ) >>> 6;
+        final long words = wordsPerRow * (long) height;
+        if ( words > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalArgumentException("Scene too large: "+width+" x "+height);
+        }
+        this.data = new long[ (int) words ];
+    }
+
+    @Override
+    public byte read(int x, int y)
+    {
+        return isFree( x , y ) ? IScene.FREE : IScene.OCCUPIED;
+    }
+
+    @Override
+    public boolean isFree(int x, int y)
+    {
+        return ( data[ y * wordsPerRow + ( x >>> 6 ) ] & ( 1L << x ) ) == 0;
+    }
+
+    @Override
+    public IScene write(int x, int y, byte status)
+    {
+        final int index = y * wordsPerRow + ( x >>> 6 );
+        final long oldValue = data[index];
+        final long newValue = status == IScene.FREE ? oldValue & ~( 1L << x ) : oldValue | ( 1L << x );
+        if ( newValue != oldValue )
+        {
+            data[index] = newValue;
+            notifyCellsChanged( x , y , 1 , 1 );
+        }
+        return this;
+    }
+
+    /**
+     * Sets all cells inside a rectangle, listeners are notified once.
+     *
+     * @param x
+     * @param y
+     * @param w
+     * @param h
+     * @param status
+     * @return
+     */
+    public PackedScene fill(int x,int y,int w,int h,byte status)
+    {
+        if ( x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width || y + h > height ) {
+            throw new IllegalArgumentException("Invalid rectangle: "+x+","+y+" ("+w+" x "+h+")");
+        }
+        final int x2 = x + w - 1;
+        final int firstWord = x >>> 6;
+        final int lastWord = x2 >>> 6;
+        final long firstMask = ALL_BITS << x;
+        final long lastMask = ALL_BITS >>> ( 63 - ( x2 & 63 ) );
+        final boolean occupied = status != IScene.FREE;
+
+        for ( int row = y ; row < y + h ; row++ )
+        {
+            final int rowOffset = row * wordsPerRow;
+            for ( int word = firstWord ; word <= lastWord ; word++ )
+            {
+                long mask = ALL_BITS;
+                if ( word == firstWord ) {
+                    mask &= firstMask;
+                }
+                if ( word == lastWord ) {
+                    mask &= lastMask;
+                }
+                if ( occupied ) {
+                    data[ rowOffset + word ] |= mask;
+                } else {
+                    data[ rowOffset + word ] &= ~mask;
+                }
+            }
+        }
+        notifyCellsChanged( x , y , w , h );
+        return this;
+    }
+
+    /**
+     * Returns the first free cell in a row span.
+     *
+     * @param y
+     * @param startX first column to check
+     * @param endX column after the last one to check
+     * @return column of the first free cell or -1 if all cells are occupied
+     */
+    public int findFirstFree(int y,int startX,int endX) {
+        return findFirst( y , startX , endX , ALL_BITS );
+    }
+
+    /**
+     * Returns the first occupied cell in a row span.
+     *
+     * @param y
+     * @param startX first column to check
+     * @param endX column after the last one to check
+     * @return column of the first occupied cell or -1 if all cells are free
+     */
+    public int findFirstOccupied(int y,int startX,int endX) {
+        return findFirst( y , startX , endX , 0 );
+    }
+
+    @Override
+    protected boolean isRowSpanFree(int y, int xa, int xb) {
+        return xa <= xb ? findFirstOccupied( y , xa , xb + 1 ) == -1 : findFirstOccupied( y , xb , xa + 1 ) == -1;
+    }
+
+    /**
+     * Scans a row span for the first bit that differs from <code>skippedBits</code>.
+     */
+    private int findFirst(int y,int startX,int endX,long skippedBits)
+    {
+        if ( startX >= endX ) {
+            return -1;
+        }
+        final int rowOffset = y * wordsPerRow;
+        int word = startX >>> 6;
+        final int lastWord = ( endX - 1 ) >>> 6;
+        long bits = ( data[ rowOffset + word ] ^ skippedBits ) & ( ALL_BITS << startX );
+        while ( true )
+        {
+            if ( bits != 0 )
+            {
+                final int x = ( word << 6 ) + Long.numberOfTrailingZeros( bits );
+                return x < endX ? x : -1;
+            }
+            if ( ++word > lastWord ) {
+                return -1;
+            }
+            bits = data[ rowOffset + word ] ^ skippedBits;
+        }
+    }
+
+    @Override
+    public void visitOccupiedCells(ISceneVisitor cellVisitor)
+    {
+        for ( int y = 0 ; y < height ; y++ )
+        {
+            final int rowOffset = y * wordsPerRow;
+            for ( int word = 0 ; word < wordsPerRow ; word++ )
+            {
+                long bits = data[ rowOffset + word ];
+                while ( bits != 0 )
+                {
+                    cellVisitor.visit( ( word << 6 ) + Long.numberOfTrailingZeros( bits ) , y , IScene.OCCUPIED );
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor)
+    {
+        checkRows( firstRow , endRow );
+        for ( int y = firstRow ; y < endRow ; y++ )
+        {
+            int start = findFirstOccupied( y , 0 , width );
+            while ( start != -1 )
+            {
+                int end = findFirstFree( y , start , width );
+                if ( end == -1 ) {
+                    end = width;
+                }
+                visitor.visit( y , start , end , IScene.OCCUPIED );
+                start = findFirstOccupied( y , end , width );
+            }
+        }
+    }
+}
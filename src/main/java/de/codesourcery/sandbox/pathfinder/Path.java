@@ -0,0 +1,212 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Arrays;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Immutable path stored as a packed array of cell indices (<code>y * sceneWidth + x</code>),
+ * ordered from start to target.
+ *
+ * <p>Unlike a chain of {@link PathNode}s, a path costs one <code>int</code> per cell, knows
+ * its length in O(1) and can be traversed with a reusable {@link Cursor} without
+ * allocating any objects.</p>
+ */
+public final class Path
+{
+    private final int[] cells;
+    private final int sceneWidth;
+    private final int cost;
+
+    /**
+     * Reusable forward iterator over the cells of a path.
+     *
+     * <pre>
+     * final Path.Cursor cursor = path.cursor();
+     * while ( cursor.next() ) {
+     *     ... cursor.x() , cursor.y() ...
+     * }
+     * </pre>
+     */
+    public static final class Cursor
+    {
+        private Path path;
+        private int index;
+        private int x;
+        private int y;
+
+        public Cursor() {
+        }
+
+        /**
+         * Positions this cursor before the first cell of a path.
+         *
+         * @param path
+         * @return this cursor
+         */
+        public Cursor reset(Path path)
+        {
+            this.path = path;
+            this.index = -1;
+            return this;
+        }
+
+        /**
+         * Advances to the next cell.
+         *
+         * @return <code>false</code> if there are no more cells
+         */
+        public boolean next()
+        {
+            if ( index + 1 >= path.cells.length ) {
+                index = path.cells.length;
+                return false;
+            }
+            final int cell = path.cells[ ++index ];
+            x = cell % path.sceneWidth;
+            y = cell / path.sceneWidth;
+            return true;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public int x() {
+            return x;
+        }
+
+        public int y() {
+            return y;
+        }
+    }
+
+    /**
+     * Creates a path.
+     *
+     * @param cells cell indices from start to target, the array is copied
+     * @param sceneWidth
+     * @param cost
+     */
+    public Path(int[] cells,int sceneWidth,int cost)
+    {
+        this( sceneWidth , cost , cells == null ? null : cells.clone() );
+    }
+
+    // takes ownership of the array
+    private Path(int sceneWidth,int cost,int[] cells)
+    {
+        if ( cells == null || cells.length == 0 ) {
+            throw new IllegalArgumentException("cells must not be null or empty");
+        }
+        if ( sceneWidth < 1 ) {
+            throw new IllegalArgumentException("Invalid scene width: "+sceneWidth);
+        }
+        this.cells = cells;
+        this.sceneWidth = sceneWidth;
+        this.cost = cost;
+    }
+
+    /**
+     * Converts a chain of path nodes.
+     *
+     * @param target last node of the path as returned by {@link IPathFinder#findPath(PathNode, PathNode)}
+     * @param sceneWidth
+     * @return path or <code>null</code> if <code>target</code> is <code>null</code>
+     */
+    public static Path valueOf(PathNode target,int sceneWidth)
+    {
+        if ( target == null ) {
+            return null;
+        }
+        final int[] cells = new int[ target.getNodeCount() ];
+        int i = cells.length;
+        for ( PathNode current = target ; current != null ; current = current.parent() ) {
+            cells[ --i ] = current.y() * sceneWidth + current.x();
+        }
+        return new Path( sceneWidth , target.g() , cells );
+    }
+
+    /**
+     * Returns the number of cells, O(1).
+     *
+     * @return
+     */
+    public int length() {
+        return cells.length;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getSceneWidth() {
+        return sceneWidth;
+    }
+
+    public int getCell(int index) {
+        return cells[index];
+    }
+
+    public int getX(int index) {
+        return cells[index] % sceneWidth;
+    }
+
+    public int getY(int index) {
+        return cells[index] / sceneWidth;
+    }
+
+    /**
+     * Returns a new cursor positioned before the first cell.
+     *
+     * @return
+     * @see Cursor#reset(Path)
+     */
+    public Cursor cursor() {
+        return new Cursor().reset( this );
+    }
+
+    /**
+     * Converts this path back into a chain of path nodes.
+     *
+     * @return last node of the path
+     */
+    public PathNode toPathNode()
+    {
+        PathNode result = null;
+        for ( int i = 0 ; i < cells.length ; i++ ) {
+            result = new PathNode( getX( i ) , getY( i ) , result );
+        }
+        result.g( cost );
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode( cells ) + sceneWidth;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if ( ! ( obj instanceof Path ) ) {
+            return false;
+        }
+        final Path other = (Path) obj;
+        return sceneWidth == other.sceneWidth && cost == other.cost && Arrays.equals( cells , other.cells );
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        for ( int i = 0 ; i < cells.length ; i++ )
+        {
+            if ( i > 0 ) {
+                builder.append(" -> ");
+            }
+            builder.append( "[ "+getX( i )+" , "+getY( i )+" ]" );
+        }
+        return builder.toString();
+    }
+}
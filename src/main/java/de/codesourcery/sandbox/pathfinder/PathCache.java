@@ -0,0 +1,379 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * LRU cache of path search results (including "no path") in front of an {@link IPathFinder}.
+ * 
+ * <p>Cached entries are valid for a specific scene version. The cache listens for scene changes and 
+ * only drops entries that may be affected by a change:</p>
+ * <ul>
+ *   <li>if the changed area contains occupied cells, paths running through it 
+ *   (see {@link InvalidationMode}) are dropped</li>
+ *   <li>if the changed area contains free cells, a shorter path might now exist. Entries are dropped
+ *   if the straight-line distance from start to target through the changed area is less than their cost. 
+ *   Cached "no path" results are always dropped.</li>
+ * </ul>
+ * <p>If the scene version changed without the cache being notified, all entries are dropped.</p>
+ * 
+ * <p>Cached {@link PathNode} instances are shared between callers and must not be modified.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class PathCache implements IPathFinder, ISceneListener
+{
+    public static enum InvalidationMode 
+    {
+        /**
+         * Drop a path if a cell it depends on is inside the changed area (the cells of the path, 
+         * the corner cells of diagonal steps and the cells between waypoints).
+         */
+        PATH_CELLS,
+        /**
+         * Drop a path if its bounding box intersects the changed area (cheaper, less precise).
+         */
+        BOUNDING_BOX;
+    }
+
+    private final IScene scene;
+    private final IPathFinder delegate;
+    private final int maxSize;
+    private final InvalidationMode invalidationMode;
+
+    private final Map<Key,Entry> entries;
+
+    // version of the scene all entries are valid for
+    private long sceneVersion;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private static final class Key 
+    {
+        private final int startX;
+        private final int startY;
+        private final int targetX;
+        private final int targetY;
+
+        public Key(PathNode start,PathNode target) 
+        {
+            this.startX = start.x();
+            this.startY = start.y();
+            this.targetX = target.x();
+            this.targetY = target.y();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = 31 + startX;
+            result = 31 * result + startY;
+            result = 31 * result + targetX;
+            return 31 * result + targetY;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if ( ! ( obj instanceof Key ) ) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return startX == other.startX && startY == other.startY && targetX == other.targetX && targetY == other.targetY;
+        }
+    }
+
+    private static final class Entry 
+    {
+        private final PathNode path;
+        // bounding box, inclusive
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+
+        public Entry(PathNode path) 
+        {
+            this.path = path;
+            for ( PathNode current = path ; current != null ; current = current.parent() ) 
+            {
+                minX = Math.min( minX , current.x() );
+                minY = Math.min( minY , current.y() );
+                maxX = Math.max( maxX , current.x() );
+                maxY = Math.max( maxY , current.y() );
+            }
+        }
+
+        public boolean boundingBoxIntersects(int x1,int y1,int x2,int y2) {
+            return path != null && ! ( maxX < x1 || maxY < y1 || minX > x2 || minY > y2 );
+        }
+
+        /**
+         * Checks all cells the path depends on: the corner cells of diagonal steps and, for 
+         * paths with waypoints (Theta*), every cell a segment between two nodes touches.
+         */
+        public boolean pathIntersects(int x1,int y1,int x2,int y2) 
+        {
+            if ( ! boundingBoxIntersects( x1 , y1 , x2 , y2 ) ) {
+                return false;
+            }
+            if ( path.parent() == null ) {
+                return inside( path.x() , path.y() , x1 , y1 , x2 , y2 );
+            }
+            for ( PathNode current = path ; current.parent() != null ; current = current.parent() ) 
+            {
+                if ( segmentIntersects( current.x() , current.y() , current.parent().x() , current.parent().y() , x1 , y1 , x2 , y2 ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Walks the supercover of a segment like {@link AbstractScene#hasLineOfSight(int, int, int, int)} 
+         * does, a diagonal step between adjacent cells touches both corner cells.
+         */
+        private static boolean segmentIntersects(int fromX,int fromY,int toX,int toY,int x1,int y1,int x2,int y2) 
+        {
+            if ( Math.max( fromX , toX ) < x1 || Math.min( fromX , toX ) > x2 || Math.max( fromY , toY ) < y1 || Math.min( fromY , toY ) > y2 ) {
+                return false;
+            }
+            final int nx = Math.abs( toX - fromX );
+            final int ny = Math.abs( toY - fromY );
+            final int stepX = toX > fromX ? 1 : -1;
+            final int stepY = toY > fromY ? 1 : -1;
+
+            int x = fromX;
+            int y = fromY;
+            if ( inside( x , y , x1 , y1 , x2 , y2 ) ) {
+                return true;
+            }
+            for ( int ix = 0 , iy = 0 ; ix < nx || iy < ny ; ) 
+            {
+                final long decision = ( 1 + 2L * ix ) * ny - ( 1 + 2L * iy ) * nx;
+                if ( decision == 0 ) 
+                {
+                    if ( inside( x + stepX , y , x1 , y1 , x2 , y2 ) || inside( x , y + stepY , x1 , y1 , x2 , y2 ) ) {
+                        return true;
+                    }
+                    x += stepX;
+                    y += stepY;
+                    ix++;
+                    iy++;
+                } 
+                else if ( decision < 0 ) {
+                    x += stepX;
+                    ix++;
+                } 
+                else {
+                    y += stepY;
+                    iy++;
+                }
+                if ( inside( x , y , x1 , y1 , x2 , y2 ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean inside(int x,int y,int x1,int y1,int x2,int y2) {
+            return x >= x1 && x <= x2 && y >= y1 && y <= y2;
+        }
+    }
+
+    public PathCache(IScene scene,IPathFinder delegate,int maxSize) {
+        this(scene,delegate,maxSize,InvalidationMode.PATH_CELLS);
+    }
+
+    public PathCache(IScene scene,IPathFinder delegate,final int maxSize,InvalidationMode invalidationMode) 
+    {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException("Invalid max. size: "+maxSize);
+        }
+        if ( invalidationMode == null ) {
+            throw new IllegalArgumentException("invalidationMode must not be null");
+        }
+        this.scene = scene;
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.invalidationMode = invalidationMode;
+        this.entries = new LinkedHashMap<Key,Entry>( 16 , 0.75f , true ) 
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) 
+            {
+                if ( size() > maxSize ) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.sceneVersion = scene.getVersion();
+        scene.addSceneListener( this );
+    }
+
+    /**
+     * Unregisters this cache from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( this );
+    }
+
+    /**
+     * Forwarded to the wrapped finder, cache hits are not reported.
+     */
+    @Override
+    public void setSearchListener(ISearchListener listener) {
+        delegate.setSearchListener( listener );
+    }
+
+    @Override
+    public void setConnectivityIndex(ConnectivityIndex index) {
+        delegate.setConnectivityIndex( index );
+    }
+
+    @Override
+    public PathNode findPath(PathNode start, PathNode target)
+    {
+        if ( scene.getVersion() != sceneVersion ) 
+        {
+            invalidations += entries.size();
+            entries.clear();
+            sceneVersion = scene.getVersion();
+        }
+
+        final Key key = new Key( start , target );
+        final Entry existing = entries.get( key );
+        if ( existing != null ) {
+            hits++;
+            return existing.path;
+        }
+        misses++;
+        final PathNode path = delegate.findPath( start , target );
+        entries.put( key , new Entry( path ) );
+        return path;
+    }
+
+    @Override
+    public void cellsChanged(IScene scene, int x, int y, int width, int height)
+    {
+        final int x2 = x + width - 1;
+        final int y2 = y + height - 1;
+
+        boolean containsFree = false;
+        boolean containsOccupied = false;
+        for ( int cy = y ; cy <= y2 && ! ( containsFree && containsOccupied ) ; cy++ ) 
+        {
+            for ( int cx = x ; cx <= x2 ; cx++ ) 
+            {
+                if ( scene.isFree( cx , cy ) ) {
+                    containsFree = true;
+                } else {
+                    containsOccupied = true;
+                }
+            }
+        }
+
+        for ( Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator() ; it.hasNext() ; ) 
+        {
+            final Map.Entry<Key,Entry> mapEntry = it.next();
+            final Entry entry = mapEntry.getValue();
+            boolean invalid = false;
+            if ( containsOccupied ) 
+            {
+                if ( invalidationMode == InvalidationMode.BOUNDING_BOX ) {
+                    invalid = entry.boundingBoxIntersects( x , y , x2 , y2 );
+                } else {
+                    invalid = entry.pathIntersects( x , y , x2 , y2 );
+                }
+            }
+            if ( ! invalid && containsFree ) {
+                invalid = entry.path == null || mayBeShortcut( mapEntry.getKey() , entry.path.g() , x , y , x2 , y2 );
+            }
+            if ( invalid ) {
+                it.remove();
+                invalidations++;
+            }
+        }
+        sceneVersion = scene.getVersion();
+    }
+
+    /**
+     * Checks whether a path from start to target through the given rectangle 
+     * could be cheaper than a given cost.
+     */
+    private static boolean mayBeShortcut(Key key,int cost,int x1,int y1,int x2,int y2) 
+    {
+        final double viaRectangle = distanceToRectangle( key.startX , key.startY , x1 , y1 , x2 , y2 ) + 
+                distanceToRectangle( key.targetX , key.targetY , x1 , y1 , x2 , y2 );
+        // cheapest cost per unit of distance is a diagonal move
+        return viaRectangle * AbstractPathFinder.DIAGONAL_COST / Math.sqrt( 2 ) < cost;
+    }
+
+    private static double distanceToRectangle(int x,int y,int x1,int y1,int x2,int y2) 
+    {
+        final int dx = x < x1 ? x1 - x : ( x > x2 ? x - x2 : 0 );
+        final int dy = y < y1 ? y1 - y : ( y > y2 ? y - y2 : 0 );
+        return Math.sqrt( dx*dx + dy*dy );
+    }
+
+    /**
+     * Removes all entries, does not reset the statistics.
+     */
+    public void clear() 
+    {
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of entries dropped because of scene changes or {@link #clear()}.
+     * 
+     * @return
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public void resetStatistics() 
+    {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        invalidations = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PathCache[ size="+size()+"/"+maxSize+", hits="+hits+", misses="+misses+", evictions="+evictions+", invalidations="+invalidations+" ]";
+    }
+}
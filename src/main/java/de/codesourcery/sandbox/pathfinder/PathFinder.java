@@ -1,28 +1,37 @@
 package de.codesourcery.sandbox.pathfinder;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
 
-public final class PathFinder
+public final class PathFinder implements IPathFinder
 {
     private final IScene scene;
 
     private final int sceneWidth;
     private final int sceneHeight;
 
+    private final boolean allowDiagonalMoves;
+
     // nodes to check
-    private final Map<PathNode,PathNode> openMap = new HashMap<>(2000);
-    private final List<PathNode> openList = new ArrayList<>(2000);
+    private final OpenList openList = new OpenList(2000);
 
     // nodes ruled out
     private final Set<PathNode> closeList = new HashSet<>();
 
+    private int expandedNodes;
+    private int generatedNodes;
+    private int peakOpenListSize;
+    private int duplicatePushes;
+    private int heuristicCalls;
+
+    private volatile ISearchListener searchListener;
+    private volatile ConnectivityIndex connectivityIndex;
+
     public static final class PathNode extends Vec2
     {
         public final PathNode parent;
@@ -30,6 +39,9 @@ public final class PathFinder
         private int f;
         private int g;
         
+        // position inside the open list, -1 if not queued
+        private int heapIndex = -1;
+        
         public PathNode(int x,int y) 
         {
             this(x,y,null);
@@ -93,35 +105,217 @@ public final class PathFinder
 
     }
 
+    /**
+     * Binary min-heap of path nodes ordered by <code>f</code>, indexed
+     * by cell so that an already queued node can be looked up and replaced with a cheaper 
+     * one (decrease-key) in O(log n).
+     * 
+     * Ties on <code>f</code> are broken in favour of the node with the larger <code>g</code>,
+     * this mimics the LIFO behaviour of the sorted list this class replaces.
+     */
+    private static final class OpenList 
+    {
+        private final Map<PathNode,PathNode> index;
+        private PathNode[] heap;
+        private int size;
+
+        public OpenList(int initialCapacity) 
+        {
+            heap = new PathNode[ initialCapacity ];
+            index = new HashMap<>( initialCapacity );
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() 
+        {
+            for ( int i = 0 ; i < size ; i++ ) {
+                heap[i].heapIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+            index.clear();
+        }
+
+        /**
+         * Returns the queued node for the same cell as the argument.
+         * 
+         * @param node
+         * @return queued node or <code>null</code>
+         */
+        public PathNode get(PathNode node) {
+            return index.get( node );
+        }
+
+        public void add(PathNode node) 
+        {
+            if ( size == heap.length ) {
+                heap = Arrays.copyOf( heap , size * 2 );
+            }
+            index.put( node , node );
+            heap[size] = node;
+            node.heapIndex = size;
+            size++;
+            siftUp( node.heapIndex );
+        }
+
+        /**
+         * Replaces a queued node with a cheaper node for the same cell.
+         * 
+         * @param existing
+         * @param replacement
+         */
+        public void decreaseKey(PathNode existing,PathNode replacement) 
+        {
+            final int i = existing.heapIndex;
+            existing.heapIndex = -1;
+            heap[i] = replacement;
+            replacement.heapIndex = i;
+            index.put( replacement , replacement );
+            siftUp( i );
+        }
+
+        public PathNode poll() 
+        {
+            final PathNode result = heap[0];
+            size--;
+            if ( size > 0 ) 
+            {
+                heap[0] = heap[size];
+                heap[0].heapIndex = 0;
+                heap[size] = null;
+                siftDown( 0 );
+            } else {
+                heap[0] = null;
+            }
+            result.heapIndex = -1;
+            index.remove( result );
+            return result;
+        }
+
+        private static boolean isLess(PathNode a,PathNode b) {
+            return a.f < b.f || ( a.f == b.f && a.g > b.g );
+        }
+
+        private void siftUp(int i) 
+        {
+            final PathNode node = heap[i];
+            while ( i > 0 ) 
+            {
+                final int parentIndex = (i-1) >>> 1;
+                final PathNode parent = heap[parentIndex];
+                if ( ! isLess( node , parent ) ) {
+                    break;
+                }
+                heap[i] = parent;
+                parent.heapIndex = i;
+                i = parentIndex;
+            }
+            heap[i] = node;
+            node.heapIndex = i;
+        }
+
+        private void siftDown(int i) 
+        {
+            final PathNode node = heap[i];
+            final int half = size >>> 1;
+            while ( i < half ) 
+            {
+                int child = 2*i+1;
+                final int right = child+1;
+                if ( right < size && isLess( heap[right] , heap[child] ) ) {
+                    child = right;
+                }
+                if ( ! isLess( heap[child] , node ) ) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heap[i].heapIndex = i;
+                i = child;
+            }
+            heap[i] = node;
+            node.heapIndex = i;
+        }
+    }
+
     public PathFinder(IScene scene) {
+        this(scene,false);
+    }
+
+    /**
+     * 
+     * @param scene
+     * @param allowDiagonalMoves whether to also move along the diagonals. A diagonal move is only 
+     * possible if both cells adjacent to it along the axis are free (no corner cutting).
+     */
+    public PathFinder(IScene scene,boolean allowDiagonalMoves) {
         this.scene=scene;
+        this.allowDiagonalMoves = allowDiagonalMoves;
         this.sceneWidth = scene.getWidth();
         this.sceneHeight = scene.getHeight();
     }
 
-    private void insert(PathNode node) 
+    /**
+     * Returns the number of nodes expanded by the last query.
+     * 
+     * @return
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * Sets the listener that receives the statistics of every query.
+     * 
+     * <p>Duplicate pushes count queued nodes replaced by a cheaper node for the same cell.</p>
+     * 
+     * @param listener listener or <code>null</code>
+     */
+    @Override
+    public void setSearchListener(ISearchListener listener) {
+        this.searchListener = listener;
+    }
+
+    @Override
+    public void setConnectivityIndex(ConnectivityIndex index) {
+        this.connectivityIndex = index;
+    }
+
+    @Override
+    public PathNode findPath(PathNode start,PathNode target) 
     {
-        openMap.put(node,node);
-        
-        final int f = node.f;
-        
-        for ( int i = 0 ; i < openList.size() ; i++ ) 
-        {
-            if ( f <= openList.get(i).f ) {
-                openList.add(i,node);
-                return;
-            }
+        final ISearchListener listener = searchListener;
+        if ( listener == null ) {
+            return doFindPath( start , target );
         }
-        openList.add( node );
+        final long startTime = System.nanoTime();
+        final PathNode result = doFindPath( start , target );
+        listener.searchFinished( this , new SearchStatistics( expandedNodes , generatedNodes , peakOpenListSize , 
+                duplicatePushes , heuristicCalls , System.nanoTime() - startTime , result != null ) );
+        return result;
     }
 
-    public PathNode findPath(PathNode start,PathNode target) 
+    private PathNode doFindPath(PathNode start,PathNode target) 
     {
+        expandedNodes = 0;
+        generatedNodes = 0;
+        peakOpenListSize = 0;
+        duplicatePushes = 0;
+        heuristicCalls = 0;
         if ( start.equals( target ) ) { // trivial case
             return start;
         }
+        final ConnectivityIndex index = connectivityIndex;
+        if ( index != null && ! index.isConnected( start.x() , start.y() , target.x() , target.y() ) ) {
+            return null;
+        }
 
-        openMap.clear();
         openList.clear();
         closeList.clear();
 
@@ -132,14 +326,14 @@ public final class PathFinder
         PathNode current = start;
         while ( true ) 
         {
+            expandedNodes++;
             findNeighbors( current , target );
 
             if ( openList.isEmpty() ) {
                 return null;
             }
 
-            final PathNode cheapestPath = openList.remove(0);
-            openMap.remove( cheapestPath );
+            final PathNode cheapestPath = openList.poll();
             
             closeList.add( cheapestPath );            
 
@@ -173,7 +367,11 @@ public final class PathFinder
             final int deltaX = Math.abs( tmp.x() - tmp.parent.x()); // movement along x-axis
             final int deltaY = Math.abs( tmp.y() - tmp.parent.y()); // movement along y-axis
             
-            cost += ( 10 * (deltaX + deltaY ) );
+            if ( deltaX != 0 && deltaY != 0 ) { // diagonal move
+                cost += AbstractPathFinder.DIAGONAL_COST;
+            } else {
+                cost += ( AbstractPathFinder.STRAIGHT_COST * (deltaX + deltaY ) );
+            }
             tmp=tmp.parent;
         }
         return cost;
@@ -181,12 +379,16 @@ public final class PathFinder
 
     private int calcEstimatedCost(PathNode node,PathNode end) {
 
+        heuristicCalls++;
         final int x=node.x();
         final int y=node.y();
 
         final int xDelta = x > end.x() ? x - end.x() : end.x() - x;
         final int yDelta = y > end.y() ? y - end.y() : end.y() - y;
-        return (xDelta + yDelta)*10;
+        if ( allowDiagonalMoves ) {
+            return AbstractPathFinder.octileDistance( xDelta , yDelta );
+        }
+        return (xDelta + yDelta)*AbstractPathFinder.STRAIGHT_COST;
     }    
 
     private static final Vec2 NORTH = new Vec2(0,-1);
@@ -217,6 +419,27 @@ public final class PathFinder
         if ( parent.y() - 1 >= 0 ) {
             maybeAddNeighbor(parent, target, NORTH );
         }         
+
+        if ( allowDiagonalMoves ) 
+        {
+            final boolean notAtRightBorder = parent.x() + 1 < sceneWidth;
+            final boolean notAtLeftBorder = parent.x() - 1 >= 0;
+            final boolean notAtBottomBorder = parent.y() + 1 < sceneHeight;
+            final boolean notAtTopBorder = parent.y() - 1 >= 0;
+
+            if ( notAtRightBorder && notAtTopBorder ) {
+                maybeAddNeighbor(parent, target, NORTH_EAST );
+            }
+            if ( notAtLeftBorder && notAtTopBorder ) {
+                maybeAddNeighbor(parent, target, NORTH_WEST );
+            }
+            if ( notAtRightBorder && notAtBottomBorder ) {
+                maybeAddNeighbor(parent, target, SOUTH_EAST );
+            }
+            if ( notAtLeftBorder && notAtBottomBorder ) {
+                maybeAddNeighbor(parent, target, SOUTH_WEST );
+            }
+        }
     }
 
     private void maybeAddNeighbor(PathNode parent, PathNode target, Vec2 movement)
@@ -224,6 +447,13 @@ public final class PathFinder
         final int newX = parent.x() + movement.x;
         final int newY = parent.y() + movement.y;
         
+        if ( movement.x != 0 && movement.y != 0 ) // diagonal move, don't cut corners 
+        {
+            if ( ! scene.isFree( newX , parent.y() ) || ! scene.isFree( parent.x() , newY ) ) {
+                return;
+            }
+        }
+        
         if ( scene.isFree( newX, newY ) ) 
         {
             maybeAddNeighbor(parent,target, newX , newY );
@@ -237,14 +467,21 @@ public final class PathFinder
 
         if ( ! closeList.contains(newNode) ) 
         {
-            final PathNode existing = openMap.get(newNode);
+            final PathNode existing = openList.get(newNode);
 
             assignCost( newNode , target);
 
-            if ( existing == null || newNode.g < existing.g ) // prefer shorter path
+            if ( existing == null ) 
             {
-                insert( newNode );
+                openList.add( newNode );
+                generatedNodes++;
+                peakOpenListSize = Math.max( peakOpenListSize , openList.size() );
             } 
+            else if ( newNode.g < existing.g ) // prefer shorter path
+            {
+                openList.decreaseKey( existing , newNode );
+                duplicatePushes++;
+            }
         }
     }
 }
\ No newline at end of file
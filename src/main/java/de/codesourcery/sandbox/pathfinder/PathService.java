@@ -0,0 +1,329 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+/**
+ * Resolves batches of path queries in parallel on a fork/join pool.
+ * 
+ * <p>Path finders keep their search state in instance fields, so each worker thread 
+ * lazily creates its own {@link IPathFinder} for the shared scene. The scene must not be 
+ * modified while queries are running, unless the service was created with snapshot isolation.
+ * Then every batch takes one {@link IScene#snapshot()} on the submitting thread and the workers 
+ * search a {@link SnapshotView} switched to that snapshot, so queries should be submitted by the 
+ * thread that modifies the scene (or any thread, if its snapshots are thread-safe like those of 
+ * {@link ChunkedScene}).</p>
+ * 
+ * <p>Instances are thread-safe.</p>
+ */
+public final class PathService
+{
+    private final IScene scene;
+    private final SearchMode searchMode;
+    private final ForkJoinPool pool;
+    private final boolean snapshotIsolation;
+
+    // created by the first query of each worker
+    private final ThreadLocal<SnapshotView> views = new ThreadLocal<>();
+
+    // re-used as long as the scene does not change
+    private volatile IScene lastSnapshot;
+
+    private final ThreadLocal<IPathFinder> finders = new ThreadLocal<IPathFinder>() 
+    {
+        @Override
+        protected IPathFinder initialValue() 
+        {
+            final IPathFinder result = searchMode.createPathFinder( snapshotIsolation ? views.get() : scene );
+            synchronized( createdFinders ) 
+            {
+                result.setSearchListener( searchListener );
+                createdFinders.add( result );
+            }
+            return result;
+        }
+    };
+
+    // @GuardedBy( "createdFinders" )
+    private final List<IPathFinder> createdFinders = new ArrayList<>();
+
+    // @GuardedBy( "createdFinders" )
+    private ISearchListener searchListener;
+
+    private volatile ConnectivityIndex connectivityIndex;
+
+    public static final class PathQuery 
+    {
+        public final PathNode start;
+        public final PathNode target;
+
+        public PathQuery(PathNode start, PathNode target)
+        {
+            if ( start == null || target == null ) {
+                throw new IllegalArgumentException("start/target must not be null");
+            }
+            this.start = start;
+            this.target = target;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * start.hashCode() + target.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if ( ! ( obj instanceof PathQuery ) ) {
+                return false;
+            }
+            final PathQuery other = (PathQuery) obj;
+            return start.equals( other.start ) && target.equals( other.target );
+        }
+
+        @Override
+        public String toString()
+        {
+            return start+" -> "+target;
+        }
+    }
+
+    private final class QueryTask extends RecursiveTask<PathNode> 
+    {
+        private final PathQuery query;
+        // snapshot to search or null
+        private final IScene snapshot;
+
+        public QueryTask(PathQuery query,IScene snapshot) {
+            this.query = query;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        protected PathNode compute() 
+        {
+            if ( snapshot != null ) 
+            {
+                final SnapshotView view = views.get();
+                if ( view == null ) {
+                    views.set( new SnapshotView( scene , snapshot ) );
+                } else {
+                    view.refresh( snapshot );
+                }
+            }
+            return finders.get().findPath( query.start , query.target );
+        }
+    }
+
+    private static final class BatchTask extends RecursiveAction 
+    {
+        private final List<QueryTask> tasks;
+
+        public BatchTask(List<QueryTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() 
+        {
+            // not invokeAll(), that would cancel all other queries when one of them fails
+            for ( QueryTask task : tasks ) {
+                task.fork();
+            }
+            for ( QueryTask task : tasks ) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    public PathService(IScene scene,SearchMode searchMode) {
+        this(scene,searchMode,Runtime.getRuntime().availableProcessors());
+    }
+
+    public PathService(IScene scene,SearchMode searchMode,int parallelism) {
+        this(scene,searchMode,parallelism,false);
+    }
+
+    /**
+     * @param scene
+     * @param searchMode
+     * @param parallelism
+     * @param snapshotIsolation whether each query should search a snapshot of the scene taken when the 
+     * query is submitted
+     * @throws IllegalArgumentException if snapshot isolation is requested for a scene that does not support 
+     * {@link IScene#snapshot()}
+     */
+    public PathService(IScene scene,SearchMode searchMode,int parallelism,boolean snapshotIsolation) 
+    {
+        if ( scene == null ) {
+            throw new IllegalArgumentException("scene must not be null");
+        }
+        if ( searchMode == null ) {
+            throw new IllegalArgumentException("searchMode must not be null");
+        }
+        if ( snapshotIsolation ) 
+        {
+            try {
+                this.lastSnapshot = scene.snapshot();
+            } catch(UnsupportedOperationException e) {
+                throw new IllegalArgumentException("Snapshot isolation requires a scene that supports snapshots: "+scene,e);
+            }
+        }
+        this.scene = scene;
+        this.searchMode = searchMode;
+        this.pool = new ForkJoinPool( parallelism );
+        this.snapshotIsolation = snapshotIsolation;
+    }
+
+    /**
+     * Sets the listener that receives the statistics of every query, 
+     * it is invoked concurrently by all worker threads.
+     * 
+     * @param listener listener or <code>null</code>
+     */
+    public void setSearchListener(ISearchListener listener) 
+    {
+        synchronized( createdFinders ) 
+        {
+            this.searchListener = listener;
+            for ( IPathFinder finder : createdFinders ) {
+                finder.setSearchListener( listener );
+            }
+        }
+    }
+
+    /**
+     * Sets an index used to resolve queries between unconnected cells 
+     * to <code>null</code> right away, without submitting them to the pool.
+     * 
+     * <p>With snapshot isolation, the index reflects the scene at the time the queries are submitted.</p>
+     * 
+     * @param index index for the scene of this service or <code>null</code>
+     */
+    public void setConnectivityIndex(ConnectivityIndex index) {
+        this.connectivityIndex = index;
+    }
+
+    /**
+     * Submits a batch of queries.
+     * 
+     * @param queries
+     * @param deduplicate whether identical queries should only be resolved once. Duplicates will
+     * share the same <code>Future</code> (and <code>PathNode</code> result).
+     * @return one future per query, in the same order as the input. A future yields <code>null</code> if 
+     * no path exists, a query that fails does not affect the other queries.
+     * @throws IllegalArgumentException if a query is outside of the scene
+     */
+    public List<Future<PathNode>> findPaths(List<PathQuery> queries,boolean deduplicate) 
+    {
+        for ( PathQuery query : queries ) {
+            checkInside( query.start , query.target );
+        }
+        final List<Future<PathNode>> result = new ArrayList<>( queries.size() );
+        final List<QueryTask> tasks = new ArrayList<>( queries.size() );
+        final Map<PathQuery,QueryTask> unique = deduplicate ? new HashMap<PathQuery,QueryTask>() : null;
+        final ConnectivityIndex index = connectivityIndex;
+        final IScene snapshot = snapshotIsolation ? takeSnapshot() : null;
+
+        for ( PathQuery query : queries ) 
+        {
+            QueryTask task = deduplicate ? unique.get( query ) : null;
+            if ( task == null ) 
+            {
+                task = new QueryTask( query , snapshot );
+                if ( index != null && ! query.start.equals( query.target ) && 
+                     ! index.isConnected( query.start.x() , query.start.y() , query.target.x() , query.target.y() ) ) 
+                {
+                    task.complete( null );
+                } else {
+                    tasks.add( task );
+                }
+                if ( deduplicate ) {
+                    unique.put( query , task );
+                }
+            }
+            result.add( task );
+        }
+
+        if ( ! tasks.isEmpty() ) {
+            pool.execute( new BatchTask( tasks ) );
+        }
+        return result;
+    }
+
+    /**
+     * Submits a single query.
+     * 
+     * @param start
+     * @param target
+     * @return
+     * @throws IllegalArgumentException if start or target is outside of the scene
+     */
+    public Future<PathNode> findPath(PathNode start,PathNode target) 
+    {
+        checkInside( start , target );
+        final QueryTask task = new QueryTask( new PathQuery( start , target ) , snapshotIsolation ? takeSnapshot() : null );
+        pool.execute( task );
+        return task;
+    }
+
+    /**
+     * Returns a snapshot of the current scene, taken on the calling thread.
+     */
+    private IScene takeSnapshot() 
+    {
+        final IScene previous = lastSnapshot;
+        if ( previous != null && previous.getVersion() == scene.getVersion() ) {
+            return previous;
+        }
+        final IScene result = scene.snapshot();
+        lastSnapshot = result;
+        return result;
+    }
+
+    private void checkInside(PathNode start,PathNode target) 
+    {
+        if ( ! isInside( start ) || ! isInside( target ) ) {
+            throw new IllegalArgumentException("Query outside of scene: "+start+" -> "+target);
+        }
+    }
+
+    private boolean isInside(PathNode node) {
+        return node.x() >= 0 && node.y() >= 0 && node.x() < scene.getWidth() && node.y() < scene.getHeight();
+    }
+
+    /**
+     * Shuts down the worker pool and releases all path finders. 
+     * 
+     * @param timeout
+     * @param unit
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeout,TimeUnit unit) throws InterruptedException 
+    {
+        pool.shutdown();
+        pool.awaitTermination( timeout , unit );
+        synchronized( createdFinders ) 
+        {
+            for ( IPathFinder finder : createdFinders ) 
+            {
+                if ( finder instanceof HierarchicalPathFinder ) {
+                    ((HierarchicalPathFinder) finder).dispose();
+                } else if ( finder instanceof DStarLitePathFinder ) {
+                    ((DStarLitePathFinder) finder).dispose();
+                }
+            }
+            createdFinders.clear();
+        }
+    }
+}
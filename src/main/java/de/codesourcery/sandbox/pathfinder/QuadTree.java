@@ -1,7 +1,10 @@
 package de.codesourcery.sandbox.pathfinder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -381,6 +384,86 @@ public class QuadTree<T> {
             newNode.add( (QuadLeafNode<T>) child );            
         }
 
+        /**
+         * Removes the leaf containing a cell. Child nodes that end up empty are dropped and
+         * child nodes that only hold a single leaf are replaced by that leaf, so the tree
+         * looks as if the leaf had never been stored.
+         * 
+         * @param x
+         * @param y
+         * @return <code>true</code> if a leaf was removed
+         */
+        public boolean remove(int x,int y) 
+        {
+            final int quadrant = getQuadrant( x , y );
+            if ( quadrant == -1 ) {
+                return false;
+            }
+            final QuadNode<T> child = getChild( quadrant );
+            if ( child == null ) {
+                return false;
+            }
+            if ( child.isLeaf() ) 
+            {
+                if ( ! child.contains( x , y ) ) {
+                    return false;
+                }
+                setChild( quadrant , null );
+                return true;
+            }
+            if ( ! child.remove( x , y ) ) {
+                return false;
+            }
+            setChild( quadrant , child.collapse() );
+            return true;
+        }
+
+        /**
+         * Returns the node that should take the place of this node: <code>null</code> if it has no children, 
+         * its only child if that is a leaf, otherwise the node itself.
+         */
+        private QuadNode<T> collapse() 
+        {
+            QuadNode<T> only = null;
+            for ( int quadrant = 0 ; quadrant < 4 ; quadrant++ ) 
+            {
+                final QuadNode<T> child = getChild( quadrant );
+                if ( child != null ) 
+                {
+                    if ( only != null ) {
+                        return this;
+                    }
+                    only = child;
+                }
+            }
+            return only == null || only.isLeaf() ? only : this;
+        }
+
+        /**
+         * Returns the node that holds the leaf containing a cell as direct child.
+         * 
+         * @return node or <code>null</code> if no leaf contains the cell
+         */
+        private QuadNode<T> getLeafParent(int x,int y) 
+        {
+            QuadNode<T> node = this;
+            while ( true ) 
+            {
+                final int quadrant = node.getQuadrant( x , y );
+                if ( quadrant == -1 ) {
+                    return null;
+                }
+                final QuadNode<T> child = node.getChild( quadrant );
+                if ( child == null ) {
+                    return null;
+                }
+                if ( child.isLeaf() ) {
+                    return child.contains( x , y ) ? node : null;
+                }
+                node = child;
+            }
+        }
+
         public boolean isLeaf() {
             return false;
         }
@@ -436,6 +519,263 @@ public class QuadTree<T> {
         root = new QuadNode<T>( 0 , 0 , width , height );
     }
 
+    /**
+     * Builds a tree from a set of points on the common fork/join pool.
+     * 
+     * @see #bulkLoad(int, int, int[], int[], Object[], ForkJoinPool)
+     */
+    public static <T> QuadTree<T> bulkLoad(int width,int height,int[] xs,int[] ys,T[] values) {
+        return bulkLoad( width , height , xs , ys , values , ForkJoinPool.commonPool() );
+    }
+
+    /**
+     * Builds a tree from a set of points, yielding the same tree as calling {@link #store(int, int, Object)} 
+     * for each point in array order.
+     * 
+     * <p>Instead of descending from the root for every point, each point gets a key made of the 
+     * quadrants on its path from the root (its Morton code for power-of-two sizes). The points are 
+     * bucketed by their top-level quadrant and each quadrant is then radix-sorted and built from its 
+     * sorted keys as a separate task, so nodes are only created once and never split. Temporary memory 
+     * is about 24 bytes per point.</p>
+     * 
+     * @param width
+     * @param height
+     * @param xs x coordinates of the points
+     * @param ys y coordinates of the points
+     * @param values point values, the last value wins if a cell occurs more than once 
+     * @param pool pool to build the top-level quadrants in
+     * @return
+     */
+    public static <T> QuadTree<T> bulkLoad(int width,int height,int[] xs,int[] ys,T[] values,ForkJoinPool pool) 
+    {
+        final int count = xs.length;
+        if ( ys.length != count || values.length != count ) {
+            throw new IllegalArgumentException("Arrays differ in length: "+xs.length+" / "+ys.length+" / "+values.length);
+        }
+        final QuadTree<T> result = new QuadTree<T>( width , height );
+        final BulkLoader<T> loader = new BulkLoader<T>( result.root , xs , ys , values );
+        
+        // bucket by top-level quadrant (stable)
+        final long[] keys = new long[ count ];
+        final int[] points = new int[ count ];
+        final int[] quadrantStart = new int[5];
+        for ( int i = 0 ; i < count ; i++ ) 
+        {
+            if ( ! result.root.contains( xs[i] , ys[i] ) ) {
+                throw new IllegalArgumentException("Point outside of tree: "+xs[i]+","+ys[i]);
+            }
+            quadrantStart[ loader.topQuadrant( loader.key( xs[i] , ys[i] ) ) + 1 ]++;
+        }
+        for ( int q = 1 ; q < 5 ; q++ ) {
+            quadrantStart[q] += quadrantStart[q-1];
+        }
+        final int[] fill = quadrantStart.clone();
+        for ( int i = 0 ; i < count ; i++ ) 
+        {
+            final long key = loader.key( xs[i] , ys[i] );
+            final int index = fill[ loader.topQuadrant( key ) ]++;
+            keys[ index ] = key;
+            points[ index ] = i;
+        }
+        
+        final List<RecursiveTask<QuadNode<T>>> tasks = new ArrayList<>();
+        for ( int q = 0 ; q < 4 ; q++ ) 
+        {
+            final int from = quadrantStart[q];
+            final int to = quadrantStart[q+1];
+            tasks.add( new RecursiveTask<QuadNode<T>>() {
+
+                @Override
+                protected QuadNode<T> compute() {
+                    return loader.buildQuadrant( keys , points , from , to );
+                }
+            });
+        }
+        for ( RecursiveTask<QuadNode<T>> task : tasks ) {
+            pool.execute( task );
+        }
+        for ( int q = 0 ; q < 4 ; q++ ) {
+            result.root.setChild( q , tasks.get(q).join() );
+        }
+        return result;
+    }
+
+    /**
+     * Computes path keys and builds subtrees from sorted keys.
+     * 
+     * <p>The key holds two bits (the quadrant) per level, the first level in the highest bits. Quadrants 
+     * are split exactly like {@link QuadNode#getQuadrantBounds(int)} does, so the keys match the tree 
+     * for any width/height.</p>
+     */
+    private static final class BulkLoader<T> 
+    {
+        private final QuadNode<T> root;
+        private final int[] xs;
+        private final int[] ys;
+        private final T[] values;
+        // number of levels below the root
+        private final int depth;
+        // whether the keys are plain Morton codes
+        private final boolean mortonOrder;
+        
+        public BulkLoader(QuadNode<T> root,int[] xs,int[] ys,T[] values) 
+        {
+            this.root = root;
+            this.xs = xs;
+            this.ys = ys;
+            this.values = values;
+            int d = 0;
+            int w = root.width();
+            int h = root.height();
+            do {
+                w -= w > 1 ? w / 2 : 0;
+                h -= h > 1 ? h / 2 : 0;
+                d++;
+            } while ( w > 1 || h > 1 );
+            this.depth = d;
+            // halving a square with power-of-two edges consumes one bit of x and y per level
+            this.mortonOrder = root.x1 == 0 && root.y1 == 0 && root.width() == root.height() && Integer.bitCount( root.width() ) == 1;
+        }
+        
+        public long key(int x,int y) 
+        {
+            if ( mortonOrder ) {
+                return LinearQuadTree.mortonKey( x , y );
+            }
+            int x1 = root.x1;
+            int y1 = root.y1;
+            int w = root.width();
+            int h = root.height();
+            long key = 0;
+            for ( int level = 0 ; level < depth ; level++ ) 
+            {
+                final int newWidth = w > 1 ? w / 2 : w;
+                final int newHeight = h > 1 ? h / 2 : h;
+                // branch-free, random points would mispredict every level
+                final int right = ~( x - ( x1 + newWidth ) ) >>> 31;
+                final int bottom = ~( y - ( y1 + newHeight ) ) >>> 31;
+                x1 += right * newWidth;
+                w = newWidth + right * ( w - 2 * newWidth );
+                y1 += bottom * newHeight;
+                h = newHeight + bottom * ( h - 2 * newHeight );
+                key = ( key << 2 ) | ( bottom << 1 ) | right;
+            }
+            return key;
+        }
+        
+        private int shift(int level) {
+            return 2 * ( depth - 1 - level );
+        }
+        
+        public int topQuadrant(long key) {
+            return (int) ( key >>> shift( 0 ) ) & 3;
+        }
+        
+        /**
+         * Sorts the points of a top-level quadrant and builds its subtree.
+         * 
+         * @return child node for the root or <code>null</code>
+         */
+        public QuadNode<T> buildQuadrant(long[] keys,int[] points,int from,int to) 
+        {
+            if ( from == to ) {
+                return null;
+            }
+            radixSort( keys , points , from , to , shift( 0 ) );
+            
+            // keep the last of several points with the same key, radix sort is stable 
+            int unique = from;
+            for ( int i = from ; i < to ; i++ ) 
+            {
+                if ( i + 1 < to && keys[ i + 1 ] == keys[ i ] ) {
+                    continue;
+                }
+                keys[ unique ] = keys[ i ];
+                points[ unique++ ] = points[ i ];
+            }
+            return createChild( root , topQuadrant( keys[ from ] ) , keys , points , from , unique , 1 );
+        }
+        
+        /**
+         * Creates the child of a node for a range of points that all lie in the same quadrant of the node.
+         */
+        private QuadNode<T> createChild(QuadNode<T> parent,int quadrant,long[] keys,int[] points,int from,int to,int level) 
+        {
+            if ( to - from == 1 ) {
+                final int point = points[ from ];
+                return new QuadLeafNode<T>( xs[ point ] , ys[ point ] , values[ point ] );
+            }
+            final QuadNode<T> node = new QuadNode<T>( parent.getQuadrantBounds( quadrant ) );
+            final int shift = shift( level );
+            int start = from;
+            while ( start < to ) 
+            {
+                final int childQuadrant = (int) ( keys[ start ] >>> shift ) & 3;
+                // first key of the next quadrant
+                final long limit = ( ( keys[ start ] >>> shift ) + 1 ) << shift;
+                final int end = lowerBound( keys , start , to , limit );
+                node.setChild( childQuadrant , createChild( node , childQuadrant , keys , points , start , end , level + 1 ) );
+                start = end;
+            }
+            return node;
+        }
+        
+        private static int lowerBound(long[] keys,int from,int to,long key) 
+        {
+            int low = from;
+            int high = to;
+            while ( low < high ) 
+            {
+                final int mid = ( low + high ) >>> 1;
+                if ( keys[ mid ] < key ) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        /**
+         * Stable LSD radix sort of the lowest <code>bits</code> bits of a key range, 8 bits per pass.
+         */
+        private static void radixSort(long[] keys,int[] points,int from,int to,int bits) 
+        {
+            final int count = to - from;
+            long[] srcKeys = new long[ count ];
+            int[] srcPoints = new int[ count ];
+            System.arraycopy( keys , from , srcKeys , 0 , count );
+            System.arraycopy( points , from , srcPoints , 0 , count );
+            long[] dstKeys = new long[ count ];
+            int[] dstPoints = new int[ count ];
+            final int[] offsets = new int[ 257 ];
+            for ( int shift = 0 ; shift < bits ; shift += 8 ) 
+            {
+                Arrays.fill( offsets , 0 );
+                for ( int i = 0 ; i < count ; i++ ) {
+                    offsets[ ( (int) ( srcKeys[i] >>> shift ) & 0xff ) + 1 ]++;
+                }
+                for ( int i = 1 ; i < 257 ; i++ ) {
+                    offsets[i] += offsets[i-1];
+                }
+                for ( int i = 0 ; i < count ; i++ ) 
+                {
+                    final int index = offsets[ (int) ( srcKeys[i] >>> shift ) & 0xff ]++;
+                    dstKeys[ index ] = srcKeys[i];
+                    dstPoints[ index ] = srcPoints[i];
+                }
+                final long[] tmpKeys = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = tmpKeys;
+                final int[] tmpPoints = srcPoints;
+                srcPoints = dstPoints;
+                dstPoints = tmpPoints;
+            }
+            System.arraycopy( srcKeys , 0 , keys , from , count );
+            System.arraycopy( srcPoints , 0 , points , from , count );
+        }
+    }
+
     public static void main(String[] args) 
     {
         final int WIDTH = 10;
@@ -539,6 +879,66 @@ Rec2 [x1=25, y1=0, x2=50, y2=25] MINUS BSPNode [ x=26, y = 13 , width=20, height
         }
     }
 
+    /**
+     * Removes the leaf containing a cell and collapses the nodes above it.
+     * 
+     * @param x
+     * @param y
+     * @return <code>true</code> if a leaf was removed
+     * @see QuadNode#remove(int, int)
+     */
+    public boolean remove(int x,int y) {
+        return root.remove( x , y );
+    }
+
+    /**
+     * Moves the leaf containing a cell by <code>( newX - oldX , newY - oldY )</code>.
+     * 
+     * <p>If the moved leaf still lies inside the same quadrant of its parent node, only its 
+     * bounds are updated (no allocation, no splitting or collapsing). Otherwise the leaf is removed 
+     * and added again, overwriting the value of a leaf at the destination.</p>
+     * 
+     * @param oldX
+     * @param oldY
+     * @param newX
+     * @param newY
+     * @return <code>true</code> if a leaf was moved, <code>false</code> if no leaf contains <code>(oldX,oldY)</code>
+     */
+    public boolean move(int oldX,int oldY,int newX,int newY) 
+    {
+        final QuadNode<T> parent = root.getLeafParent( oldX , oldY );
+        if ( parent == null ) {
+            return false;
+        }
+        final int quadrant = parent.getQuadrant( oldX , oldY );
+        final QuadLeafNode<T> leaf = (QuadLeafNode<T>) parent.getChild( quadrant );
+        final int dx = newX - oldX;
+        final int dy = newY - oldY;
+        final int x1 = leaf.x1 + dx;
+        final int y1 = leaf.y1 + dy;
+        final int x2 = leaf.x2 + dx;
+        final int y2 = leaf.y2 + dy;
+        if ( ! root.contains( x1 , y1 ) || ! root.contains( x2 - 1 , y2 - 1 ) ) {
+            throw new IllegalArgumentException("Cannot move "+leaf+" outside of tree: "+newX+","+newY);
+        }
+        if ( parent.getQuadrant( x1 , y1 ) != quadrant || parent.getQuadrant( x2 - 1 , y2 - 1 ) != quadrant ) 
+        {
+            root.remove( oldX , oldY );
+            leaf.x1 = x1;
+            leaf.y1 = y1;
+            leaf.x2 = x2;
+            leaf.y2 = y2;
+            root.add( leaf );
+            return true;
+        }
+        // still alone in the same quadrant
+        leaf.x1 = x1;
+        leaf.y1 = y1;
+        leaf.x2 = x2;
+        leaf.y2 = y2;
+        return true;
+    }
+
     /**
      * Returns the value closest to a given point.
      * 
@@ -3,20 +3,77 @@ package de.codesourcery.sandbox.pathfinder;
 import de.codesourcery.sandbox.pathfinder.QuadTree.IVisitor;
 import de.codesourcery.sandbox.pathfinder.QuadTree.QuadLeafNode;
 import de.codesourcery.sandbox.pathfinder.QuadTree.QuadNode;
+import de.codesourcery.sandbox.pathfinder.RegionQuadTree.IRegionVisitor;
 
 public final class QuadTreeScene extends AbstractScene
 {
+    public static enum Mode 
+    {
+        /**
+         * One leaf node per occupied cell, clearing a cell removes its leaf and collapses emptied nodes.
+         */
+        POINTS,
+        /**
+         * {@link RegionQuadTree} that merges uniform regions, only stores free/occupied.
+         */
+        REGIONS,
+        /**
+         * {@link LinearQuadTree} with one Morton key per occupied cell.
+         */
+        LINEAR;
+    }
+    
+    private final Mode mode;
     private final QuadTree<Byte> data;
+    private final RegionQuadTree regions;
+    private final LinearQuadTree linear;
     
     public QuadTreeScene(int width,int height) 
+    {
+        this(width,height,Mode.POINTS);
+    }
+    
+    public QuadTreeScene(int width,int height,Mode mode) 
     {
         super(width,height);
-        this.data = new QuadTree<Byte>(width,height);
+        this.mode = mode;
+        this.data = mode == Mode.POINTS ? new QuadTree<Byte>(width,height) : null;
+        this.regions = mode == Mode.REGIONS ? new RegionQuadTree(width,height) : null;
+        this.linear = mode == Mode.LINEAR ? new LinearQuadTree(width,height) : null;
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    /**
+     * Returns the largest free square containing a cell that is aligned to the 
+     * quadtree's subdivision, only supported in {@link Mode#REGIONS} mode.
+     * 
+     * <p>All cells inside the square are free, so path finders may cross it without
+     * looking at the individual cells.</p>
+     * 
+     * @param x
+     * @param y
+     * @return square or <code>null</code> if the cell is occupied
+     */
+    public Rec2 getFreeSquare(int x,int y) 
+    {
+        if ( mode != Mode.REGIONS ) {
+            throw new UnsupportedOperationException("Only supported in mode "+Mode.REGIONS);
+        }
+        return regions.getFreeRegion( x , y );
     }
     
     @Override
     public byte read(int x, int y)
     {
+        if ( mode == Mode.REGIONS ) {
+            return regions.isOccupied( x , y ) ? IScene.OCCUPIED : IScene.FREE;
+        }
+        if ( mode == Mode.LINEAR ) {
+            return linear.get( x , y );
+        }
         final QuadLeafNode<Byte> value = data.getValue(x, y);
         if ( value == null ) {
             return IScene.FREE;
@@ -28,8 +85,26 @@ public final class QuadTreeScene extends AbstractScene
     @Override
     public IScene write(int x, int y, byte status)
     {
+        if ( mode == Mode.REGIONS ) 
+        {
+            if ( regions.set( x , y , status != IScene.FREE ) ) {
+                notifyCellsChanged( x , y , 1 , 1 );
+            }
+            return this;
+        }
+        if ( mode == Mode.LINEAR ) 
+        {
+            if ( linear.store( x , y , status ) ) {
+                notifyCellsChanged( x , y , 1 , 1 );
+            }
+            return this;
+        }
         if ( status != IScene.FREE ) {
             data.store(x,y,status);
+            notifyCellsChanged( x , y , 1 , 1 );
+        } 
+        else if ( data.remove( x , y ) ) {
+            notifyCellsChanged( x , y , 1 , 1 );
         }
         return this;
     }
@@ -37,6 +112,36 @@ public final class QuadTreeScene extends AbstractScene
     @Override
     public void visitOccupiedCells(final ISceneVisitor cellVisitor)
     {
+      if ( mode == Mode.REGIONS ) 
+      {
+          regions.visitRegions( new IRegionVisitor() {
+
+              @Override
+              public void visit(int x, int y, int size, boolean occupied) 
+              {
+                  if ( ! occupied ) {
+                      return;
+                  }
+                  for ( int cy = y ; cy < Math.min( y + size , height ) ; cy++ ) {
+                      for ( int cx = x ; cx < Math.min( x + size , width ) ; cx++ ) {
+                          cellVisitor.visit( cx , cy , IScene.OCCUPIED );
+                      }
+                  }
+              }
+          });
+          return;
+      }
+      if ( mode == Mode.LINEAR ) 
+      {
+          linear.visitAll( new LinearQuadTree.IEntryVisitor() {
+
+              @Override
+              public void visit(int x, int y, byte value) {
+                  cellVisitor.visit( x , y , value );
+              }
+          });
+          return;
+      }
       final IVisitor<Byte> visitor = new IVisitor<Byte>() {
 
           @Override
@@ -52,9 +157,34 @@ public final class QuadTreeScene extends AbstractScene
       data.visitPreOrder( visitor );
     }
 
+    @Override
+    protected boolean isRowSpanFree(int y, int xa, int xb)
+    {
+        if ( mode != Mode.REGIONS ) {
+            return super.isRowSpanFree( y , xa , xb );
+        }
+        // skip whole free squares 
+        final int end = Math.max( xa , xb );
+        for ( int x = Math.min( xa , xb ) ; x <= end ; ) 
+        {
+            final Rec2 square = regions.getFreeRegion( x , y );
+            if ( square == null ) {
+                return false;
+            }
+            x = square.x2;
+        }
+        return true;
+    }
+    
     @Override
     public boolean isFree(int x, int y)
     {
+        if ( mode == Mode.REGIONS ) {
+            return ! regions.isOccupied( x , y );
+        }
+        if ( mode == Mode.LINEAR ) {
+            return linear.get( x , y ) == IScene.FREE;
+        }
         return ! data.containsValues( x , y , 1 , 1 );
     }
 }
@@ -0,0 +1,228 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Region quadtree storing free/occupied cells.
+ *
+ * <p>The tree covers a square with a power-of-two edge length. Every node is either a uniform
+ * leaf (all cells free or all cells occupied) or has exactly four children. Writing into a
+ * uniform leaf of a different value splits it, four uniform children with the same value are
+ * merged back into their parent. A filled rectangle therefore costs O(perimeter) nodes instead
+ * of one node per cell, and all lookups are O(depth).</p>
+ *
+ * <p>Uniform leaves are shared instances that do not know their position, it is tracked
+ * while descending the tree.</p>
+ */
+public final class RegionQuadTree
+{
+    private static final Node FREE = new Node( false );
+    private static final Node OCCUPIED = new Node( true );
+
+    private final int width;
+    private final int height;
+    // edge length of the square covered by the root
+    private final int size;
+
+    private Node root = FREE;
+
+    private static final class Node
+    {
+        private final boolean occupied;
+        // null for uniform leaves, otherwise NW, NE, SW, SE
+        private final Node[] children;
+
+        private Node(boolean occupied) {
+            this.occupied = occupied;
+            this.children = null;
+        }
+
+        private Node(Node child) {
+            this.occupied = false;
+            this.children = new Node[] { child , child , child , child };
+        }
+    }
+
+    public interface IRegionVisitor
+    {
+        /**
+         * Invoked for every uniform region.
+         *
+         * @param x
+         * @param y
+         * @param size edge length of the region, may extend beyond the tree's width/height
+         * @param occupied
+         */
+        public void visit(int x,int y,int size,boolean occupied);
+    }
+
+    public RegionQuadTree(int width,int height)
+    {
+        if ( width < 1 || height < 1 ) {
+            throw new IllegalArgumentException("Invalid width/height: "+width+" x "+height);
+        }
+        this.width = width;
+        this.height = height;
+        int s = 1;
+        while ( s < width || s < height ) {
+            s <<= 1;
+        }
+        this.size = s;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns whether a cell is occupied, O(depth).
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isOccupied(int x,int y)
+    {
+        Node node = root;
+        int half = size >>> 1;
+        int originX = 0;
+        int originY = 0;
+        while ( node.children != null )
+        {
+            int quadrant = 0;
+            if ( x >= originX + half ) {
+                quadrant = 1;
+                originX += half;
+            }
+            if ( y >= originY + half ) {
+                quadrant += 2;
+                originY += half;
+            }
+            node = node.children[ quadrant ];
+            half >>>= 1;
+        }
+        return node.occupied;
+    }
+
+    /**
+     * Sets a cell, O(depth).
+     *
+     * @param x
+     * @param y
+     * @param occupied
+     * @return <code>true</code> if the cell changed
+     */
+    public boolean set(int x,int y,boolean occupied)
+    {
+        if ( isOccupied( x , y ) == occupied ) {
+            return false;
+        }
+        root = set( root , 0 , 0 , size , x , y , occupied );
+        return true;
+    }
+
+    private static Node set(Node node,int originX,int originY,int nodeSize,int x,int y,boolean occupied)
+    {
+        if ( nodeSize == 1 ) {
+            return occupied ? OCCUPIED : FREE;
+        }
+        final Node result = node.children == null ? new Node( node ) : node;
+
+        final int half = nodeSize >>> 1;
+        int quadrant = 0;
+        if ( x >= originX + half ) {
+            quadrant = 1;
+            originX += half;
+        }
+        if ( y >= originY + half ) {
+            quadrant += 2;
+            originY += half;
+        }
+        final Node[] children = result.children;
+        children[ quadrant ] = set( children[ quadrant ] , originX , originY , half , x , y , occupied );
+
+        // merge uniform children
+        final Node first = children[0];
+        if ( first.children == null && children[1] == first && children[2] == first && children[3] == first ) {
+            return first;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the uniform free region containing a cell.
+     *
+     * <p>This is the largest square that contains the cell and is aligned to
+     * the quadtree's subdivision, clipped to the tree's width/height.</p>
+     *
+     * @param x
+     * @param y
+     * @return region or <code>null</code> if the cell is occupied
+     */
+    public Rec2 getFreeRegion(int x,int y)
+    {
+        Node node = root;
+        int nodeSize = size;
+        int originX = 0;
+        int originY = 0;
+        while ( node.children != null )
+        {
+            nodeSize >>>= 1;
+            int quadrant = 0;
+            if ( x >= originX + nodeSize ) {
+                quadrant = 1;
+                originX += nodeSize;
+            }
+            if ( y >= originY + nodeSize ) {
+                quadrant += 2;
+                originY += nodeSize;
+            }
+            node = node.children[ quadrant ];
+        }
+        if ( node.occupied ) {
+            return null;
+        }
+        return new Rec2( originX , originY , Math.min( originX + nodeSize , width ) , Math.min( originY + nodeSize , height ) );
+    }
+
+    /**
+     * Visits all uniform regions in pre-order.
+     *
+     * @param visitor
+     */
+    public void visitRegions(IRegionVisitor visitor) {
+        visitRegions( root , 0 , 0 , size , visitor );
+    }
+
+    private static void visitRegions(Node node,int originX,int originY,int nodeSize,IRegionVisitor visitor)
+    {
+        if ( node.children == null ) {
+            visitor.visit( originX , originY , nodeSize , node.occupied );
+            return;
+        }
+        final int half = nodeSize >>> 1;
+        visitRegions( node.children[0] , originX , originY , half , visitor );
+        visitRegions( node.children[1] , originX + half , originY , half , visitor );
+        visitRegions( node.children[2] , originX , originY + half , half , visitor );
+        visitRegions( node.children[3] , originX + half , originY + half , half , visitor );
+    }
+
+    /**
+     * Returns the number of nodes (inner nodes and leaves).
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return countNodes( root );
+    }
+
+    private static int countNodes(Node node)
+    {
+        if ( node.children == null ) {
+            return 1;
+        }
+        return 1 + countNodes( node.children[0] ) + countNodes( node.children[1] ) + countNodes( node.children[2] ) + countNodes( node.children[3] );
+    }
+}
@@ -0,0 +1,67 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A run of adjacent cells in a row that all have the same non-free value.
+ *
+ * @see IScene#visitOccupiedSpans(IScene.IRowSpanVisitor)
+ * @see RowSpanSpliterator
+ */
+public final class RowSpan
+{
+    public final int y;
+    public final int startX;
+    // exclusive
+    public final int endX;
+    public final byte cellStatus;
+
+    public RowSpan(int y, int startX, int endX, byte cellStatus)
+    {
+        if ( endX <= startX ) {
+            throw new IllegalArgumentException("Empty span: "+startX+"..."+endX);
+        }
+        this.y = y;
+        this.startX = startX;
+        this.endX = endX;
+        this.cellStatus = cellStatus;
+    }
+
+    /**
+     * Returns a sequential stream of all occupied spans of a scene in row-major order,
+     * call {@link Stream#parallel()} to process rows in parallel.
+     *
+     * <p>The scene must not be modified while the stream is being consumed.</p>
+     *
+     * @param scene
+     * @return
+     */
+    public static Stream<RowSpan> stream(IScene scene) {
+        return StreamSupport.stream( new RowSpanSpliterator( scene ) , false );
+    }
+
+    public int length() {
+        return endX - startX;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if ( obj instanceof RowSpan ) {
+            final RowSpan o = (RowSpan) obj;
+            return y == o.y && startX == o.startX && endX == o.endX && cellStatus == o.cellStatus;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ( 31 * ( 31 * y + startX ) + endX ) + cellStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "RowSpan[ y="+y+", x="+startX+"..."+endX+", status="+cellStatus+" ]";
+    }
+}
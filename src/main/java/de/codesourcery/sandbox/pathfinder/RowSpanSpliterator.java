@@ -0,0 +1,103 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import de.codesourcery.sandbox.pathfinder.IScene.IRowSpanVisitor;
+
+/**
+ * Spliterator over the occupied spans of a range of rows, backed by 
+ * {@link IScene#visitOccupiedSpans(int, int, IScene.IRowSpanVisitor)}.
+ *
+ * <p>Splitting divides the remaining rows in half, so parallel streams process
+ * disjoint row ranges. Bulk traversal visits all remaining rows with a single call 
+ * to the scene, {@link #tryAdvance(Consumer)} buffers the spans of one row at a time.</p>
+ */
+public final class RowSpanSpliterator implements Spliterator<RowSpan>
+{
+    // rows below which splitting is not worth it
+    private static final int MIN_SPLIT_ROWS = 16;
+
+    private final IScene scene;
+    private int row;
+    private final int endRow;
+
+    // spans of the current row not yet consumed by tryAdvance()
+    private final ArrayDeque<RowSpan> buffer = new ArrayDeque<>();
+
+    public RowSpanSpliterator(IScene scene) {
+        this( scene , 0 , scene.getHeight() );
+    }
+
+    /**
+     * @param scene
+     * @param firstRow
+     * @param endRow row after the last one
+     */
+    public RowSpanSpliterator(IScene scene,int firstRow,int endRow)
+    {
+        if ( firstRow < 0 || endRow > scene.getHeight() || firstRow > endRow ) {
+            throw new IllegalArgumentException("Invalid row range "+firstRow+"..."+endRow);
+        }
+        this.scene = scene;
+        this.row = firstRow;
+        this.endRow = endRow;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RowSpan> action)
+    {
+        while ( buffer.isEmpty() && row < endRow ) {
+            scene.visitOccupiedSpans( row , row + 1 , ( y , startX , endX , cellStatus ) -> buffer.add( new RowSpan( y , startX , endX , cellStatus ) ) );
+            row++;
+        }
+        final RowSpan span = buffer.poll();
+        if ( span == null ) {
+            return false;
+        }
+        action.accept( span );
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super RowSpan> action)
+    {
+        RowSpan span;
+        while ( ( span = buffer.poll() ) != null ) {
+            action.accept( span );
+        }
+        if ( row < endRow )
+        {
+            final IRowSpanVisitor visitor = ( y , startX , endX , cellStatus ) -> action.accept( new RowSpan( y , startX , endX , cellStatus ) );
+            final int first = row;
+            row = endRow;
+            scene.visitOccupiedSpans( first , endRow , visitor );
+        }
+    }
+
+    @Override
+    public Spliterator<RowSpan> trySplit()
+    {
+        if ( ! buffer.isEmpty() || endRow - row < 2 * MIN_SPLIT_ROWS ) {
+            return null;
+        }
+        final int middle = row + ( endRow - row ) / 2;
+        final RowSpanSpliterator prefix = new RowSpanSpliterator( scene , row , middle );
+        row = middle;
+        return prefix;
+    }
+
+    /**
+     * Returns the number of remaining rows, the number of spans is not known in advance.
+     */
+    @Override
+    public long estimateSize() {
+        return endRow - row + buffer.size();
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -1,14 +1,50 @@
 package de.codesourcery.sandbox.pathfinder;
 
+import java.util.Arrays;
 
 public final class Scene extends AbstractScene
 {
     private final byte[] data;
+    private final boolean readOnly;
     
     public Scene(int width,int height) 
     {
         super(width,height);
         this.data = new byte[width*height];
+        this.readOnly = false;
+    }
+    
+    private Scene(int width,int height,long version,byte[] data) 
+    {
+        super(width,height,version);
+        this.data = data;
+        this.readOnly = true;
+    }
+    
+    /**
+     * Copies the cells of any scene into a new read-only instance.
+     */
+    static Scene readOnlyCopy(IScene scene) 
+    {
+        final int width = scene.getWidth();
+        final byte[] data = new byte[ width * scene.getHeight() ];
+        final long version = scene.getVersion();
+        scene.visitOccupiedSpans( new IRowSpanVisitor() {
+            
+            @Override
+            public void visit(int y, int startX, int endX, byte cellStatus) {
+                Arrays.fill( data , y * width + startX , y * width + endX , cellStatus );
+            }
+        });
+        return new Scene( width , scene.getHeight() , version , data );
+    }
+    
+    /**
+     * Returns a read-only copy of all cells.
+     */
+    @Override
+    public IScene snapshot() {
+        return readOnly ? this : new Scene( width , height , getVersion() , data.clone() );
     }
     
     @Override
@@ -20,17 +56,28 @@ public final class Scene extends AbstractScene
     @Override
     public IScene write(int x, int y, byte status)
     {
-        data[y*width+x]=status;
+        if ( readOnly ) {
+            throw new IllegalStateException("Scene is read-only");
+        }
+        final int offset = y*width+x;
+        if ( data[offset] != status ) 
+        {
+            data[offset]=status;
+            notifyCellsChanged( x , y , 1 , 1 );
+        }
         return this;
     }
     
     @Override
     public void visitOccupiedCells(final ISceneVisitor cellVisitor)
     {
-        for ( int x = 0 ; x < width ; x++ ) {
-            for ( int y = 0 ; y < height; y++ ) 
+        // row-major, in memory order
+        for ( int y = 0 ; y < height; y++ ) 
+        {
+            final int rowOffset = y*width;
+            for ( int x = 0 ; x < width ; x++ ) 
             {
-                final byte val = data[ y*width + x ];
+                final byte val = data[ rowOffset + x ];
                 if ( val != IScene.FREE ) {
                     cellVisitor.visit(x, y, val );
                 }
@@ -52,6 +99,29 @@ public final class Scene extends AbstractScene
 //		data.visitPreOrder( visitor );
     }
 
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor)
+    {
+        checkRows( firstRow , endRow );
+        for ( int y = firstRow ; y < endRow ; y++ ) 
+        {
+            final int rowOffset = y*width;
+            final int rowEnd = rowOffset + width;
+            int offset = rowOffset;
+            while ( offset < rowEnd ) 
+            {
+                final byte val = data[ offset ];
+                final int start = offset++;
+                while ( offset < rowEnd && data[ offset ] == val ) {
+                    offset++;
+                }
+                if ( val != IScene.FREE ) {
+                    visitor.visit( y , start - rowOffset , offset - rowOffset , val );
+                }
+            }
+        }
+    }
+
     @Override
     public boolean isFree(int x, int y)
     {
@@ -0,0 +1,373 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary scene format.
+ *
+ * <p>Layout (all numbers big-endian):</p>
+ * <pre>
+ * header: int magic, int format version, int width, int height, int rows per chunk, int chunk count
+ * chunk : int first row, int row count, int payload length, int CRC32 of payload, payload
+ * </pre>
+ * <p>The payload holds the rows of a chunk, run-length encoded as alternating lengths of
+ * free and occupied runs (starting with a free run that may be empty), stored as unsigned
+ * variable-length integers (7 bits per byte). Only occupancy is stored, any non-free cell
+ * is read back as {@link IScene#OCCUPIED}.</p>
+ *
+ * <p>Chunks are independent of each other, so they can be decoded (and their checksums
+ * verified) in parallel. The number of chunks is part of the header, reading never
+ * relies on {@link InputStream#available()}.</p>
+ */
+public final class SceneFormat
+{
+    public static final int MAGIC = 0x50465343; // 'PFSC'
+    public static final int FORMAT_VERSION = 1;
+    public static final int DEFAULT_ROWS_PER_CHUNK = 64;
+
+    private static final int MAX_VARINT_BYTES = 5;
+
+    /**
+     * Creates the scene a file is loaded into.
+     */
+    public interface ISceneFactory
+    {
+        public IScene createScene(int width,int height);
+    }
+
+    private SceneFormat() {
+    }
+
+    public static void write(IScene scene,OutputStream out) throws IOException {
+        write( scene , out , DEFAULT_ROWS_PER_CHUNK );
+    }
+
+    /**
+     * Writes a scene, the stream is not closed.
+     *
+     * @param scene
+     * @param out
+     * @param rowsPerChunk
+     * @throws IOException
+     */
+    public static void write(IScene scene,OutputStream out,int rowsPerChunk) throws IOException
+    {
+        if ( rowsPerChunk < 1 ) {
+            throw new IllegalArgumentException("Invalid number of rows per chunk: "+rowsPerChunk);
+        }
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        final int chunkCount = ( height + rowsPerChunk - 1 ) / rowsPerChunk;
+
+        final DataOutputStream dataOut = new DataOutputStream( out );
+        dataOut.writeInt( MAGIC );
+        dataOut.writeInt( FORMAT_VERSION );
+        dataOut.writeInt( width );
+        dataOut.writeInt( height );
+        dataOut.writeInt( rowsPerChunk );
+        dataOut.writeInt( chunkCount );
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final RunLengthEncoder encoder = new RunLengthEncoder( payload , width );
+        final CRC32 crc = new CRC32();
+        for ( int firstRow = 0 ; firstRow < height ; firstRow += rowsPerChunk )
+        {
+            final int rowCount = Math.min( rowsPerChunk , height - firstRow );
+            payload.reset();
+            encoder.reset( firstRow );
+            scene.visitOccupiedSpans( firstRow , firstRow + rowCount , encoder );
+            encoder.finishRows( firstRow + rowCount );
+
+            crc.reset();
+            final byte[] bytes = payload.toByteArray();
+            crc.update( bytes , 0 , bytes.length );
+            dataOut.writeInt( firstRow );
+            dataOut.writeInt( rowCount );
+            dataOut.writeInt( bytes.length );
+            dataOut.writeInt( (int) crc.getValue() );
+            dataOut.write( bytes );
+        }
+        dataOut.flush();
+    }
+
+    public static IScene read(InputStream in,ISceneFactory factory) throws IOException {
+        return read( in , factory , null );
+    }
+
+    /**
+     * Reads a scene, the stream is not closed.
+     *
+     * <p>Cells are written straight into the scene created by the factory, only the runs of
+     * the chunks currently being decoded are kept in memory.</p>
+     *
+     * @param in
+     * @param factory
+     * @param executor used to decode chunks in parallel, <code>null</code> to decode them on the calling thread
+     * @return the scene created by the factory
+     * @throws IOException on I/O errors, corrupted data or checksum mismatches
+     */
+    public static IScene read(InputStream in,ISceneFactory factory,ExecutorService executor) throws IOException
+    {
+        final DataInputStream dataIn = new DataInputStream( in );
+        if ( dataIn.readInt() != MAGIC ) {
+            throw new IOException("Not a scene file");
+        }
+        final int version = dataIn.readInt();
+        if ( version != FORMAT_VERSION ) {
+            throw new IOException("Unsupported file format version "+version);
+        }
+        final int width = dataIn.readInt();
+        final int height = dataIn.readInt();
+        final int rowsPerChunk = dataIn.readInt();
+        final int chunkCount = dataIn.readInt();
+        if ( width < 1 || height < 1 || rowsPerChunk < 1 || chunkCount != ( height + rowsPerChunk - 1 ) / rowsPerChunk ) {
+            throw new IOException("Corrupted header");
+        }
+
+        final IScene scene = factory.createScene( width , height );
+        if ( scene.getWidth() != width || scene.getHeight() != height ) {
+            throw new IllegalArgumentException("Factory created scene with wrong size "+
+                    scene.getWidth()+" x "+scene.getHeight()+", expected "+width+" x "+height);
+        }
+
+        // bounds the number of decoded chunks held in memory
+        final int maxPending = executor == null ? 1 : 4 * Runtime.getRuntime().availableProcessors();
+        final Deque<Future<int[]>> pending = new ArrayDeque<>();
+        int expectedRow = 0;
+        for ( int i = 0 ; i < chunkCount ; i++ )
+        {
+            final int firstRow = dataIn.readInt();
+            final int rowCount = dataIn.readInt();
+            final int length = dataIn.readInt();
+            final int checksum = dataIn.readInt();
+            if ( firstRow != expectedRow || rowCount < 1 || rowCount > rowsPerChunk || firstRow + rowCount > height || 
+                 length < 0 || length > maxPayloadLength( rowCount , width ) ) 
+            {
+                throw new IOException("Corrupted header of chunk "+i);
+            }
+            expectedRow += rowCount;
+
+            final byte[] payload = new byte[ length ];
+            dataIn.readFully( payload );
+            if ( executor == null ) {
+                applyRuns( scene , decodeChunk( payload , checksum , firstRow , rowCount , width ) );
+                continue;
+            }
+
+            final Callable<int[]> decoder = new Callable<int[]>() {
+
+                @Override
+                public int[] call() throws IOException {
+                    return decodeChunk( payload , checksum , firstRow , rowCount , width );
+                }
+            };
+
+            pending.add( executor.submit( decoder ) );
+            if ( pending.size() >= maxPending ) {
+                applyRuns( scene , pending.removeFirst() );
+            }
+        }
+        while ( ! pending.isEmpty() ) {
+            applyRuns( scene , pending.removeFirst() );
+        }
+        if ( expectedRow != height ) {
+            throw new IOException("Missing rows");
+        }
+        return scene;
+    }
+
+    /**
+     * Upper bound for the payload of a chunk, a row has at most <code>width+1</code> runs
+     * (leading empty free run) of at most {@link #MAX_VARINT_BYTES} each.
+     */
+    private static long maxPayloadLength(int rowCount,int width) {
+        return (long) rowCount * ( width + 1L ) * MAX_VARINT_BYTES;
+    }
+
+    /**
+     * Decodes a chunk into (x,y,length) triples of occupied runs.
+     */
+    private static int[] decodeChunk(byte[] payload,int checksum,int firstRow,int rowCount,int width) throws IOException
+    {
+        final CRC32 crc = new CRC32();
+        crc.update( payload , 0 , payload.length );
+        if ( (int) crc.getValue() != checksum ) {
+            throw new IOException("Checksum mismatch in chunk starting at row "+firstRow);
+        }
+
+        int[] runs = new int[ 3 * 16 ];
+        int runCount = 0;
+        final int[] offset = { 0 };
+        for ( int y = firstRow ; y < firstRow + rowCount ; y++ )
+        {
+            boolean free = true;
+            int x = 0;
+            while ( x < width )
+            {
+                final int length = readVarInt( payload , offset );
+                if ( length < 0 || length > width - x || ( length == 0 && ( x > 0 || ! free ) ) ) {
+                    throw new IOException("Corrupted run in row "+y);
+                }
+                if ( ! free )
+                {
+                    if ( runCount + 3 > runs.length ) {
+                        runs = Arrays.copyOf( runs , runs.length * 2 );
+                    }
+                    runs[ runCount++ ] = x;
+                    runs[ runCount++ ] = y;
+                    runs[ runCount++ ] = length;
+                }
+                x += length;
+                free = ! free;
+            }
+        }
+        if ( offset[0] != payload.length ) {
+            throw new IOException("Trailing data in chunk starting at row "+firstRow);
+        }
+        return Arrays.copyOf( runs , runCount );
+    }
+
+    private static void applyRuns(IScene scene,Future<int[]> runs) throws IOException
+    {
+        try {
+            applyRuns( scene , runs.get() );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading scene",e);
+        }
+        catch (ExecutionException e)
+        {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to decode chunk",e.getCause());
+        }
+    }
+
+    private static void applyRuns(IScene scene,int[] runs)
+    {
+        for ( int i = 0 ; i < runs.length ; i += 3 )
+        {
+            final int x = runs[i];
+            final int y = runs[i+1];
+            final int length = runs[i+2];
+            if ( scene instanceof PackedScene ) {
+                ((PackedScene) scene).fill( x , y , length , 1 , IScene.OCCUPIED );
+                continue;
+            }
+            for ( int cx = x ; cx < x + length ; cx++ ) {
+                scene.write( cx , y , IScene.OCCUPIED );
+            }
+        }
+    }
+
+    /**
+     * Turns the occupied spans of consecutive rows into alternating free/occupied run lengths.
+     */
+    private static final class RunLengthEncoder implements IScene.IRowSpanVisitor
+    {
+        private final ByteArrayOutputStream out;
+        private final int width;
+
+        private int row;
+        private int freeStart;
+        // occupied run not written yet, spans with different cell values are merged
+        private int occupiedStart = -1;
+        private int occupiedEnd;
+
+        public RunLengthEncoder(ByteArrayOutputStream out,int width)
+        {
+            this.out = out;
+            this.width = width;
+        }
+
+        public void reset(int firstRow)
+        {
+            row = firstRow;
+            freeStart = 0;
+            occupiedStart = -1;
+        }
+
+        @Override
+        public void visit(int y, int startX, int endX, byte cellStatus)
+        {
+            finishRows( y );
+            if ( occupiedStart != -1 && startX == occupiedEnd ) {
+                occupiedEnd = endX;
+                return;
+            }
+            flushOccupied();
+            occupiedStart = startX;
+            occupiedEnd = endX;
+        }
+
+        private void flushOccupied()
+        {
+            if ( occupiedStart != -1 )
+            {
+                writeVarInt( out , occupiedStart - freeStart );
+                writeVarInt( out , occupiedEnd - occupiedStart );
+                freeStart = occupiedEnd;
+                occupiedStart = -1;
+            }
+        }
+
+        /**
+         * Writes the last run of all rows before a row.
+         */
+        public void finishRows(int endRow)
+        {
+            while ( row < endRow )
+            {
+                flushOccupied();
+                // a row ending with an occupied run has no trailing free run
+                if ( freeStart < width ) {
+                    writeVarInt( out , width - freeStart );
+                }
+                row++;
+                freeStart = 0;
+            }
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out,int value)
+    {
+        while ( ( value & ~0x7f ) != 0 )
+        {
+            out.write( ( value & 0x7f ) | 0x80 );
+            value >>>= 7;
+        }
+        out.write( value );
+    }
+
+    private static int readVarInt(byte[] data,int[] offset) throws IOException
+    {
+        int result = 0;
+        for ( int shift = 0 ; shift < 32 ; shift += 7 )
+        {
+            if ( offset[0] >= data.length ) {
+                throw new IOException("Truncated chunk");
+            }
+            final int value = data[ offset[0]++ ];
+            result |= ( value & 0x7f ) << shift;
+            if ( ( value & 0x80 ) == 0 ) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed run length");
+    }
+}
@@ -0,0 +1,253 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+/**
+ * Seeded generators for test and benchmark scenes.
+ *
+ * <p>All generators draw from the given {@link Random} only, so the same seed always
+ * produces the same cells regardless of the {@link IScene} implementation.</p>
+ */
+public enum SceneGenerator
+{
+    /**
+     * No obstacles at all.
+     */
+    OPEN("open field") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+        }
+    },
+    /**
+     * Uniform random noise, 10% of the cells occupied.
+     */
+    NOISE_10("noise 10%") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+            noise( scene , rnd , 0.1f );
+        }
+    },
+    /**
+     * Uniform random noise, 25% of the cells occupied.
+     */
+    NOISE_25("noise 25%") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+            noise( scene , rnd , 0.25f );
+        }
+    },
+    /**
+     * Uniform random noise, 35% of the cells occupied (close to the percolation threshold).
+     */
+    NOISE_35("noise 35%") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+            noise( scene , rnd , 0.35f );
+        }
+    },
+    /**
+     * Perfect maze with one cell wide corridors, all free cells are connected.
+     */
+    MAZE("maze") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+            maze( scene , rnd );
+        }
+    },
+    /**
+     * Rectangular rooms joined by corridors, all free cells are connected.
+     */
+    ROOMS("rooms and corridors") {
+        @Override
+        protected void generate(IScene scene, Random rnd) {
+            rooms( scene , rnd );
+        }
+    };
+
+    private static final int SECTOR_SIZE = 24;
+    private static final int MIN_ROOM_SIZE = 4;
+    private static final int MAX_ROOM_SIZE = 18;
+    // probability of joining a room to its northern neighbor
+    private static final float LOOP_PROBABILITY = 0.3f;
+
+    // E, W, S, N
+    private static final int[] DX = {1,-1,0,0};
+    private static final int[] DY = {0,0,1,-1};
+
+    private final String displayName;
+
+    private SceneGenerator(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Fills an empty scene.
+     *
+     * @param scene scene without occupied cells
+     * @param seed
+     * @return the scene
+     */
+    public IScene generate(IScene scene,long seed)
+    {
+        generate( scene , new Random( seed ) );
+        return scene;
+    }
+
+    protected abstract void generate(IScene scene,Random rnd);
+
+    private static void noise(IScene scene,Random rnd,float density)
+    {
+        for ( int y = 0 ; y < scene.getHeight() ; y++ )
+        {
+            for ( int x = 0 ; x < scene.getWidth() ; x++ )
+            {
+                if ( rnd.nextFloat() < density ) {
+                    scene.write( x , y , IScene.OCCUPIED );
+                }
+            }
+        }
+    }
+
+    private static void fill(IScene scene,int x,int y,int w,int h,byte status)
+    {
+        if ( scene instanceof PackedScene ) {
+            ((PackedScene) scene).fill( x , y , w , h , status );
+            return;
+        }
+        for ( int cy = y ; cy < y + h ; cy++ )
+        {
+            for ( int cx = x ; cx < x + w ; cx++ ) {
+                scene.write( cx , cy , status );
+            }
+        }
+    }
+
+    /**
+     * Carves a maze with an iterative randomized depth-first search. Maze cells are the cells
+     * with odd coordinates, walls are in between.
+     */
+    private static void maze(IScene scene,Random rnd)
+    {
+        fill( scene , 0 , 0 , scene.getWidth() , scene.getHeight() , IScene.OCCUPIED );
+
+        final int columns = ( scene.getWidth() - 1 ) / 2;
+        final int rows = ( scene.getHeight() - 1 ) / 2;
+        if ( columns < 1 || rows < 1 ) {
+            return;
+        }
+        final boolean[] visited = new boolean[ columns * rows ];
+        final int[] stack = new int[ columns * rows ];
+        final int[] candidates = new int[4];
+
+        int size = 0;
+        final int first = rnd.nextInt( columns * rows );
+        stack[ size++ ] = first;
+        visited[ first ] = true;
+        scene.write( 2 * ( first % columns ) + 1 , 2 * ( first / columns ) + 1 , IScene.FREE );
+        while ( size > 0 )
+        {
+            final int current = stack[ size - 1 ];
+            final int column = current % columns;
+            final int row = current / columns;
+
+            int count = 0;
+            for ( int d = 0 ; d < 4 ; d++ )
+            {
+                final int nc = column + DX[d];
+                final int nr = row + DY[d];
+                if ( nc >= 0 && nr >= 0 && nc < columns && nr < rows && ! visited[ nr * columns + nc ] ) {
+                    candidates[ count++ ] = d;
+                }
+            }
+            if ( count == 0 ) {
+                size--;
+                continue;
+            }
+            final int d = candidates[ rnd.nextInt( count ) ];
+            final int next = ( row + DY[d] ) * columns + column + DX[d];
+            visited[ next ] = true;
+            stack[ size++ ] = next;
+            scene.write( 2 * column + 1 + DX[d] , 2 * row + 1 + DY[d] , IScene.FREE );
+            scene.write( 2 * ( column + DX[d] ) + 1 , 2 * ( row + DY[d] ) + 1 , IScene.FREE );
+        }
+    }
+
+    /**
+     * Divides the scene into square sectors with one room each. Every room is joined to its
+     * western neighbor, rooms in the first column also to their northern neighbor (which keeps
+     * all rooms connected) and the other rooms only sometimes, to create loops.
+     */
+    private static void rooms(IScene scene,Random rnd)
+    {
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        fill( scene , 0 , 0 , width , height , IScene.OCCUPIED );
+
+        final int columns = Math.max( 1 , width / SECTOR_SIZE );
+        final int rows = Math.max( 1 , height / SECTOR_SIZE );
+        final int sectorWidth = width / columns;
+        final int sectorHeight = height / rows;
+        // room centers
+        final int[] centerX = new int[ columns * rows ];
+        final int[] centerY = new int[ columns * rows ];
+        for ( int row = 0 ; row < rows ; row++ )
+        {
+            for ( int column = 0 ; column < columns ; column++ )
+            {
+                final int w = randomRoomSize( rnd , sectorWidth );
+                final int h = randomRoomSize( rnd , sectorHeight );
+                final int x = column * sectorWidth + ( sectorWidth - w ) / 2 + randomOffset( rnd , sectorWidth - w );
+                final int y = row * sectorHeight + ( sectorHeight - h ) / 2 + randomOffset( rnd , sectorHeight - h );
+                fill( scene , x , y , w , h , IScene.FREE );
+
+                final int room = row * columns + column;
+                centerX[ room ] = x + w / 2;
+                centerY[ room ] = y + h / 2;
+                if ( column > 0 ) {
+                    corridor( scene , rnd , centerX[ room - 1 ] , centerY[ room - 1 ] , centerX[ room ] , centerY[ room ] );
+                }
+                if ( row > 0 && ( column == 0 || rnd.nextFloat() < LOOP_PROBABILITY ) ) {
+                    corridor( scene , rnd , centerX[ room - columns ] , centerY[ room - columns ] , centerX[ room ] , centerY[ room ] );
+                }
+            }
+        }
+    }
+
+    private static int randomRoomSize(Random rnd,int sectorSize)
+    {
+        final int max = Math.min( MAX_ROOM_SIZE , sectorSize - 2 );
+        if ( max <= MIN_ROOM_SIZE ) {
+            return Math.max( 1 , max );
+        }
+        return MIN_ROOM_SIZE + rnd.nextInt( max - MIN_ROOM_SIZE + 1 );
+    }
+
+    /**
+     * Returns a random offset from the center of the sector that keeps the room
+     * at least one cell away from the sector's border.
+     */
+    private static int randomOffset(Random rnd,int space)
+    {
+        final int range = ( space - 2 ) / 2;
+        return range <= 0 ? 0 : rnd.nextInt( 2 * range + 1 ) - range;
+    }
+
+    /**
+     * Carves an L-shaped corridor between two cells.
+     */
+    private static void corridor(IScene scene,Random rnd,int x1,int y1,int x2,int y2)
+    {
+        if ( rnd.nextBoolean() ) {
+            fill( scene , Math.min( x1 , x2 ) , y1 , Math.abs( x2 - x1 ) + 1 , 1 , IScene.FREE );
+            fill( scene , x2 , Math.min( y1 , y2 ) , 1 , Math.abs( y2 - y1 ) + 1 , IScene.FREE );
+        } else {
+            fill( scene , x1 , Math.min( y1 , y2 ) , 1 , Math.abs( y2 - y1 ) + 1 , IScene.FREE );
+            fill( scene , Math.min( x1 , x2 ) , y2 , Math.abs( x2 - x1 ) + 1 , 1 , IScene.FREE );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -3,7 +3,7 @@ package de.codesourcery.sandbox.pathfinder;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
+import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -12,10 +12,16 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JPanel;
 
-import de.codesourcery.sandbox.pathfinder.IScene.ISceneVisitor;
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+import de.codesourcery.sandbox.pathfinder.IScene.IRowSpanVisitor;
 
 public class SceneRenderer
 {
+    // edge length of a cached tile, in cells
+    private static final int TILE_SIZE = 256;
+
+    private static final Color OCCUPIED_COLOR = Color.RED;
+
     private final IScene scene;
     private final int sceneWidth;
     private final int sceneHeight;
@@ -24,11 +30,49 @@ public class SceneRenderer
     
     private boolean renderGrid = false;
     
+    private RenderMode renderMode = RenderMode.DIRECT;
+
+    // @GuardedBy( "tileLock" )
+    private BufferedImage[] tiles;
+    // @GuardedBy( "tileLock" )
+    private boolean[] dirtyTiles;
+    private final int tilesX;
+    private final int tilesY;
+    private final Object tileLock = new Object();
+
+    private final ISceneListener tileInvalidator = new ISceneListener() {
+
+        @Override
+        public void cellsChanged(IScene scene, int x, int y, int width, int height) {
+            invalidateTiles( x , y , width , height );
+        }
+    };
+
+    // cached rendering of all markers, @GuardedBy( "markers" )
+    private BufferedImage markerLayer;
+    private boolean markerLayerDirty = true;
+
     // @GuardedBy( "markers" )
     private final Map<Long,List<Marker>> markers = new HashMap<>();
+
+    // @GuardedBy( "markers" )
+    private final Map<Long,PathMarker> pathMarkers = new HashMap<>();
     
     private final AtomicLong markerId = new AtomicLong(0);
     
+    public static enum RenderMode 
+    {
+        /**
+         * Draws every occupied cell and marker on every repaint.
+         */
+        DIRECT,
+        /**
+         * Draws the scene from cached tiles (one pixel per cell, re-rasterized after the
+         * tile's cells changed) and the markers from a cached overlay image.
+         */
+        TILES;
+    }
+
     public static enum MarkerType {
     	REGULAR,
     	ENDPOINT;
@@ -67,6 +111,18 @@ public class SceneRenderer
         }
     }
     
+    private static final class PathMarker
+    {
+        public final Path path;
+        public final Color color;
+
+        public PathMarker(Path path, Color color)
+        {
+            this.path = path;
+            this.color = color;
+        }
+    }
+
     public void setRenderGrid(boolean renderGrid)
     {
         this.renderGrid = renderGrid;
@@ -78,6 +134,70 @@ public class SceneRenderer
         this.panel =  panel;
         sceneWidth = scene.getWidth();
         sceneHeight = scene.getHeight();
+        tilesX = ( sceneWidth + TILE_SIZE - 1 ) / TILE_SIZE;
+        tilesY = ( sceneHeight + TILE_SIZE - 1 ) / TILE_SIZE;
+    }
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public void setRenderMode(RenderMode renderMode)
+    {
+        if ( renderMode == null ) {
+            throw new IllegalArgumentException("renderMode must not be null");
+        }
+        if ( renderMode == this.renderMode ) {
+            return;
+        }
+        this.renderMode = renderMode;
+        synchronized( tileLock ) 
+        {
+            if ( renderMode == RenderMode.TILES ) 
+            {
+                tiles = new BufferedImage[ tilesX * tilesY ];
+                dirtyTiles = new boolean[ tilesX * tilesY ];
+                scene.addSceneListener( tileInvalidator );
+            } 
+            else 
+            {
+                scene.removeSceneListener( tileInvalidator );
+                tiles = null;
+                dirtyTiles = null;
+            }
+        }
+        synchronized( markers ) {
+            markerLayer = null;
+        }
+    }
+
+    /**
+     * Unregisters this renderer from the scene.
+     */
+    public void dispose() {
+        scene.removeSceneListener( tileInvalidator );
+    }
+
+    private void invalidateTiles(int x,int y,int width,int height) 
+    {
+        synchronized( tileLock ) 
+        {
+            if ( dirtyTiles == null ) {
+                return;
+            }
+            final int lastX = Math.min( x + width - 1 , sceneWidth - 1 ) / TILE_SIZE;
+            final int lastY = Math.min( y + height - 1 , sceneHeight - 1 ) / TILE_SIZE;
+            for ( int ty = y / TILE_SIZE ; ty <= lastY ; ty++ ) 
+            {
+                for ( int tx = x / TILE_SIZE ; tx <= lastX ; tx++ ) {
+                    dirtyTiles[ ty * tilesX + tx ] = true;
+                }
+            }
+        }
+    }
+
+    private void invalidateMarkerLayer() {
+        markerLayerDirty = true;
     }
     
     public long addMarker(int x, int y,Color color,MarkerType type) 
@@ -88,6 +208,7 @@ public class SceneRenderer
         synchronized( markers ) 
         {
             markers.put( id , Collections.singletonList( marker ) );
+            invalidateMarkerLayer();
         }
         return id;
     }
@@ -97,6 +218,8 @@ public class SceneRenderer
         synchronized( markers ) 
         {
             markers.remove( markerId );
+            pathMarkers.remove( markerId );
+            invalidateMarkerLayer();
         }
     }
     
@@ -105,23 +228,32 @@ public class SceneRenderer
         synchronized( markers ) 
         {
             markers.clear();
+            pathMarkers.clear();
+            invalidateMarkerLayer();
         }
     }    
     
     public long addMarkers(PathFinder.PathNode path,Color color) 
     {
+        if ( path == null ) {
+            throw new IllegalArgumentException("path must not be null");
+        }
+        return addMarkers( Path.valueOf( path , sceneWidth ) , color );
+    }
+
+    public long addMarkers(Path path,Color color) 
+    {
+        if ( path == null ) {
+            throw new IllegalArgumentException("path must not be null");
+        }
+        if ( color == null ) {
+            throw new IllegalArgumentException("color must not be null");
+        }
         final long id = markerId.incrementAndGet();
-        PathFinder.PathNode current = path;
-        final List<Marker> l = new ArrayList<>();
-        do 
-        {
-            l.add( new Marker(id,current.x(),current.y() , color , MarkerType.REGULAR ) );
-            current = current.parent;
-        } while ( current != null );
-        
         synchronized( markers ) 
         {
-            markers.put( id , l );
+            pathMarkers.put( id , new PathMarker( path , color ) );
+            invalidateMarkerLayer();
         }        
         return id;
     }
@@ -137,7 +269,7 @@ public class SceneRenderer
         final int xMax = (int) Math.floor( sceneWidth * xInc );
         final int yMax = (int) Math.floor( sceneHeight * yInc );
 
-        graphics.setColor(Color.RED);
+        graphics.setColor( OCCUPIED_COLOR );
 
         if ( renderGrid ) 
         {
@@ -156,38 +288,133 @@ public class SceneRenderer
             }        
         }
         
-        // draw grid
-        final ISceneVisitor visitor = new ISceneVisitor() {
+        if ( renderMode == RenderMode.TILES ) 
+        {
+            drawTiles( xInc , yInc , graphics );
+            synchronized( markers ) 
+            {
+                if ( markerLayer == null || markerLayer.getWidth() != screenWidth || markerLayer.getHeight() != screenHeight ) 
+                {
+                    markerLayer = screenWidth > 0 && screenHeight > 0 ? new BufferedImage( screenWidth , screenHeight , BufferedImage.TYPE_INT_ARGB ) : null;
+                    markerLayerDirty = true;
+                }
+                if ( markerLayer != null ) 
+                {
+                    if ( markerLayerDirty ) 
+                    {
+                        final Graphics2D layerGraphics = markerLayer.createGraphics();
+                        try {
+                            layerGraphics.setBackground( new Color( 0 , 0 , 0 , 0 ) );
+                            layerGraphics.clearRect( 0 , 0 , screenWidth , screenHeight );
+                            drawMarkers( xInc , yInc , layerGraphics );
+                        } finally {
+                            layerGraphics.dispose();
+                        }
+                        markerLayerDirty = false;
+                    }
+                    graphics.drawImage( markerLayer , 0 , 0 , null );
+                }
+            }
+            return;
+        }
+
+        // draw occupied cells, one rectangle per run
+        final IRowSpanVisitor visitor = new IRowSpanVisitor() {
 			
 			@Override
-			public void visit(int x, int y, byte cellStatus) 
+			public void visit(int y, int startX, int endX, byte cellStatus) 
 			{
-			    fillRect( x , y , xInc , yInc , graphics );
+			    fillSpan( y , startX , endX , xInc , yInc , graphics );
 			}
 		};
-		scene.visitOccupiedCells( visitor );
+		scene.visitOccupiedSpans( visitor );
         
-        // draw markers
-        synchronized( markers ) 
+        synchronized( markers ) {
+            drawMarkers( xInc , yInc , graphics );
+        }
+    }
+
+    /**
+     * Re-rasterizes dirty tiles and draws all tiles scaled to the screen.
+     */
+    private void drawTiles(double xInc,double yInc,Graphics2D graphics) 
+    {
+        synchronized( tileLock ) 
         {
-            for ( List<Marker> list : markers.values() ) 
+            int[] pixels = null;
+            for ( int ty = 0 ; ty < tilesY ; ty++ ) 
             {
-                Color lastColor = null;
-                for ( Marker m : list ) 
+                for ( int tx = 0 ; tx < tilesX ; tx++ ) 
                 {
-                    if ( lastColor == null || ! lastColor.equals(m.color)) {
-                        graphics.setColor( m.color );
-                        lastColor = m.color;
-                    }
-                    if ( m.hasType(MarkerType.ENDPOINT ) ) {
-                    	drawEndpoint( m.x , m.y , xInc ,yInc , graphics );
-                    } else {
-                    	fillRect( m.x , m.y , xInc , yInc , graphics );
+                    final int index = ty * tilesX + tx;
+                    final int x = tx * TILE_SIZE;
+                    final int y = ty * TILE_SIZE;
+                    final int w = Math.min( TILE_SIZE , sceneWidth - x );
+                    final int h = Math.min( TILE_SIZE , sceneHeight - y );
+                    if ( tiles[index] == null || dirtyTiles[index] ) 
+                    {
+                        if ( tiles[index] == null ) {
+                            tiles[index] = new BufferedImage( w , h , BufferedImage.TYPE_INT_ARGB );
+                        }
+                        if ( pixels == null ) {
+                            pixels = new int[ TILE_SIZE * TILE_SIZE ];
+                        }
+                        rasterize( x , y , w , h , pixels );
+                        tiles[index].setRGB( 0 , 0 , w , h , pixels , 0 , w );
+                        dirtyTiles[index] = false;
                     }
+                    final int x1 = (int) Math.floor( x * xInc );
+                    final int y1 = (int) Math.floor( y * yInc );
+                    final int x2 = (int) Math.floor( ( x + w ) * xInc );
+                    final int y2 = (int) Math.floor( ( y + h ) * yInc );
+                    graphics.drawImage( tiles[index] , x1 , y1 , x2 , y2 , 0 , 0 , w , h , null );
                 }
             }
         }
     }
+
+    private void rasterize(int x,int y,int w,int h,int[] pixels) 
+    {
+        final int occupied = OCCUPIED_COLOR.getRGB();
+        int i = 0;
+        for ( int cy = y ; cy < y + h ; cy++ ) 
+        {
+            for ( int cx = x ; cx < x + w ; cx++ ) {
+                pixels[i++] = scene.isFree( cx , cy ) ? 0 : occupied;
+            }
+        }
+    }
+
+    // @GuardedBy( "markers" )
+    private void drawMarkers(double xInc,double yInc,Graphics2D graphics) 
+    {
+        for ( List<Marker> list : markers.values() ) 
+        {
+            Color lastColor = null;
+            for ( Marker m : list ) 
+            {
+                if ( lastColor == null || ! lastColor.equals(m.color)) {
+                    graphics.setColor( m.color );
+                    lastColor = m.color;
+                }
+                if ( m.hasType(MarkerType.ENDPOINT ) ) {
+                	drawEndpoint( m.x , m.y , xInc ,yInc , graphics );
+                } else {
+                	fillRect( m.x , m.y , xInc , yInc , graphics );
+                }
+            }
+        }
+
+        final Path.Cursor cursor = new Path.Cursor();
+        for ( PathMarker m : pathMarkers.values() ) 
+        {
+            graphics.setColor( m.color );
+            cursor.reset( m.path );
+            while ( cursor.next() ) {
+                fillRect( cursor.x() , cursor.y() , xInc , yInc , graphics );
+            }
+        }
+    }
     
     private void drawEndpoint(int x,int y , double xInc, double yInc , Graphics2D graphics ) {
     	
@@ -216,6 +443,15 @@ public class SceneRenderer
         graphics.fillRect( (int) x1 , (int) y1 , w , h );           
     }
     
+    private void fillSpan(int y,int startX,int endX, double xInc, double yInc , Graphics2D graphics) 
+    {
+        final int x1 = (int) Math.floor( startX * xInc );
+        final int y1 = (int) Math.floor( y * yInc );
+        final int x2 = (int) Math.floor( endX * xInc );
+        final int y2 = (int) Math.floor( (y+1) * yInc );
+        graphics.fillRect( x1 , y1 , x2 - x1 , y2 - y1 );
+    }
+    
     public int viewXToModel(int viewX,Dimension canvas) {
         final double xInc = canvas.width / (double) sceneWidth;
         return (int) Math.floor( viewX / xInc );
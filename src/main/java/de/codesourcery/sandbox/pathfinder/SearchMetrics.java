@@ -0,0 +1,138 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Search listener that aggregates the statistics of all queries into histograms,
+ * optionally exported as an MXBean.
+ *
+ * <p>Instances are thread-safe and may be shared by several path finders.</p>
+ */
+public final class SearchMetrics implements ISearchListener, SearchMetricsMXBean
+{
+    public static final String DEFAULT_OBJECT_NAME = "de.codesourcery.sandbox.pathfinder:type=SearchMetrics";
+
+    // @GuardedBy( "this" )
+    private final Histogram expandedNodes = new Histogram();
+    private final Histogram generatedNodes = new Histogram();
+    private final Histogram peakOpenListSize = new Histogram();
+    private final Histogram duplicatePushes = new Histogram();
+    private final Histogram heuristicCalls = new Histogram();
+    private final Histogram wallTimeMicros = new Histogram();
+    private long queryCount;
+    private long noPathCount;
+
+    private ObjectName registeredName;
+
+    @Override
+    public synchronized void searchFinished(IPathFinder finder, SearchStatistics statistics)
+    {
+        queryCount++;
+        if ( ! statistics.isPathFound() ) {
+            noPathCount++;
+        }
+        expandedNodes.record( statistics.getExpandedNodes() );
+        generatedNodes.record( statistics.getGeneratedNodes() );
+        peakOpenListSize.record( statistics.getPeakOpenListSize() );
+        duplicatePushes.record( statistics.getDuplicatePushes() );
+        heuristicCalls.record( statistics.getHeuristicCalls() );
+        wallTimeMicros.record( statistics.getWallTimeNanos() / 1000 );
+    }
+
+    /**
+     * Registers this instance with the platform MBean server under {@link #DEFAULT_OBJECT_NAME}.
+     *
+     * @return
+     * @throws JMException
+     */
+    public ObjectName register() throws JMException {
+        return register( new ObjectName( DEFAULT_OBJECT_NAME ) );
+    }
+
+    public synchronized ObjectName register(ObjectName name) throws JMException
+    {
+        if ( registeredName != null ) {
+            throw new IllegalStateException("Already registered as "+registeredName);
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this , name );
+        registeredName = name;
+        return name;
+    }
+
+    /**
+     * Removes this instance from the platform MBean server, does nothing if it is not registered.
+     *
+     * @throws JMException
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if ( registeredName != null )
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( registeredName );
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public synchronized long getQueryCount() {
+        return queryCount;
+    }
+
+    @Override
+    public synchronized long getNoPathCount() {
+        return noPathCount;
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getExpandedNodes() {
+        return expandedNodes.snapshot();
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getGeneratedNodes() {
+        return generatedNodes.snapshot();
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getPeakOpenListSize() {
+        return peakOpenListSize.snapshot();
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getDuplicatePushes() {
+        return duplicatePushes.snapshot();
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getHeuristicCalls() {
+        return heuristicCalls.snapshot();
+    }
+
+    @Override
+    public synchronized Histogram.Snapshot getWallTimeMicros() {
+        return wallTimeMicros.snapshot();
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        queryCount = 0;
+        noPathCount = 0;
+        expandedNodes.reset();
+        generatedNodes.reset();
+        peakOpenListSize.reset();
+        duplicatePushes.reset();
+        heuristicCalls.reset();
+        wallTimeMicros.reset();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "SearchMetrics[ queries="+queryCount+", no path="+noPathCount+
+                ", expanded: "+expandedNodes.snapshot()+", time (us): "+wallTimeMicros.snapshot()+" ]";
+    }
+}
@@ -0,0 +1,33 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * JMX view of {@link SearchMetrics}.
+ */
+public interface SearchMetricsMXBean
+{
+    public long getQueryCount();
+
+    /**
+     * Returns the number of queries that did not find a path.
+     *
+     * @return
+     */
+    public long getNoPathCount();
+
+    public Histogram.Snapshot getExpandedNodes();
+
+    public Histogram.Snapshot getGeneratedNodes();
+
+    public Histogram.Snapshot getPeakOpenListSize();
+
+    public Histogram.Snapshot getDuplicatePushes();
+
+    public Histogram.Snapshot getHeuristicCalls();
+
+    public Histogram.Snapshot getWallTimeMicros();
+
+    /**
+     * Discards all recorded queries.
+     */
+    public void reset();
+}
@@ -0,0 +1,103 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Available path search implementations.
+ */
+public enum SearchMode
+{
+    /**
+     * A* using {@link PathFinder.PathNode} objects.
+     */
+    ASTAR("A*") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new PathFinder( scene );
+        }
+    },
+    /**
+     * Allocation-free A* on primitive arrays.
+     */
+    ARRAY_ASTAR("A* (arrays)") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new ArrayPathFinder( scene );
+        }
+    },
+    /**
+     * Allocation-free A* on primitive arrays, with diagonal moves.
+     */
+    ARRAY_ASTAR_DIAGONAL("A* (arrays, 8-way)") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new ArrayPathFinder( scene , true );
+        }
+    },
+    /**
+     * Bidirectional A* on primitive arrays.
+     */
+    BIDIRECTIONAL_ASTAR("Bidirectional A*") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new BidirectionalPathFinder( scene );
+        }
+    },
+    /**
+     * Jump Point Search, with diagonal moves.
+     */
+    JPS("JPS (8-way)") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new JumpPointPathFinder( scene );
+        }
+    },
+    /**
+     * Any-angle search (Theta*), returns waypoints instead of adjacent cells.
+     */
+    THETA_STAR("Theta* (any-angle)") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new ThetaStarPathFinder( scene );
+        }
+    },
+    /**
+     * Hierarchical search (HPA*), near-optimal.
+     */
+    HIERARCHICAL("HPA*") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new HierarchicalPathFinder( scene );
+        }
+    },
+    /**
+     * Incremental search (D* Lite) that repairs its previous result after scene changes, with diagonal moves.
+     */
+    DSTAR_LITE("D* Lite (8-way)") {
+        @Override
+        public IPathFinder createPathFinder(IScene scene) {
+            return new DStarLitePathFinder( scene , true );
+        }
+    };
+
+    private final String displayName;
+
+    private SearchMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public abstract IPathFinder createPathFinder(IScene scene);
+
+    /**
+     * Returns the next mode, wrapping around after the last one.
+     * 
+     * @return
+     */
+    public SearchMode next() {
+        final SearchMode[] values = values();
+        return values[ ( ordinal() + 1 ) % values.length ];
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
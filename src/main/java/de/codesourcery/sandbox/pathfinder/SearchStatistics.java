@@ -0,0 +1,81 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Counters collected while running a single path query.
+ *
+ * @see ISearchListener
+ */
+public final class SearchStatistics
+{
+    private final int expandedNodes;
+    private final int generatedNodes;
+    private final int peakOpenListSize;
+    private final int duplicatePushes;
+    private final int heuristicCalls;
+    private final long wallTimeNanos;
+    private final boolean pathFound;
+
+    public SearchStatistics(int expandedNodes, int generatedNodes, int peakOpenListSize, int duplicatePushes,
+            int heuristicCalls, long wallTimeNanos, boolean pathFound)
+    {
+        this.expandedNodes = expandedNodes;
+        this.generatedNodes = generatedNodes;
+        this.peakOpenListSize = peakOpenListSize;
+        this.duplicatePushes = duplicatePushes;
+        this.heuristicCalls = heuristicCalls;
+        this.wallTimeNanos = wallTimeNanos;
+        this.pathFound = pathFound;
+    }
+
+    /**
+     * Returns the number of nodes removed from the open list and expanded.
+     *
+     * @return
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * Returns the number of nodes added to the open list.
+     *
+     * @return
+     */
+    public int getGeneratedNodes() {
+        return generatedNodes;
+    }
+
+    public int getPeakOpenListSize() {
+        return peakOpenListSize;
+    }
+
+    /**
+     * Returns how often a node that was already on the open list was pushed again
+     * with a different key.
+     *
+     * @return
+     */
+    public int getDuplicatePushes() {
+        return duplicatePushes;
+    }
+
+    public int getHeuristicCalls() {
+        return heuristicCalls;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    public boolean isPathFound() {
+        return pathFound;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "expanded="+expandedNodes+", generated="+generatedNodes+", peak open="+peakOpenListSize+
+                ", duplicate pushes="+duplicatePushes+", heuristic calls="+heuristicCalls+
+                ", time="+( wallTimeNanos / 1000 )+" us"+( pathFound ? "" : ", no path" );
+    }
+}
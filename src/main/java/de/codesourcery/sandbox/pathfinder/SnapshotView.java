@@ -0,0 +1,181 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Read-only scene showing the latest snapshot of another scene that was taken by {@link #refresh()}.
+ *
+ * <p>Path finders and indices that are created for the view see the same cells until
+ * the next refresh, no matter how the source scene is modified in the meantime, so a 
+ * worker thread can refresh the view before each query and search without any locking.
+ * Listeners of the view are notified about the cells that differ between the old and the
+ * new snapshot on the thread calling {@link #refresh()}. For a {@link ChunkedScene} source 
+ * only the chunks that were copied since the last refresh are reported, otherwise the 
+ * whole scene.</p>
+ *
+ * <p>Instances are not thread-safe, a view should be used by a single thread only.</p>
+ */
+public final class SnapshotView extends AbstractScene
+{
+    private final IScene source;
+    private IScene snapshot;
+
+    /**
+     * Creates a view showing a new snapshot of a scene.
+     *
+     * @param source
+     * @throws IllegalArgumentException if the scene does not support snapshots
+     */
+    public SnapshotView(IScene source) {
+        this( source , snapshotOf( source ) );
+    }
+
+    /**
+     * Creates a view showing a snapshot that was already taken.
+     *
+     * @param source
+     * @param snapshot snapshot of the source scene
+     */
+    public SnapshotView(IScene source,IScene snapshot)
+    {
+        super( source.getWidth() , source.getHeight() );
+        this.source = source;
+        this.snapshot = snapshot;
+    }
+
+    private static IScene snapshotOf(IScene source)
+    {
+        try {
+            return source.snapshot();
+        } catch(UnsupportedOperationException e) {
+            throw new IllegalArgumentException("Scene does not support snapshots: "+source,e);
+        }
+    }
+
+    public IScene getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the snapshot currently shown by this view.
+     *
+     * @return
+     */
+    public IScene getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Switches to a new snapshot of the source scene.
+     *
+     * @return <code>true</code> if the source scene changed since the last snapshot
+     */
+    public boolean refresh() {
+        return refresh( source.snapshot() );
+    }
+
+    /**
+     * Switches to a snapshot of the source scene that was taken by another thread, 
+     * so several views can share the same snapshot.
+     *
+     * @param current snapshot of the source scene
+     * @return <code>true</code> if the snapshot has a different version than the current one
+     */
+    public boolean refresh(IScene current)
+    {
+        final IScene previous = snapshot;
+        if ( current.getVersion() == previous.getVersion() ) {
+            return false;
+        }
+        snapshot = current;
+        if ( previous instanceof ChunkedScene && current instanceof ChunkedScene )
+        {
+            final ChunkedScene oldChunks = (ChunkedScene) previous;
+            final ChunkedScene newChunks = (ChunkedScene) current;
+            for ( int cy = 0 ; cy < newChunks.getChunksY() ; cy++ )
+            {
+                for ( int cx = 0 ; cx < newChunks.getChunksX() ; cx++ )
+                {
+                    if ( ! newChunks.isSameChunk( oldChunks , cx , cy ) )
+                    {
+                        final int x = cx * ChunkedScene.CHUNK_SIZE;
+                        final int y = cy * ChunkedScene.CHUNK_SIZE;
+                        notifyCellsChanged( x , y , Math.min( ChunkedScene.CHUNK_SIZE , width - x ) , Math.min( ChunkedScene.CHUNK_SIZE , height - y ) );
+                    }
+                }
+            }
+        } else {
+            notifyCellsChanged( 0 , 0 , width , height );
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether all cells inside a rectangle are free, using the chunk summaries 
+     * if the current snapshot is a {@link ChunkedScene}.
+     *
+     * @param x
+     * @param y
+     * @param w
+     * @param h
+     * @return
+     * @see ChunkedScene#isAreaFree(int, int, int, int)
+     */
+    public boolean isAreaFree(int x,int y,int w,int h)
+    {
+        if ( snapshot instanceof ChunkedScene ) {
+            return ((ChunkedScene) snapshot).isAreaFree( x , y , w , h );
+        }
+        final int x2 = Math.min( x + w , width );
+        final int y2 = Math.min( y + h , height );
+        for ( int cy = y ; cy < y2 ; cy++ ) 
+        {
+            if ( ! isRowSpanFree( cy , x , x2 - 1 ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether {@link #isAreaFree(int, int, int, int)} is cheaper than checking cell by cell.
+     *
+     * @return
+     */
+    public boolean hasChunkSummaries() {
+        return snapshot instanceof ChunkedScene;
+    }
+
+    @Override
+    public byte read(int x, int y) {
+        return snapshot.read( x , y );
+    }
+
+    @Override
+    public boolean isFree(int x, int y) {
+        return snapshot.isFree( x , y );
+    }
+
+    @Override
+    public IScene write(int x, int y, byte status) {
+        throw new IllegalStateException("Scene is read-only");
+    }
+
+    @Override
+    public IScene snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public boolean hasLineOfSight(int x1, int y1, int x2, int y2) {
+        return snapshot.hasLineOfSight( x1 , y1 , x2 , y2 );
+    }
+
+    @Override
+    public void visitOccupiedCells(ISceneVisitor cellVisitor) {
+        snapshot.visitOccupiedCells( cellVisitor );
+    }
+
+    @Override
+    public void visitOccupiedSpans(int firstRow, int endRow, IRowSpanVisitor visitor) {
+        snapshot.visitOccupiedSpans( firstRow , endRow , visitor );
+    }
+}
@@ -0,0 +1,90 @@
+package de.codesourcery.sandbox.pathfinder;
+
+/**
+ * Any-angle search (Theta*, Nash/Daniel/Koenig/Felner) on top of 8-way A*.
+ * 
+ * <p>When a neighbor is reached, the search first tries to connect it directly to the 
+ * parent of the current cell using {@link IScene#hasLineOfSight(int, int, int, int)}. 
+ * The resulting paths consist of straight segments between waypoints, the returned 
+ * {@link PathFinder.PathNode} chain only contains the waypoints (consecutive nodes are 
+ * usually not adjacent). Costs are euclidean distances scaled by {@link #STRAIGHT_COST}.</p>
+ * 
+ * <p>Paths are not guaranteed to be the shortest any-angle paths but are never longer than 
+ * the 8-way grid paths found by {@link ArrayPathFinder}.</p>
+ * 
+ * <p>Instances are not thread-safe.</p>
+ */
+public final class ThetaStarPathFinder extends AbstractPathFinder
+{
+    // E, W, S, N, NE, NW, SE, SW
+    private static final int[] DX = {1,-1,0,0,1,-1,1,-1};
+    private static final int[] DY = {0,0,1,-1,-1,-1,1,1};
+
+    public ThetaStarPathFinder(IScene scene) {
+        super(scene);
+    }
+
+    @Override
+    protected int findPath(int startCell, int targetCell)
+    {
+        startSearch();
+
+        final int targetX = cellX( targetCell );
+        final int targetY = cellY( targetCell );
+
+        visit( startCell , 0 , -1 );
+        openList.insertOrUpdate( startCell , openListKey( estimatedCost( cellX( startCell ) - targetX , cellY( startCell ) - targetY ) , 0 ) );
+
+        while ( ! openList.isEmpty() ) 
+        {
+            final int current = openList.poll();
+            if ( current == targetCell ) {
+                return current;
+            }
+            markClosed( current );
+
+            final int x = cellX( current );
+            final int y = cellY( current );
+            final int parentCell = parent[current];
+            for ( int d = 0 ; d < 8 ; d++ ) 
+            {
+                final int nx = x + DX[d];
+                final int ny = y + DY[d];
+                if ( ! isFree( nx , ny ) || ( d >= 4 && ( ! isFree( nx , y ) || ! isFree( x , ny ) ) ) ) {
+                    continue;
+                }
+                final int neighbor = cellIndex( nx , ny );
+                if ( isClosed( neighbor ) ) {
+                    continue;
+                }
+
+                final int g;
+                final int newParent;
+                if ( parentCell != -1 && scene.hasLineOfSight( cellX( parentCell ) , cellY( parentCell ) , nx , ny ) ) {
+                    g = gScore[ parentCell ] + euclideanDistance( cellX( parentCell ) - nx , cellY( parentCell ) - ny );
+                    newParent = parentCell;
+                } else {
+                    g = gScore[ current ] + ( d < 4 ? STRAIGHT_COST : DIAGONAL_COST );
+                    newParent = current;
+                }
+
+                if ( isVisited( neighbor ) && gScore[ neighbor ] <= g ) {
+                    continue;
+                }
+                visit( neighbor , g , newParent );
+                openList.insertOrUpdate( neighbor , openListKey( g + estimatedCost( nx - targetX , ny - targetY ) , g ) );
+            }
+        }
+        return -1;
+    }
+
+    private int estimatedCost(int dx,int dy) 
+    {
+        incHeuristicCalls();
+        return euclideanDistance( dx , dy );
+    }
+
+    private static int euclideanDistance(int dx,int dy) {
+        return (int) Math.round( STRAIGHT_COST * Math.sqrt( dx * (double) dx + dy * (double) dy ) );
+    }
+}
@@ -0,0 +1,59 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class ArrayPathFinderTest extends TestCase
+{
+    public void testNoPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        for ( int y = 0 ; y < 10 ; y++ ) {
+            scene.write( 5 , y , IScene.OCCUPIED );
+        }
+        assertNull( new ArrayPathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,9) ) );
+    }
+
+    public void testPathStartsAndEndsAtEndpoints() 
+    {
+        final IScene scene = new Scene(10,10);
+        final PathNode path = new ArrayPathFinder( scene ).findPath( new PathNode(1,2) , new PathNode(7,8) );
+        assertNotNull( path );
+        assertEquals( new Vec2(7,8) , path );
+        assertEquals( 120 , path.g() );
+        assertEquals( 13 , path.getNodeCount() );
+
+        PathNode first = path;
+        while ( first.parent() != null ) {
+            first = first.parent();
+        }
+        assertEquals( new Vec2(1,2) , first );
+        assertEquals( 0 , first.g() );
+    }
+
+    public void testInstanceCanBeReused() 
+    {
+        final Random rnd = new Random(0xcafebabe);
+        for ( int i = 0 ; i < 20 ; i++ ) 
+        {
+            final IScene scene = PathFinderTest.randomScene( rnd , 50 , 40 , 0.25f );
+            final ArrayPathFinder finder = new ArrayPathFinder( scene );
+            for ( int j = 0 ; j < 20 ; j++ ) 
+            {
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                final int expected = PathFinderTest.shortestDistance( scene , start , target );
+                final PathNode path = finder.findPath( start , target );
+                if ( expected == -1 ) {
+                    assertNull( path );
+                } else {
+                    assertNotNull( path );
+                    assertEquals( expected * 10 , path.g() );
+                    PathFinderTest.assertValidPath( scene , path );
+                }
+            }
+        }
+    }
+}
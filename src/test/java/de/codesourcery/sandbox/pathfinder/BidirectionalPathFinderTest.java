@@ -0,0 +1,62 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class BidirectionalPathFinderTest extends TestCase
+{
+    public void testNoPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        for ( int y = 0 ; y < 10 ; y++ ) {
+            scene.write( 5 , y , IScene.OCCUPIED );
+        }
+        assertNull( new BidirectionalPathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,9) ) );
+    }
+
+    public void testAdjacentCells() 
+    {
+        final IScene scene = new Scene(10,10);
+        final PathNode path = new BidirectionalPathFinder( scene ).findPath( new PathNode(4,4) , new PathNode(5,4) );
+        assertNotNull( path );
+        assertEquals( 2 , path.getNodeCount() );
+        assertEquals( 10 , path.g() );
+    }
+
+    public void testOptimalPaths() 
+    {
+        final Random rnd = new Random(0xb1d1);
+        final float[] densities = { 0f , 0.15f , 0.3f };
+        for ( boolean diagonal : new boolean[] { false , true } ) 
+        {
+            for ( float density : densities ) 
+            {
+                for ( int i = 0 ; i < 20 ; i++ ) 
+                {
+                    final IScene scene = PathFinderTest.randomScene( rnd , 60 , 40 , density );
+                    final IPathFinder expectedFinder = new ArrayPathFinder( scene , diagonal );
+                    final IPathFinder finder = new BidirectionalPathFinder( scene , diagonal );
+                    for ( int j = 0 ; j < 10 ; j++ ) 
+                    {
+                        final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                        final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                        final PathNode expected = expectedFinder.findPath( start , target );
+                        final PathNode actual = finder.findPath( start , target );
+                        if ( expected == null ) {
+                            assertNull( actual );
+                        } 
+                        else 
+                        {
+                            assertNotNull( actual );
+                            assertEquals( target , actual );
+                            assertEquals( "Path "+start+" -> "+target , expected.g() , actual.g() );
+                            PathFinderTest.assertValidPath( scene , actual );
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneVisitor;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class ChunkedSceneTest extends TestCase
+{
+    public void testMatchesByteScene() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final ChunkedScene chunked = new ChunkedScene(200,150);
+        final Scene expected = new Scene(200,150);
+        for ( int i = 0 ; i < 5000 ; i++ ) 
+        {
+            // keep the writes clustered so that some chunks stay empty
+            final int x = rnd.nextInt( 100 );
+            final int y = rnd.nextInt( 150 );
+            final byte status = rnd.nextInt(3) == 0 ? IScene.FREE : IScene.OCCUPIED;
+            chunked.write( x , y , status );
+            expected.write( x , y , status );
+        }
+
+        int occupied = 0;
+        for ( int y = 0 ; y < 150 ; y++ ) 
+        {
+            for ( int x = 0 ; x < 200 ; x++ ) 
+            {
+                assertEquals( expected.read( x , y ) , chunked.read( x , y ) );
+                if ( ! expected.isFree( x , y ) ) {
+                    occupied++;
+                }
+            }
+        }
+        assertTrue( chunked.isChunkFree( 2 , 0 ) );
+        assertTrue( chunked.getAllocatedChunkCount() <= 6 );
+
+        for ( int i = 0 ; i < 500 ; i++ ) 
+        {
+            final int x = rnd.nextInt( 200 );
+            final int y = rnd.nextInt( 150 );
+            final int w = 1 + rnd.nextInt( 20 );
+            final int h = 1 + rnd.nextInt( 20 );
+            assertEquals( isAreaFree( expected , x , y , w , h ) , chunked.isAreaFree( x , y , w , h ) );
+        }
+
+        final int[] count = new int[1];
+        chunked.visitOccupiedCells( new ISceneVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte cellStatus) 
+            {
+                assertFalse( expected.isFree( x , y ) );
+                count[0]++;
+            }
+        });
+        assertEquals( occupied , count[0] );
+    }
+
+    public void testUniformChunksAreShared() 
+    {
+        final ChunkedScene scene = new ChunkedScene(100,100);
+        // the chunk at (1,1) only has 36x36 cells inside the scene
+        for ( int y = 64 ; y < 100 ; y++ ) {
+            for ( int x = 64 ; x < 100 ; x++ ) {
+                scene.write( x , y , IScene.OCCUPIED );
+            }
+        }
+        assertTrue( scene.isChunkOccupied( 1 , 1 ) );
+        assertEquals( 0 , scene.getAllocatedChunkCount() );
+
+        scene.write( 99 , 99 , IScene.FREE );
+        assertFalse( scene.isChunkOccupied( 1 , 1 ) );
+        assertEquals( 1 , scene.getAllocatedChunkCount() );
+        assertTrue( scene.isFree( 99 , 99 ) );
+        assertFalse( scene.isFree( 98 , 99 ) );
+
+        for ( int y = 64 ; y < 100 ; y++ ) {
+            for ( int x = 64 ; x < 100 ; x++ ) {
+                scene.write( x , y , IScene.FREE );
+            }
+        }
+        assertTrue( scene.isChunkFree( 1 , 1 ) );
+        assertEquals( 0 , scene.getAllocatedChunkCount() );
+    }
+
+    public void testHierarchicalPathFinderSkipsFreeClusters() 
+    {
+        final Random rnd = new Random(0xcafebabe);
+        final Scene expected = new Scene(150,150);
+        final ChunkedScene chunked = new ChunkedScene(150,150);
+        for ( int i = 0 ; i < 400 ; i++ ) 
+        {
+            final int x = rnd.nextInt( 64 );
+            final int y = rnd.nextInt( 150 );
+            expected.write( x , y , IScene.OCCUPIED );
+            chunked.write( x , y , IScene.OCCUPIED );
+        }
+        final HierarchicalPathFinder expectedFinder = new HierarchicalPathFinder( expected );
+        final HierarchicalPathFinder finder = new HierarchicalPathFinder( chunked );
+        for ( int i = 0 ; i < 20 ; i++ ) 
+        {
+            final PathNode start = PathFinderTest.randomFreeCell( rnd , expected );
+            final PathNode target = PathFinderTest.randomFreeCell( rnd , expected );
+            final PathNode expectedPath = expectedFinder.findPath( start , target );
+            final PathNode path = finder.findPath( start , target );
+            if ( expectedPath == null ) {
+                assertNull( path );
+            } else {
+                assertEquals( expectedPath.g() , path.g() );
+                PathFinderTest.assertValidPath( chunked , path );
+            }
+        }
+    }
+
+    private static boolean isAreaFree(IScene scene,int x,int y,int w,int h) 
+    {
+        for ( int cy = y ; cy < Math.min( y + h , scene.getHeight() ) ; cy++ ) {
+            for ( int cx = x ; cx < Math.min( x + w , scene.getWidth() ) ; cx++ ) {
+                if ( ! scene.isFree( cx , cy ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+import de.codesourcery.sandbox.pathfinder.PathService.PathQuery;
+
+public class ConnectivityIndexTest extends TestCase
+{
+    public void testMatchesFloodFillAfterRandomWrites() 
+    {
+        final Random rnd = new Random(0xc0ffee);
+        final PackedScene scene = new PackedScene(60,40);
+        SceneGenerator.NOISE_35.generate( scene , 7 );
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+        assertComponents( scene , index , rnd );
+
+        for ( int i = 0 ; i < 300 ; i++ ) 
+        {
+            if ( i % 25 == 0 ) {
+                scene.fill( rnd.nextInt( 50 ) , rnd.nextInt( 30 ) , 1 + rnd.nextInt( 10 ) , 1 + rnd.nextInt( 10 ) , rnd.nextBoolean() ? IScene.FREE : IScene.OCCUPIED );
+            } else {
+                scene.write( rnd.nextInt( 60 ) , rnd.nextInt( 40 ) , rnd.nextBoolean() ? IScene.FREE : IScene.OCCUPIED );
+            }
+            assertComponents( scene , index , rnd );
+        }
+    }
+
+    public void testSimpleChangesDoNotRebuild() 
+    {
+        final IScene scene = new Scene(30,30);
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+        // a wall with a gap
+        for ( int y = 0 ; y < 29 ; y++ ) {
+            scene.write( 10 , y , IScene.OCCUPIED );
+        }
+        assertTrue( index.isConnected( 0 , 0 , 29 , 0 ) );
+        assertEquals( 30 * 30 - 29 , index.getComponentSize( 0 , 0 ) );
+        assertEquals( 1 , index.getRebuildCount() );
+
+        // closing the gap splits the scene
+        scene.write( 10 , 29 , IScene.OCCUPIED );
+        assertFalse( index.isConnected( 0 , 0 , 29 , 0 ) );
+        assertEquals( 2 , index.getRebuildCount() );
+        assertEquals( 10 * 30 , index.getComponentSize( 0 , 0 ) );
+        assertEquals( -1 , index.getComponent( 10 , 5 ) );
+
+        // opening it again only merges
+        scene.write( 10 , 5 , IScene.FREE );
+        assertTrue( index.isConnected( 0 , 0 , 29 , 0 ) );
+        assertEquals( 2 , index.getRebuildCount() );
+        assertEquals( 30 * 30 - 29 , index.getComponentSize( 0 , 0 ) );
+
+        index.dispose();
+        scene.write( 10 , 5 , IScene.OCCUPIED );
+        assertEquals( 2 , index.getRebuildCount() );
+    }
+
+    public void testFreeingCellAfterIncrementalOccupy() 
+    {
+        final IScene scene = new Scene(3,1);
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+        scene.write( 0 , 0 , IScene.OCCUPIED );
+        scene.write( 1 , 0 , IScene.OCCUPIED );
+        scene.write( 0 , 0 , IScene.FREE );
+        assertFalse( index.isConnected( 0 , 0 , 2 , 0 ) );
+        assertEquals( 1 , index.getComponentSize( 0 , 0 ) );
+        assertEquals( 1 , index.getComponentSize( 2 , 0 ) );
+        index.dispose();
+    }
+
+    public void testFindPathRejectsUnreachableTargets() throws Exception 
+    {
+        final IScene scene = new Scene(50,50);
+        for ( int y = 0 ; y < 50 ; y++ ) {
+            scene.write( 25 , y , IScene.OCCUPIED );
+        }
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+        final ArrayPathFinder finder = new ArrayPathFinder( scene , true );
+        assertNull( finder.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+        assertTrue( finder.getExpandedNodes() > 1000 );
+
+        finder.setConnectivityIndex( index );
+        assertNull( finder.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+        assertEquals( 0 , finder.getExpandedNodes() );
+        assertNotNull( finder.findPath( new PathNode(0,0) , new PathNode(24,49) ) );
+
+        final PathService service = new PathService( scene , SearchMode.ARRAY_ASTAR , 2 );
+        try 
+        {
+            service.setConnectivityIndex( index );
+            final List<PathQuery> queries = new ArrayList<>( Arrays.asList( 
+                    new PathQuery( new PathNode(0,0) , new PathNode(49,49) ) ,
+                    new PathQuery( new PathNode(0,0) , new PathNode(20,30) ) ,
+                    new PathQuery( new PathNode(0,0) , new PathNode(49,49) ) ) );
+            final List<Future<PathNode>> results = service.findPaths( queries , true );
+            assertTrue( results.get(0).isDone() );
+            assertNull( results.get(0).get() );
+            assertNotNull( results.get(1).get() );
+            assertSame( results.get(0) , results.get(2) );
+        } finally {
+            service.shutdown( 5 , TimeUnit.SECONDS );
+        }
+    }
+
+    public void testLegacyAndIncrementalFindersRejectUnreachableTargets() 
+    {
+        final IScene scene = new Scene(50,50);
+        for ( int y = 0 ; y < 50 ; y++ ) {
+            scene.write( 25 , y , IScene.OCCUPIED );
+        }
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+
+        final PathFinder legacy = new PathFinder( scene , true );
+        ((IPathFinder) legacy).setConnectivityIndex( index );
+        assertNull( legacy.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+        assertEquals( 0 , legacy.getExpandedNodes() );
+        assertNotNull( legacy.findPath( new PathNode(0,0) , new PathNode(24,49) ) );
+
+        final DStarLitePathFinder incremental = new DStarLitePathFinder( scene , true );
+        try 
+        {
+            incremental.setConnectivityIndex( index );
+            assertNull( incremental.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+            assertEquals( 0 , incremental.getExpandedNodes() );
+
+            // the state of the previous search survives a rejected query
+            assertNotNull( incremental.findPath( new PathNode(0,0) , new PathNode(24,49) ) );
+            assertNull( incremental.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+            scene.write( 25 , 10 , IScene.FREE );
+            final PathNode expected = new ArrayPathFinder( scene , true ).findPath( new PathNode(0,0) , new PathNode(24,49) );
+            assertEquals( expected.g() , incremental.findPath( new PathNode(0,0) , new PathNode(24,49) ).g() );
+            assertNotNull( incremental.findPath( new PathNode(0,0) , new PathNode(49,49) ) );
+        } finally {
+            incremental.dispose();
+            index.dispose();
+        }
+    }
+
+    private static void assertComponents(IScene scene,ConnectivityIndex index,Random rnd) 
+    {
+        final int[] labels = floodFill( scene );
+        final int width = scene.getWidth();
+        final int cells = labels.length;
+        for ( int i = 0 ; i < 200 ; i++ ) 
+        {
+            final int a = rnd.nextInt( cells );
+            final int b = rnd.nextInt( cells );
+            final boolean expected = labels[a] != -1 && labels[a] == labels[b];
+            assertEquals( expected , index.isConnected( a % width , a / width , b % width , b / width ) );
+        }
+        final int[] sizes = new int[ cells ];
+        for ( int label : labels ) {
+            if ( label != -1 ) {
+                sizes[label]++;
+            }
+        }
+        for ( int i = 0 ; i < 50 ; i++ ) 
+        {
+            final int a = rnd.nextInt( cells );
+            assertEquals( labels[a] == -1 ? 0 : sizes[ labels[a] ] , index.getComponentSize( a % width , a / width ) );
+        }
+    }
+
+    private static int[] floodFill(IScene scene) 
+    {
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        final int[] labels = new int[ width * height ];
+        Arrays.fill( labels , -1 );
+        final int[] queue = new int[ width * height ];
+        for ( int start = 0 ; start < labels.length ; start++ ) 
+        {
+            if ( labels[start] != -1 || ! scene.isFree( start % width , start / width ) ) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            labels[start] = start;
+            queue[ tail++ ] = start;
+            while ( head < tail ) 
+            {
+                final int cell = queue[ head++ ];
+                final int x = cell % width;
+                final int y = cell / width;
+                final int[] neighbors = { x > 0 ? cell - 1 : -1 , x + 1 < width ? cell + 1 : -1 , y > 0 ? cell - width : -1 , y + 1 < height ? cell + width : -1 };
+                for ( int n : neighbors ) 
+                {
+                    if ( n != -1 && labels[n] == -1 && scene.isFree( n % width , n / width ) ) {
+                        labels[n] = start;
+                        queue[ tail++ ] = n;
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,69 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class DStarLitePathFinderTest extends TestCase
+{
+    public void testMatchesArrayPathFinderAfterSceneChanges() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        for ( int i = 0 ; i < 10 ; i++ ) 
+        {
+            final boolean diagonal = i % 2 == 0;
+            final IScene scene = PathFinderTest.randomScene( rnd , 40 , 30 , 0.2f );
+            final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+            final DStarLitePathFinder finder = new DStarLitePathFinder( scene , diagonal );
+            for ( int j = 0 ; j < 30 ; j++ ) 
+            {
+                for ( int k = rnd.nextInt( 4 ) ; k > 0 ; k-- ) {
+                    scene.write( rnd.nextInt( 40 ) , rnd.nextInt( 30 ) , rnd.nextBoolean() ? IScene.OCCUPIED : IScene.FREE );
+                }
+                scene.write( target.x , target.y , IScene.FREE );
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+
+                final PathNode expected = new ArrayPathFinder( scene , diagonal ).findPath( start , target );
+                final PathNode actual = finder.findPath( start , target );
+                if ( expected == null ) {
+                    assertNull( actual );
+                } else {
+                    assertNotNull( actual );
+                    assertEquals( expected.g() , actual.g() );
+                    assertEquals( new Vec2( target.x , target.y ) , actual );
+                    if ( ! diagonal ) {
+                        PathFinderTest.assertValidPath( scene , actual );
+                    }
+                }
+            }
+            finder.dispose();
+        }
+    }
+
+    public void testRepairIsCheaperThanNewSearch() 
+    {
+        final IScene scene = PathFinderTest.randomScene( new Random(42) , 200 , 200 , 0.3f );
+        final PathNode start = new PathNode(5,100);
+        final PathNode target = new PathNode(195,100);
+        scene.write( start.x , start.y , IScene.FREE );
+        scene.write( target.x , target.y , IScene.FREE );
+
+        final DStarLitePathFinder finder = new DStarLitePathFinder( scene , true );
+        PathNode path = finder.findPath( start , target );
+        assertNotNull( path );
+
+        // block the path a few steps after the start
+        final int nodeCount = path.getNodeCount();
+        PathNode blocked = path;
+        for ( int i = 0 ; i < nodeCount - 6 ; i++ ) {
+            blocked = blocked.parent();
+        }
+        scene.write( blocked.x , blocked.y , IScene.OCCUPIED );
+
+        path = finder.findPath( start , target );
+        final DStarLitePathFinder newFinder = new DStarLitePathFinder( scene , true );
+        assertEquals( newFinder.findPath( start , target ).g() , path.g() );
+        assertTrue( finder.getExpandedNodes() * 3 < newFinder.getExpandedNodes() );
+    }
+}
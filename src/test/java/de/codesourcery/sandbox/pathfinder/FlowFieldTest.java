@@ -0,0 +1,107 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class FlowFieldTest extends TestCase
+{
+    public void testDistancesMatchPathFinder() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        for ( int i = 0 ; i < 10 ; i++ ) 
+        {
+            final IScene scene = PathFinderTest.randomScene( rnd , 40 , 30 , 0.25f );
+            final PathNode goal = PathFinderTest.randomFreeCell( rnd , scene );
+            final FlowField field = new FlowField( scene , goal.x , goal.y );
+            final ArrayPathFinder finder = new ArrayPathFinder( scene , true );
+            for ( int j = 0 ; j < 20 ; j++ ) 
+            {
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode path = finder.findPath( start , goal );
+                assertEquals( path == null ? -1 : path.g() , field.getDistance( start.x , start.y ) );
+                assertFlowLeadsToGoal( scene , field , start.x , start.y );
+            }
+        }
+    }
+
+    public void testParallelComputationMatchesSequential() 
+    {
+        final Random rnd = new Random(0x12345678);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try 
+        {
+            for ( int i = 0 ; i < 5 ; i++ ) 
+            {
+                final IScene scene = PathFinderTest.randomScene( rnd , 70 , 50 , 0.3f );
+                final PathNode goal = PathFinderTest.randomFreeCell( rnd , scene );
+                final FlowField expected = new FlowField( scene , goal.x , goal.y );
+                final FlowField actual = new FlowField( scene , goal.x , goal.y );
+                actual.recompute( pool , 8 );
+                assertSameDistances( scene , expected , actual );
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testRefreshMatchesRecompute() 
+    {
+        final Random rnd = new Random(0xcafebabe);
+        for ( int i = 0 ; i < 10 ; i++ ) 
+        {
+            final IScene scene = PathFinderTest.randomScene( rnd , 40 , 30 , 0.2f );
+            final PathNode goal = PathFinderTest.randomFreeCell( rnd , scene );
+            final FlowField field = new FlowField( scene , goal.x , goal.y , i % 2 == 0 );
+            for ( int j = 0 ; j < 30 ; j++ ) 
+            {
+                final int x = rnd.nextInt( scene.getWidth() );
+                final int y = rnd.nextInt( scene.getHeight() );
+                scene.write( x , y , rnd.nextBoolean() ? IScene.OCCUPIED : IScene.FREE );
+                field.refresh();
+
+                final FlowField expected = new FlowField( scene , goal.x , goal.y , i % 2 == 0 );
+                assertSameDistances( scene , expected , field );
+                expected.dispose();
+            }
+            for ( int y = 0 ; y < scene.getHeight() ; y++ ) 
+            {
+                for ( int x = 0 ; x < scene.getWidth() ; x++ ) {
+                    assertFlowLeadsToGoal( scene , field , x , y );
+                }
+            }
+        }
+    }
+
+    private static void assertSameDistances(IScene scene,FlowField expected,FlowField actual) 
+    {
+        for ( int y = 0 ; y < scene.getHeight() ; y++ ) 
+        {
+            for ( int x = 0 ; x < scene.getWidth() ; x++ ) {
+                assertEquals( "Cell "+x+","+y , expected.getDistance( x , y ) , actual.getDistance( x , y ) );
+            }
+        }
+    }
+
+    private static void assertFlowLeadsToGoal(IScene scene,FlowField field,int x,int y) 
+    {
+        int distance = field.getDistance( x , y );
+        if ( distance == -1 ) {
+            assertEquals( FlowField.NO_DIRECTION , field.getDirection( x , y ) );
+            return;
+        }
+        while ( x != field.getGoalX() || y != field.getGoalY() ) 
+        {
+            final int next = field.getNextCell( x , y );
+            assertTrue( next != -1 );
+            x = next % scene.getWidth();
+            y = next / scene.getWidth();
+            assertTrue( scene.isFree( x , y ) );
+            assertTrue( field.getDistance( x , y ) < distance );
+            distance = field.getDistance( x , y );
+        }
+        assertEquals( 0 , distance );
+    }
+}
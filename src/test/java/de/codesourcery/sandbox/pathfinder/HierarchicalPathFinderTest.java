@@ -0,0 +1,94 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class HierarchicalPathFinderTest extends TestCase
+{
+    public void testPathInsideSingleCluster() 
+    {
+        final IScene scene = new Scene(32,32);
+        final PathNode path = new HierarchicalPathFinder( scene , 8 ).findPath( new PathNode(1,1) , new PathNode(5,6) );
+        assertNotNull( path );
+        assertEquals( 90 , path.g() );
+        PathFinderTest.assertValidPath( scene , path );
+    }
+
+    public void testStraightPathAcrossClusters() 
+    {
+        final IScene scene = new Scene(64,10);
+        final PathNode path = new HierarchicalPathFinder( scene , 8 ).findPath( new PathNode(0,0) , new PathNode(63,0) );
+        assertNotNull( path );
+        assertEquals( 630 , path.g() );
+        assertEquals( 64 , path.getNodeCount() );
+        PathFinderTest.assertValidPath( scene , path );
+    }
+
+    public void testNoPath() 
+    {
+        final IScene scene = new Scene(40,40);
+        for ( int y = 0 ; y < 40 ; y++ ) {
+            scene.write( 20 , y , IScene.OCCUPIED );
+        }
+        assertNull( new HierarchicalPathFinder( scene , 8 ).findPath( new PathNode(0,0) , new PathNode(39,39) ) );
+    }
+
+    public void testFindsPathWheneverOneExists() 
+    {
+        final Random rnd = new Random(0xabcdef);
+        for ( int i = 0 ; i < 20 ; i++ ) 
+        {
+            final IScene scene = PathFinderTest.randomScene( rnd , 70 , 50 , 0.25f );
+            final HierarchicalPathFinder finder = new HierarchicalPathFinder( scene , 10 );
+            for ( int j = 0 ; j < 20 ; j++ ) 
+            {
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                final int optimal = PathFinderTest.shortestDistance( scene , start , target );
+                final PathNode path = finder.findPath( start , target );
+                if ( optimal == -1 ) {
+                    assertNull( path );
+                } 
+                else 
+                {
+                    assertNotNull( "No path "+start+" -> "+target , path );
+                    assertEquals( target , path );
+                    assertTrue( path.g() >= optimal * 10 );
+                    assertEquals( ( path.getNodeCount() - 1 ) * 10 , path.g() );
+                    PathFinderTest.assertValidPath( scene , path );
+                }
+            }
+        }
+    }
+
+    public void testIncrementalRebuildMatchesFullBuild() 
+    {
+        final Random rnd = new Random(0x5eed);
+        final IScene scene = PathFinderTest.randomScene( rnd , 64 , 48 , 0.2f );
+        final HierarchicalPathFinder incremental = new HierarchicalPathFinder( scene , 8 );
+        for ( int round = 0 ; round < 10 ; round++ ) 
+        {
+            // paint a few obstacles and clear a few cells
+            for ( int i = 0 ; i < 30 ; i++ ) {
+                scene.write( rnd.nextInt( 64 ) , rnd.nextInt( 48 ) , rnd.nextBoolean() ? IScene.OCCUPIED : IScene.FREE );
+            }
+            final HierarchicalPathFinder full = new HierarchicalPathFinder( scene , 8 );
+            for ( int j = 0 ; j < 20 ; j++ ) 
+            {
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode expected = full.findPath( start , target );
+                final PathNode actual = incremental.findPath( start , target );
+                if ( expected == null ) {
+                    assertNull( actual );
+                } else {
+                    assertNotNull( actual );
+                    assertEquals( expected.toString() , actual.toString() );
+                }
+            }
+            full.dispose();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class JumpPointPathFinderTest extends TestCase
+{
+    public void testDiagonalPathOnEmptyScene() 
+    {
+        final IScene scene = new Scene(20,20);
+        final PathNode path = new JumpPointPathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(10,5) );
+        assertNotNull( path );
+        assertEquals( 5*14 + 5*10 , path.g() );
+        assertEquals( 11 , path.getNodeCount() );
+        assertValidPath( scene , path );
+    }
+
+    public void testNoPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        for ( int y = 0 ; y < 10 ; y++ ) {
+            scene.write( 5 , y , IScene.OCCUPIED );
+        }
+        assertNull( new JumpPointPathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,9) ) );
+    }
+
+    public void testNoCornerCutting() 
+    {
+        final IScene scene = new Scene(3,3);
+        scene.write( 1 , 0 , IScene.OCCUPIED );
+        final PathNode path = new JumpPointPathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(2,0) );
+        assertNotNull( path );
+        assertEquals( 4*10 , path.g() );
+        assertValidPath( scene , path );
+    }
+
+    public void testSameCostAsAStar() 
+    {
+        final Random rnd = new Random(0x1234);
+        final float[] densities = { 0.05f , 0.2f , 0.35f };
+        for ( float density : densities ) 
+        {
+            for ( int i = 0 ; i < 30 ; i++ ) 
+            {
+                final IScene scene = PathFinderTest.randomScene( rnd , 60 , 40 , density );
+                final IPathFinder jps = new JumpPointPathFinder( scene );
+                final IPathFinder astar = new ArrayPathFinder( scene , true );
+                final IPathFinder objectAstar = new PathFinder( scene , true );
+                for ( int j = 0 ; j < 10 ; j++ ) 
+                {
+                    final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                    final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                    final PathNode expected = astar.findPath( start , target );
+                    final PathNode actual = jps.findPath( start , target );
+                    final PathNode objectPath = objectAstar.findPath( start , target );
+                    if ( expected == null ) {
+                        assertNull( actual );
+                        assertNull( objectPath );
+                    } 
+                    else 
+                    {
+                        assertNotNull( "No path "+start+" -> "+target , actual );
+                        assertEquals( "Path "+start+" -> "+target , expected.g() , actual.g() );
+                        assertEquals( "Path "+start+" -> "+target , expected.g() , objectPath.g() );
+                        assertEquals( target , actual );
+                        assertValidPath( scene , actual );
+                        assertValidPath( scene , expected );
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertValidPath(IScene scene,PathNode path) 
+    {
+        PathFinderTest.assertValidPath( scene , path );
+        for ( PathNode current = path ; current.parent() != null ; current = current.parent() ) 
+        {
+            final PathNode previous = current.parent();
+            if ( current.x() != previous.x() && current.y() != previous.y() ) 
+            {
+                assertTrue( "Corner cut at "+previous+" -> "+current , scene.isFree( current.x() , previous.y() ) );
+                assertTrue( "Corner cut at "+previous+" -> "+current , scene.isFree( previous.x() , current.y() ) );
+            }
+        }
+    }
+}
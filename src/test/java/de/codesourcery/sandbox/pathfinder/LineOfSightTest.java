@@ -0,0 +1,103 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.QuadTreeScene.Mode;
+
+public class LineOfSightTest extends TestCase
+{
+    public void testSimpleCases() 
+    {
+        final IScene scene = new Scene(10,10);
+        assertTrue( scene.hasLineOfSight( 0 , 0 , 9 , 9 ) );
+        assertTrue( scene.hasLineOfSight( 3 , 3 , 3 , 3 ) );
+        assertFalse( scene.hasLineOfSight( 0 , 0 , 10 , 0 ) );
+
+        scene.write( 5 , 2 , IScene.OCCUPIED );
+        assertFalse( scene.hasLineOfSight( 0 , 2 , 9 , 2 ) );
+        assertFalse( scene.hasLineOfSight( 5 , 0 , 5 , 9 ) );
+        assertTrue( scene.hasLineOfSight( 0 , 3 , 9 , 3 ) );
+
+        // no squeezing between diagonal neighbors
+        scene.write( 1 , 0 , IScene.OCCUPIED );
+        assertFalse( scene.hasLineOfSight( 0 , 0 , 1 , 1 ) );
+        assertFalse( scene.hasLineOfSight( 0 , 0 , 3 , 3 ) );
+        assertTrue( scene.hasLineOfSight( 0 , 1 , 3 , 4 ) );
+    }
+
+    public void testAllScenesAgree() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final Scene scene = (Scene) PathFinderTest.randomScene( rnd , 150 , 90 , 0.02f );
+        final IScene[] others = { new PackedScene(150,90) , new ChunkedScene(150,90) , new QuadTreeScene(150,90,Mode.REGIONS) };
+        for ( int y = 0 ; y < 90 ; y++ ) 
+        {
+            for ( int x = 0 ; x < 150 ; x++ ) 
+            {
+                for ( IScene other : others ) {
+                    other.write( x , y , scene.read( x , y ) );
+                }
+            }
+        }
+
+        int visible = 0;
+        for ( int i = 0 ; i < 2000 ; i++ ) 
+        {
+            final int x1 = rnd.nextInt( 150 );
+            final int y1 = rnd.nextInt( 90 );
+            final int x2 = rnd.nextInt( 150 );
+            final int y2 = rnd.nextInt( 90 );
+            final boolean expected = hasLineOfSight( scene , x1 , y1 , x2 , y2 );
+            assertEquals( expected , scene.hasLineOfSight( x1 , y1 , x2 , y2 ) );
+            assertEquals( expected , scene.hasLineOfSight( x2 , y2 , x1 , y1 ) );
+            for ( IScene other : others ) {
+                assertEquals( other.getClass().getName() , expected , other.hasLineOfSight( x1 , y1 , x2 , y2 ) );
+            }
+            if ( expected ) {
+                visible++;
+            }
+        }
+        assertTrue( visible > 100 );
+    }
+
+    /**
+     * Reference implementation, checks every cell whose square the 
+     * (slightly widened) line touches.
+     */
+    private static boolean hasLineOfSight(IScene scene,int x1,int y1,int x2,int y2) 
+    {
+        final double cx1 = x1 + 0.5;
+        final double cy1 = y1 + 0.5;
+        final double cx2 = x2 + 0.5;
+        final double cy2 = y2 + 0.5;
+        for ( int y = Math.min( y1 , y2 ) ; y <= Math.max( y1 , y2 ) ; y++ ) 
+        {
+            for ( int x = Math.min( x1 , x2 ) ; x <= Math.max( x1 , x2 ) ; x++ ) 
+            {
+                if ( ! scene.isFree( x , y ) && intersects( cx1 , cy1 , cx2 , cy2 , x , y ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(double x1,double y1,double x2,double y2,int cellX,int cellY) 
+    {
+        // signed distances of the cell corners to the line, touching corners count
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+        boolean positive = false;
+        boolean negative = false;
+        for ( int corner = 0 ; corner < 4 ; corner++ ) 
+        {
+            final double px = cellX + ( corner & 1 );
+            final double py = cellY + ( corner >> 1 );
+            final double side = dx * ( py - y1 ) - dy * ( px - x1 );
+            positive |= side >= 0;
+            negative |= side <= 0;
+        }
+        return positive && negative;
+    }
+}
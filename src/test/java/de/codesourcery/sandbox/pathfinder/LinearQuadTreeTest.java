@@ -0,0 +1,124 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.LinearQuadTree.IEntryVisitor;
+
+public class LinearQuadTreeTest extends TestCase
+{
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 90;
+
+    public void testMortonKeys()
+    {
+        assertEquals( 0 , LinearQuadTree.mortonKey( 0 , 0 ) );
+        assertEquals( 1 , LinearQuadTree.mortonKey( 1 , 0 ) );
+        assertEquals( 2 , LinearQuadTree.mortonKey( 0 , 1 ) );
+        assertEquals( 3 , LinearQuadTree.mortonKey( 1 , 1 ) );
+        assertEquals( 4 , LinearQuadTree.mortonKey( 2 , 0 ) );
+
+        final Random rnd = new Random(0x123);
+        for ( int i = 0 ; i < 1000 ; i++ )
+        {
+            final int x = rnd.nextInt( Integer.MAX_VALUE );
+            final int y = rnd.nextInt( Integer.MAX_VALUE );
+            final long key = LinearQuadTree.mortonKey( x , y );
+            assertEquals( x , LinearQuadTree.mortonX( key ) );
+            assertEquals( y , LinearQuadTree.mortonY( key ) );
+        }
+    }
+
+    public void testMatchesByteScene()
+    {
+        final Random rnd = new Random(0xcafe);
+        final LinearQuadTree tree = new LinearQuadTree( WIDTH , HEIGHT );
+        final Scene expected = new Scene( WIDTH , HEIGHT );
+        for ( int i = 0 ; i < 5000 ; i++ )
+        {
+            final int x = rnd.nextInt( WIDTH );
+            final int y = rnd.nextInt( HEIGHT );
+            final byte value = (byte) rnd.nextInt( 3 );
+            assertEquals( expected.read( x , y ) != value , tree.store( x , y , value ) );
+            expected.write( x , y , value );
+        }
+
+        int count = 0;
+        for ( int y = 0 ; y < HEIGHT ; y++ )
+        {
+            for ( int x = 0 ; x < WIDTH ; x++ )
+            {
+                assertEquals( expected.read( x , y ) , tree.get( x , y ) );
+                count += expected.read( x , y ) != 0 ? 1 : 0;
+            }
+        }
+        assertEquals( count , tree.size() );
+
+        for ( int i = 0 ; i < 200 ; i++ )
+        {
+            final int x = rnd.nextInt( WIDTH + 10 ) - 5;
+            final int y = rnd.nextInt( HEIGHT + 10 ) - 5;
+            final int w = rnd.nextInt( 40 );
+            final int h = rnd.nextInt( 40 );
+            final List<String> actual = new ArrayList<>();
+            tree.visitRange( x , y , w , h , new IEntryVisitor() {
+
+                @Override
+                public void visit(int cx, int cy, byte value) {
+                    actual.add( cx+","+cy+"="+value );
+                }
+            });
+            int inside = 0;
+            for ( int cy = Math.max( 0 , y ) ; cy < Math.min( HEIGHT , y + h ) ; cy++ )
+            {
+                for ( int cx = Math.max( 0 , x ) ; cx < Math.min( WIDTH , x + w ) ; cx++ )
+                {
+                    if ( expected.read( cx , cy ) != 0 ) {
+                        inside++;
+                        assertTrue( actual.contains( cx+","+cy+"="+expected.read( cx , cy ) ) );
+                    }
+                }
+            }
+            assertEquals( inside , actual.size() );
+            assertEquals( inside > 0 , tree.containsValues( x , y , w , h ) );
+        }
+    }
+
+    public void testSerialization() throws Exception
+    {
+        final Random rnd = new Random(0xf00);
+        final LinearQuadTree tree = new LinearQuadTree( WIDTH , HEIGHT );
+        for ( int i = 0 ; i < 500 ; i++ ) {
+            tree.store( rnd.nextInt( WIDTH ) , rnd.nextInt( HEIGHT ) , (byte) ( 1 + rnd.nextInt( 5 ) ) );
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.write( new DataOutputStream( bytes ) );
+
+        final LinearQuadTree copy = LinearQuadTree.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+        assertEquals( tree.size() , copy.size() );
+        for ( int y = 0 ; y < HEIGHT ; y++ ) {
+            for ( int x = 0 ; x < WIDTH ; x++ ) {
+                assertEquals( tree.get( x , y ) , copy.get( x , y ) );
+            }
+        }
+        copy.store( 0 , 0 , (byte) 7 );
+        assertEquals( 7 , copy.get( 0 , 0 ) );
+    }
+
+    public void testQuadTreeScene()
+    {
+        final IScene scene = SceneGenerator.NOISE_25.generate( new QuadTreeScene( WIDTH , HEIGHT , QuadTreeScene.Mode.LINEAR ) , 42 );
+        final IScene expected = SceneGenerator.NOISE_25.generate( new Scene( WIDTH , HEIGHT ) , 42 );
+        for ( int y = 0 ; y < HEIGHT ; y++ ) {
+            for ( int x = 0 ; x < WIDTH ; x++ ) {
+                assertEquals( expected.isFree( x , y ) , scene.isFree( x , y ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneVisitor;
+import de.codesourcery.sandbox.pathfinder.MappedScene.Layout;
+
+public class MappedSceneTest extends TestCase
+{
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile( "scene" , ".map" );
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testBytesLayout() throws IOException {
+        checkRoundTrip( Layout.BYTES );
+    }
+
+    public void testBitsLayout() throws IOException {
+        checkRoundTrip( Layout.BITS );
+    }
+
+    public void testReadOnlySceneRejectsWrites() throws IOException 
+    {
+        MappedScene.create( file , 10 , 10 , Layout.BITS ).close();
+        final MappedScene scene = MappedScene.open( file , true );
+        try {
+            scene.write( 1 , 1 , IScene.OCCUPIED );
+            fail("Should have failed");
+        } 
+        catch(IllegalStateException e) {
+            // ok
+        } finally {
+            scene.close();
+        }
+    }
+
+    public void testSnapshots() throws IOException 
+    {
+        final MappedScene writable = MappedScene.create( file , 10 , 10 , Layout.BITS );
+        try 
+        {
+            try {
+                writable.snapshot();
+                fail("Should have failed");
+            } catch(UnsupportedOperationException e) {
+                // ok
+            }
+            try {
+                new PathService( writable , SearchMode.ARRAY_ASTAR , 1 , true );
+                fail("Should have failed");
+            } catch(IllegalArgumentException e) {
+                // ok
+            }
+            try {
+                new SnapshotView( writable );
+                fail("Should have failed");
+            } catch(IllegalArgumentException e) {
+                // ok
+            }
+        } finally {
+            writable.close();
+        }
+        final MappedScene readOnly = MappedScene.open( file , true );
+        try {
+            assertSame( readOnly , readOnly.snapshot() );
+        } finally {
+            readOnly.close();
+        }
+    }
+
+    private void checkRoundTrip(Layout layout) throws IOException 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final IScene expected = PathFinderTest.randomScene( rnd , 130 , 50 , 0.3f );
+        final MappedScene created = MappedScene.create( file , expected , layout );
+        created.write( 129 , 49 , IScene.OCCUPIED );
+        expected.write( 129 , 49 , IScene.OCCUPIED );
+        created.close();
+
+        final MappedScene scene = MappedScene.open( file , true );
+        try 
+        {
+            assertEquals( layout , scene.getLayout() );
+            assertEquals( 130 , scene.getWidth() );
+            assertEquals( 50 , scene.getHeight() );
+            int occupied = 0;
+            for ( int y = 0 ; y < 50 ; y++ ) 
+            {
+                for ( int x = 0 ; x < 130 ; x++ ) 
+                {
+                    assertEquals( expected.read( x , y ) , scene.read( x , y ) );
+                    if ( ! expected.isFree( x , y ) ) {
+                        occupied++;
+                    }
+                }
+            }
+
+            final int[] count = new int[1];
+            scene.visitOccupiedCells( new ISceneVisitor() {
+
+                @Override
+                public void visit(int x, int y, byte cellStatus) 
+                {
+                    assertFalse( expected.isFree( x , y ) );
+                    count[0]++;
+                }
+            });
+            assertEquals( occupied , count[0] );
+        } finally {
+            scene.close();
+        }
+    }
+}
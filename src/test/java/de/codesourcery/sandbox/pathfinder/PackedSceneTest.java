@@ -0,0 +1,102 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneVisitor;
+
+public class PackedSceneTest extends TestCase
+{
+    public void testMatchesByteScene() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final PackedScene packed = new PackedScene(150,40);
+        final Scene expected = new Scene(150,40);
+        for ( int i = 0 ; i < 200 ; i++ ) 
+        {
+            final byte status = rnd.nextBoolean() ? IScene.OCCUPIED : IScene.FREE;
+            if ( rnd.nextInt(10) == 0 ) 
+            {
+                final int x = rnd.nextInt( 150 );
+                final int y = rnd.nextInt( 40 );
+                final int w = 1 + rnd.nextInt( 150 - x );
+                final int h = 1 + rnd.nextInt( 40 - y );
+                packed.fill( x , y , w , h , status );
+                for ( int cy = y ; cy < y + h ; cy++ ) {
+                    for ( int cx = x ; cx < x + w ; cx++ ) {
+                        expected.write( cx , cy , status );
+                    }
+                }
+            } 
+            else 
+            {
+                final int x = rnd.nextInt( 150 );
+                final int y = rnd.nextInt( 40 );
+                packed.write( x , y , status );
+                expected.write( x , y , status );
+            }
+        }
+
+        for ( int y = 0 ; y < 40 ; y++ ) 
+        {
+            for ( int x = 0 ; x < 150 ; x++ ) {
+                assertEquals( expected.read( x , y ) , packed.read( x , y ) );
+            }
+            for ( int i = 0 ; i < 20 ; i++ ) 
+            {
+                final int startX = rnd.nextInt( 150 );
+                final int endX = startX + rnd.nextInt( 151 - startX );
+                assertEquals( firstCell( expected , y , startX , endX , true ) , packed.findFirstFree( y , startX , endX ) );
+                assertEquals( firstCell( expected , y , startX , endX , false ) , packed.findFirstOccupied( y , startX , endX ) );
+            }
+        }
+
+        final int[] count = new int[1];
+        packed.visitOccupiedCells( new ISceneVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte cellStatus) 
+            {
+                assertEquals( IScene.OCCUPIED , cellStatus );
+                assertFalse( expected.isFree( x , y ) );
+                count[0]++;
+            }
+        });
+        assertEquals( countOccupied( expected ) , count[0] );
+    }
+
+    public void testFillNotifiesOnce() 
+    {
+        final PackedScene scene = new PackedScene(100,100);
+        final long version = scene.getVersion();
+        scene.fill( 10 , 20 , 70 , 30 , IScene.OCCUPIED );
+        assertEquals( version + 1 , scene.getVersion() );
+        assertFalse( scene.isFree( 79 , 49 ) );
+        assertTrue( scene.isFree( 80 , 49 ) );
+        assertEquals( 80 , scene.findFirstFree( 20 , 10 , 100 ) );
+    }
+
+    private static int firstCell(IScene scene,int y,int startX,int endX,boolean free) 
+    {
+        for ( int x = startX ; x < endX ; x++ ) 
+        {
+            if ( scene.isFree( x , y ) == free ) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    private static int countOccupied(IScene scene) 
+    {
+        int result = 0;
+        for ( int y = 0 ; y < scene.getHeight() ; y++ ) {
+            for ( int x = 0 ; x < scene.getWidth() ; x++ ) {
+                if ( ! scene.isFree( x , y ) ) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+}
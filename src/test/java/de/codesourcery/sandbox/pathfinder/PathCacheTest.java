@@ -0,0 +1,174 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathCache.InvalidationMode;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class PathCacheTest extends TestCase
+{
+    private IScene scene;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        scene = new Scene(50,50);
+    }
+
+    public void testHitsAndMisses() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        final PathNode path1 = cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        final PathNode path2 = cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        assertSame( path1 , path2 );
+        assertEquals( 1 , cache.getHits() );
+        assertEquals( 1 , cache.getMisses() );
+        assertEquals( 1 , cache.size() );
+    }
+
+    public void testLeastRecentlyUsedEntryIsEvicted() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 2 );
+        cache.findPath( new PathNode(0,0) , new PathNode(1,0) );
+        cache.findPath( new PathNode(0,0) , new PathNode(2,0) );
+        cache.findPath( new PathNode(0,0) , new PathNode(1,0) ); // hit, (2,0) is now eldest
+        cache.findPath( new PathNode(0,0) , new PathNode(3,0) );
+        assertEquals( 1 , cache.getEvictions() );
+        assertEquals( 2 , cache.size() );
+
+        cache.findPath( new PathNode(0,0) , new PathNode(1,0) );
+        assertEquals( 2 , cache.getHits() );
+        cache.findPath( new PathNode(0,0) , new PathNode(2,0) );
+        assertEquals( 4 , cache.getMisses() );
+    }
+
+    public void testObstacleOnPathInvalidates() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        final PathNode path = cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        scene.write( path.parent().x() , path.parent().y() , IScene.OCCUPIED );
+        assertEquals( 0 , cache.size() );
+        assertEquals( 1 , cache.getInvalidations() );
+
+        final PathNode newPath = cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        assertNotSame( path , newPath );
+        PathFinderTest.assertValidPath( scene , newPath );
+    }
+
+    public void testObstacleOffPathKeepsEntry() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        final PathNode path = cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        scene.write( 20 , 20 , IScene.OCCUPIED );
+        assertEquals( 1 , cache.size() );
+        assertSame( path , cache.findPath( new PathNode(0,0) , new PathNode(10,0) ) );
+    }
+
+    public void testBlockedCornerOfDiagonalStepInvalidates() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene , true ) , 10 );
+        final PathNode path = cache.findPath( new PathNode(0,0) , new PathNode(1,1) );
+        assertEquals( 14 , path.g() );
+        // diagonal moves may not cut corners
+        scene.write( 1 , 0 , IScene.OCCUPIED );
+        assertEquals( 0 , cache.size() );
+
+        final PathNode newPath = cache.findPath( new PathNode(0,0) , new PathNode(1,1) );
+        assertEquals( 20 , newPath.g() );
+        PathFinderTest.assertValidPath( scene , newPath );
+    }
+
+    public void testObstacleBetweenWaypointsInvalidates() 
+    {
+        final PathCache cache = new PathCache( scene , new ThetaStarPathFinder( scene ) , 10 );
+        final PathNode path = cache.findPath( new PathNode(0,0) , new PathNode(20,5) );
+        assertNull( path.parent().parent() );
+        scene.write( 10 , 2 , IScene.OCCUPIED );
+        assertEquals( 0 , cache.size() );
+    }
+
+    public void testBoundingBoxInvalidation() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 , InvalidationMode.BOUNDING_BOX );
+        cache.findPath( new PathNode(0,0) , new PathNode(10,10) );
+        scene.write( 10 , 0 , IScene.OCCUPIED );
+        scene.write( 0 , 10 , IScene.OCCUPIED );
+        // at least one of the two corners is not on the path but inside the bounding box
+        assertEquals( 0 , cache.size() );
+    }
+
+    public void testFreedCellInvalidatesDetour() 
+    {
+        for ( int y = 0 ; y < 49 ; y++ ) {
+            scene.write( 25 , y , IScene.OCCUPIED );
+        }
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        final PathNode detour = cache.findPath( new PathNode(20,0) , new PathNode(30,0) );
+        final PathNode straight = cache.findPath( new PathNode(0,49) , new PathNode(49,49) );
+        assertEquals( 2 , cache.size() );
+
+        scene.write( 25 , 0 , IScene.FREE ); // opens a shortcut for the detour only
+        assertEquals( 1 , cache.size() );
+        assertSame( straight , cache.findPath( new PathNode(0,49) , new PathNode(49,49) ) );
+        assertTrue( cache.findPath( new PathNode(20,0) , new PathNode(30,0) ).g() < detour.g() );
+    }
+
+    public void testFreedCellInvalidatesNoPathResult() 
+    {
+        for ( int y = 0 ; y < 50 ; y++ ) {
+            scene.write( 25 , y , IScene.OCCUPIED );
+        }
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        assertNull( cache.findPath( new PathNode(0,0) , new PathNode(49,0) ) );
+        assertNull( cache.findPath( new PathNode(0,0) , new PathNode(49,0) ) );
+        assertEquals( 1 , cache.getHits() );
+
+        scene.write( 25 , 40 , IScene.FREE );
+        assertNotNull( cache.findPath( new PathNode(0,0) , new PathNode(49,0) ) );
+    }
+
+    public void testForwardsListenerAndConnectivityIndex() 
+    {
+        final Object[] received = new Object[2];
+        final IPathFinder delegate = new IPathFinder() {
+
+            @Override
+            public PathNode findPath(PathNode start, PathNode target) {
+                return null;
+            }
+
+            @Override
+            public void setSearchListener(ISearchListener listener) {
+                received[0] = listener;
+            }
+
+            @Override
+            public void setConnectivityIndex(ConnectivityIndex index) {
+                received[1] = index;
+            }
+        };
+        final ISearchListener listener = new ISearchListener() {
+
+            @Override
+            public void searchFinished(IPathFinder finder, SearchStatistics statistics) {
+            }
+        };
+        final ConnectivityIndex index = new ConnectivityIndex( scene );
+
+        final PathCache cache = new PathCache( scene , delegate , 10 );
+        cache.setSearchListener( listener );
+        cache.setConnectivityIndex( index );
+        assertSame( listener , received[0] );
+        assertSame( index , received[1] );
+    }
+
+    public void testUnnoticedChangeClearsCache() 
+    {
+        final PathCache cache = new PathCache( scene , new ArrayPathFinder( scene ) , 10 );
+        cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        cache.dispose();
+        scene.write( 20 , 20 , IScene.OCCUPIED );
+        cache.findPath( new PathNode(0,0) , new PathNode(10,0) );
+        assertEquals( 0 , cache.getHits() );
+        assertEquals( 2 , cache.getMisses() );
+    }
+}
@@ -0,0 +1,149 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class PathFinderTest extends TestCase
+{
+    public void testTrivialPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        final PathNode start = new PathNode(3,3);
+        assertSame( start , new PathFinder( scene ).findPath( start , new PathNode(3,3) ) );
+    }
+
+    public void testStraightPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        final PathNode path = new PathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,0) );
+        assertNotNull( path );
+        assertEquals( 10 , path.getNodeCount() );
+        assertEquals( 90 , path.g() );
+    }
+
+    public void testNoPath() 
+    {
+        final IScene scene = new Scene(10,10);
+        for ( int y = 0 ; y < 10 ; y++ ) {
+            scene.write( 5 , y , IScene.OCCUPIED );
+        }
+        assertNull( new PathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,9) ) );
+    }
+
+    public void testPathAroundWall() 
+    {
+        final IScene scene = new Scene(10,10);
+        for ( int y = 0 ; y < 9 ; y++ ) {
+            scene.write( 5 , y , IScene.OCCUPIED );
+        }
+        final PathNode path = new PathFinder( scene ).findPath( new PathNode(0,0) , new PathNode(9,0) );
+        assertNotNull( path );
+        assertEquals( 9*10 + 2*9*10 , path.g() );
+        assertValidPath( scene , path );
+    }
+
+    public void testRandomScenesYieldShortestPaths() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        for ( int i = 0 ; i < 50 ; i++ ) 
+        {
+            final IScene scene = randomScene( rnd , 40 , 30 , 0.3f );
+            final PathFinder finder = new PathFinder( scene );
+            for ( int j = 0 ; j < 5 ; j++ ) 
+            {
+                final PathNode start = randomFreeCell( rnd , scene );
+                final PathNode target = randomFreeCell( rnd , scene );
+                final int expected = shortestDistance( scene , start , target );
+                final PathNode path = finder.findPath( start , target );
+                if ( expected == -1 ) {
+                    assertNull( path );
+                } else {
+                    assertNotNull( path );
+                    assertEquals( expected * 10 , path.g() );
+                    assertValidPath( scene , path );
+                }
+            }
+        }
+    }
+
+    protected static IScene randomScene(Random rnd,int width,int height,float density) 
+    {
+        final IScene scene = new Scene(width,height);
+        for ( int x = 0 ; x < width ; x++ ) {
+            for ( int y = 0 ; y < height ; y++ ) {
+                if ( rnd.nextFloat() < density ) {
+                    scene.write( x , y , IScene.OCCUPIED );
+                }
+            }
+        }
+        return scene;
+    }
+
+    protected static PathNode randomFreeCell(Random rnd,IScene scene) 
+    {
+        while ( true ) 
+        {
+            final int x = rnd.nextInt( scene.getWidth() );
+            final int y = rnd.nextInt( scene.getHeight() );
+            if ( scene.isFree( x , y ) ) {
+                return new PathNode( x , y );
+            }
+        }
+    }
+
+    protected static void assertValidPath(IScene scene,PathNode path) 
+    {
+        PathNode current = path;
+        while ( current != null ) 
+        {
+            assertTrue( "Path crosses occupied cell "+current.x()+","+current.y() , scene.isFree( current.x() , current.y() ) );
+            if ( current.parent() != null ) 
+            {
+                final int dx = Math.abs( current.x() - current.parent().x() );
+                final int dy = Math.abs( current.y() - current.parent().y() );
+                assertTrue( "Invalid step "+current.parent()+" -> "+current , dx <= 1 && dy <= 1 && dx+dy > 0 );
+            }
+            current = current.parent();
+        }
+    }
+
+    /**
+     * Breadth-first search on a 4-connected grid.
+     * 
+     * @return number of steps or -1 if the target is unreachable
+     */
+    protected static int shortestDistance(IScene scene,Vec2 start,Vec2 target) 
+    {
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        final int[] dist = new int[ width*height ];
+        Arrays.fill( dist , -1 );
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        dist[ start.y*width+start.x ] = 0;
+        queue.add( start.y*width+start.x );
+        while ( ! queue.isEmpty() ) 
+        {
+            final int cell = queue.poll();
+            final int x = cell % width;
+            final int y = cell / width;
+            if ( x == target.x && y == target.y ) {
+                return dist[cell];
+            }
+            final int[][] moves = { {1,0},{-1,0},{0,1},{0,-1} };
+            for ( int[] m : moves ) 
+            {
+                final int nx = x + m[0];
+                final int ny = y + m[1];
+                if ( nx >= 0 && ny >= 0 && nx < width && ny < height && scene.isFree( nx , ny ) && dist[ny*width+nx] == -1 ) {
+                    dist[ny*width+nx] = dist[cell]+1;
+                    queue.add( ny*width+nx );
+                }
+            }
+        }
+        return -1;
+    }
+}
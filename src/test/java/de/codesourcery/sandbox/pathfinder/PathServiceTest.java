@@ -0,0 +1,149 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+import de.codesourcery.sandbox.pathfinder.PathService.PathQuery;
+
+public class PathServiceTest extends TestCase
+{
+    private IScene scene;
+    private PathService service;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        scene = PathFinderTest.randomScene( new Random(0x5e1f) , 120 , 80 , 0.25f );
+        service = new PathService( scene , SearchMode.ARRAY_ASTAR , 4 );
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        service.shutdown( 10 , TimeUnit.SECONDS );
+    }
+
+    public void testBatchMatchesSequentialSearch() throws Exception 
+    {
+        final Random rnd = new Random(0x1);
+        final List<PathQuery> queries = new ArrayList<>();
+        for ( int i = 0 ; i < 500 ; i++ ) {
+            queries.add( new PathQuery( PathFinderTest.randomFreeCell( rnd , scene ) , PathFinderTest.randomFreeCell( rnd , scene ) ) );
+        }
+
+        final List<Future<PathNode>> results = service.findPaths( queries , false );
+        assertEquals( queries.size() , results.size() );
+
+        final ArrayPathFinder finder = new ArrayPathFinder( scene );
+        for ( int i = 0 ; i < queries.size() ; i++ ) 
+        {
+            final PathQuery query = queries.get(i);
+            final PathNode expected = finder.findPath( query.start , query.target );
+            final PathNode actual = results.get(i).get( 10 , TimeUnit.SECONDS );
+            if ( expected == null ) {
+                assertNull( actual );
+            } else {
+                assertNotNull( actual );
+                assertEquals( expected.g() , actual.g() );
+                assertEquals( query.target , actual );
+            }
+        }
+    }
+
+    public void testDeduplication() throws Exception 
+    {
+        final PathQuery query1 = new PathQuery( new PathNode( 0 , 0 ) , new PathNode( 0 , 0 ) );
+        final PathQuery query2 = new PathQuery( new PathNode( 1 , 1 ) , new PathNode( 0 , 0 ) );
+        final PathQuery query3 = new PathQuery( new PathNode( 0 , 0 ) , new PathNode( 0 , 0 ) );
+
+        final List<PathQuery> queries = new ArrayList<>();
+        queries.add( query1 );
+        queries.add( query2 );
+        queries.add( query3 );
+
+        final List<Future<PathNode>> deduplicated = service.findPaths( queries , true );
+        assertSame( deduplicated.get(0) , deduplicated.get(2) );
+        assertNotSame( deduplicated.get(0) , deduplicated.get(1) );
+
+        final List<Future<PathNode>> regular = service.findPaths( queries , false );
+        assertNotSame( regular.get(0) , regular.get(2) );
+        regular.get(2).get( 10 , TimeUnit.SECONDS );
+        deduplicated.get(2).get( 10 , TimeUnit.SECONDS );
+    }
+
+    public void testQueryOutsideOfSceneIsRejected() 
+    {
+        final List<PathQuery> queries = new ArrayList<>();
+        queries.add( new PathQuery( new PathNode( 0 , 0 ) , new PathNode( 1 , 1 ) ) );
+        queries.add( new PathQuery( new PathNode( -5 , -5 ) , new PathNode( 1 , 1 ) ) );
+        try {
+            service.findPaths( queries , false );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            service.findPath( new PathNode( 0 , 0 ) , new PathNode( scene.getWidth() , 0 ) );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testFailingQueryDoesNotCancelOthers() throws Exception 
+    {
+        final IScene poisoned = new AbstractScene( 20 , 20 ) 
+        {
+            @Override
+            public byte read(int x, int y) {
+                return isFree( x , y ) ? IScene.FREE : IScene.OCCUPIED;
+            }
+
+            @Override
+            public boolean isFree(int x, int y) 
+            {
+                if ( x == 19 && y == 19 ) {
+                    throw new IllegalStateException("Poisoned cell");
+                }
+                return x >= 0 && y >= 0 && x < getWidth() && y < getHeight();
+            }
+
+            @Override
+            public IScene write(int x, int y, byte status) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void visitOccupiedCells(ISceneVisitor cellVisitor) {
+            }
+        };
+        final PathService service = new PathService( poisoned , SearchMode.ARRAY_ASTAR , 2 );
+        try 
+        {
+            final List<PathQuery> queries = new ArrayList<>();
+            queries.add( new PathQuery( new PathNode( 18 , 19 ) , new PathNode( 16 , 19 ) ) );
+            for ( int i = 1 ; i <= 5 ; i++ ) {
+                queries.add( new PathQuery( new PathNode( 0 , 0 ) , new PathNode( i , 0 ) ) );
+            }
+            final List<Future<PathNode>> results = service.findPaths( queries , false );
+            try {
+                results.get(0).get( 10 , TimeUnit.SECONDS );
+                fail("Should've failed");
+            } catch(ExecutionException e) {
+                // ok
+            }
+            for ( int i = 1 ; i <= 5 ; i++ ) {
+                assertEquals( new PathNode( i , 0 ) , results.get(i).get( 10 , TimeUnit.SECONDS ) );
+            }
+        } 
+        finally {
+            service.shutdown( 10 , TimeUnit.SECONDS );
+        }
+    }
+}
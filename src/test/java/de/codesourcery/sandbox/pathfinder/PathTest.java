@@ -0,0 +1,75 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class PathTest extends TestCase
+{
+    public void testNullPath() {
+        assertNull( Path.valueOf( null , 10 ) );
+    }
+
+    public void testConstructorCopiesCells() 
+    {
+        final int[] cells = { 0 , 1 , 11 };
+        final Path path = new Path( cells , 10 , 2 );
+        cells[2] = 2;
+        assertEquals( 11 , path.getCell( 2 ) );
+    }
+
+    public void testConversion() 
+    {
+        final Random rnd = new Random(0x1234);
+        final IScene scene = PathFinderTest.randomScene( rnd , 70 , 50 , 0.2f );
+        final ArrayPathFinder finder = new ArrayPathFinder( scene , true );
+        int found = 0;
+        for ( int i = 0 ; i < 50 ; i++ ) 
+        {
+            final PathNode nodes = finder.findPath( PathFinderTest.randomFreeCell( rnd , scene ) , PathFinderTest.randomFreeCell( rnd , scene ) );
+            if ( nodes == null ) {
+                continue;
+            }
+            found++;
+            final Path path = Path.valueOf( nodes , scene.getWidth() );
+            assertEquals( nodes.getNodeCount() , path.length() );
+            assertEquals( nodes.g() , path.getCost() );
+            assertEquals( nodes.toString() , path.toString() );
+            assertEquals( path , Path.valueOf( path.toPathNode() , scene.getWidth() ) );
+
+            // cursor walks from start to target
+            PathNode current = nodes;
+            int index = path.length() - 1;
+            final Path.Cursor cursor = path.cursor();
+            int count = 0;
+            while ( cursor.next() ) 
+            {
+                assertEquals( count , cursor.index() );
+                count++;
+            }
+            assertEquals( path.length() , count );
+            assertFalse( cursor.next() );
+
+            for ( ; current != null ; current = current.parent() , index-- ) 
+            {
+                assertEquals( current.x() , path.getX( index ) );
+                assertEquals( current.y() , path.getY( index ) );
+                assertEquals( current.y() * scene.getWidth() + current.x() , path.getCell( index ) );
+            }
+            assertEquals( -1 , index );
+        }
+        assertTrue( found > 10 );
+    }
+
+    public void testSingleCell() 
+    {
+        final Path path = Path.valueOf( new PathNode( 3 , 4 ) , 10 );
+        assertEquals( 1 , path.length() );
+        final Path.Cursor cursor = path.cursor();
+        assertTrue( cursor.next() );
+        assertEquals( 3 , cursor.x() );
+        assertEquals( 4 , cursor.y() );
+        assertFalse( cursor.next() );
+    }
+}
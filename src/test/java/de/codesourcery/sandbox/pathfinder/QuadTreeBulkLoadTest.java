@@ -0,0 +1,72 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.QuadTree.IVisitor;
+import de.codesourcery.sandbox.pathfinder.QuadTree.QuadNode;
+
+public class QuadTreeBulkLoadTest extends TestCase
+{
+    public void testMatchesIncrementalStore()
+    {
+        final Random rnd = new Random(0xb01c);
+        final int[][] sizes = { {1,1} , {1,17} , {13,1} , {64,64} , {16,128} , {100,70} , {257,3} , {333,129} };
+        for ( int[] size : sizes )
+        {
+            for ( int count : new int[] { 0 , 1 , 2 , 50 , 2000 } ) {
+                assertSameTree( size[0] , size[1] , count , rnd );
+            }
+        }
+    }
+
+    public void testDuplicatesKeepLastValue()
+    {
+        final QuadTree<Integer> tree = QuadTree.bulkLoad( 10 , 10 , new int[] {3,5,3} , new int[] {4,5,4} , new Integer[] {1,2,3} );
+        assertEquals( Integer.valueOf( 3 ) , tree.getValue( 3 , 4 ).getValue() );
+        assertEquals( Integer.valueOf( 2 ) , tree.getValue( 5 , 5 ).getValue() );
+    }
+
+    public void testPointOutsideOfTree()
+    {
+        try {
+            QuadTree.bulkLoad( 10 , 10 , new int[] {10} , new int[] {0} , new Integer[] {1} );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    private static void assertSameTree(int width,int height,int count,Random rnd)
+    {
+        final int[] xs = new int[ count ];
+        final int[] ys = new int[ count ];
+        final Integer[] values = new Integer[ count ];
+        final QuadTree<Integer> expected = new QuadTree<Integer>( width , height );
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            xs[i] = rnd.nextInt( width );
+            ys[i] = rnd.nextInt( height );
+            values[i] = rnd.nextInt( 1000 );
+            expected.store( xs[i] , ys[i] , values[i] );
+        }
+        final QuadTree<Integer> actual = QuadTree.bulkLoad( width , height , xs , ys , values );
+        assertEquals( width+" x "+height+", "+count+" points" , dump( expected ) , dump( actual ) );
+    }
+
+    private static List<String> dump(QuadTree<Integer> tree)
+    {
+        final List<String> result = new ArrayList<>();
+        tree.visitPreOrder( new IVisitor<Integer>() {
+
+            @Override
+            public boolean visit(QuadNode<Integer> node, int currentDepth) {
+                result.add( currentDepth+": "+node );
+                return true;
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.QuadTree.IVisitor;
+import de.codesourcery.sandbox.pathfinder.QuadTree.QuadLeafNode;
+import de.codesourcery.sandbox.pathfinder.QuadTree.QuadNode;
+
+public class QuadTreeUpdateTest extends TestCase
+{
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    public void testRemoveMissingCell()
+    {
+        final QuadTree<Integer> tree = new QuadTree<Integer>( WIDTH , HEIGHT );
+        assertFalse( tree.remove( 5 , 5 ) );
+        tree.store( 5 , 5 , 1 );
+        assertFalse( tree.remove( 6 , 5 ) );
+        assertFalse( tree.remove( WIDTH , 5 ) );
+        assertTrue( tree.remove( 5 , 5 ) );
+        assertFalse( tree.remove( 5 , 5 ) );
+        assertEquals( 1 , dump( tree ).size() );
+    }
+
+    public void testRemoveCollapsesNodes()
+    {
+        final QuadTree<Integer> tree = new QuadTree<Integer>( WIDTH , HEIGHT );
+        tree.store( 0 , 0 , 1 );
+        tree.store( 1 , 1 , 2 );
+        tree.store( 2 , 0 , 3 );
+        assertTrue( dump( tree ).size() > 4 );
+
+        assertTrue( tree.remove( 1 , 1 ) );
+        assertTrue( tree.remove( 2 , 0 ) );
+        // only the root and the remaining leaf are left
+        assertEquals( dump( tree( new int[][] { {0,0,1} } ) ) , dump( tree ) );
+    }
+
+    public void testRandomUpdatesMatchRebuiltTree()
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final QuadTree<Integer> tree = new QuadTree<Integer>( WIDTH , HEIGHT );
+        final Map<Integer,Integer> cells = new LinkedHashMap<>();
+        for ( int i = 0 ; i < 5000 ; i++ )
+        {
+            final int x = rnd.nextInt( WIDTH );
+            final int y = rnd.nextInt( HEIGHT );
+            final Integer cell = y * WIDTH + x;
+            switch( rnd.nextInt( 3 ) )
+            {
+                case 0:
+                    tree.store( x , y , i );
+                    cells.put( cell , i );
+                    break;
+                case 1:
+                    assertEquals( cells.remove( cell ) != null , tree.remove( x , y ) );
+                    break;
+                default:
+                    // mostly short moves, like entities do
+                    final int newX = Math.max( 0 , Math.min( WIDTH - 1 , x + rnd.nextInt( 5 ) - 2 ) );
+                    final int newY = Math.max( 0 , Math.min( HEIGHT - 1 , y + rnd.nextInt( 5 ) - 2 ) );
+                    final Integer value = cells.remove( cell );
+                    assertEquals( value != null , tree.move( x , y , newX , newY ) );
+                    if ( value != null ) {
+                        cells.put( newY * WIDTH + newX , value );
+                    }
+            }
+        }
+
+        final List<int[]> expected = new ArrayList<>();
+        for ( Map.Entry<Integer,Integer> entry : cells.entrySet() ) {
+            expected.add( new int[] { entry.getKey() % WIDTH , entry.getKey() / WIDTH , entry.getValue() } );
+        }
+        // the tree's shape does not depend on the order of the stores
+        assertEquals( dump( tree( expected.toArray( new int[ expected.size() ][] ) ) ) , dump( tree ) );
+    }
+
+    public void testMoveWithinQuadrantUpdatesLeafInPlace()
+    {
+        final QuadTree<Integer> tree = new QuadTree<Integer>( WIDTH , HEIGHT );
+        tree.store( 10 , 10 , 1 );
+        tree.store( 90 , 60 , 2 );
+        final QuadLeafNode<Integer> leaf = tree.getValue( 10 , 10 );
+
+        assertTrue( tree.move( 10 , 10 , 20 , 30 ) );
+        assertSame( leaf , tree.getValue( 20 , 30 ) );
+        assertEquals( 20 , leaf.x1 );
+        assertEquals( 30 , leaf.y1 );
+        assertEquals( dump( tree( new int[][] { {20,30,1} , {90,60,2} } ) ) , dump( tree ) );
+    }
+
+    public void testMoveOntoOtherLeafOverwrites()
+    {
+        final QuadTree<Integer> tree = tree( new int[][] { {1,1,1} , {2,2,2} , {60,60,3} } );
+        assertTrue( tree.move( 1 , 1 , 60 , 60 ) );
+        assertEquals( dump( tree( new int[][] { {2,2,2} , {60,60,1} } ) ) , dump( tree ) );
+    }
+
+    public void testMoveOutsideOfTree()
+    {
+        final QuadTree<Integer> tree = tree( new int[][] { {1,1,1} } );
+        try {
+            tree.move( 1 , 1 , WIDTH , 1 );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+        assertEquals( Integer.valueOf( 1 ) , tree.getValue( 1 , 1 ).getValue() );
+        assertFalse( tree.move( 2 , 2 , 3 , 3 ) );
+    }
+
+    private static QuadTree<Integer> tree(int[][] points)
+    {
+        final QuadTree<Integer> tree = new QuadTree<Integer>( WIDTH , HEIGHT );
+        for ( int[] point : points ) {
+            tree.store( point[0] , point[1] , point[2] );
+        }
+        return tree;
+    }
+
+    private static List<String> dump(QuadTree<Integer> tree)
+    {
+        final List<String> result = new ArrayList<>();
+        tree.visitPreOrder( new IVisitor<Integer>() {
+
+            @Override
+            public boolean visit(QuadNode<Integer> node, int currentDepth) {
+                result.add( currentDepth+": "+node );
+                return true;
+            }
+        });
+        return result;
+    }
+}
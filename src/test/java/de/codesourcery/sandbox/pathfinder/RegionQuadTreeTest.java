@@ -0,0 +1,71 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.QuadTreeScene.Mode;
+
+public class RegionQuadTreeTest extends TestCase
+{
+    public void testMatchesByteScene() 
+    {
+        final Random rnd = new Random(0xdeadbeef);
+        final QuadTreeScene scene = new QuadTreeScene(100,70,Mode.REGIONS);
+        final Scene expected = new Scene(100,70);
+        for ( int i = 0 ; i < 5000 ; i++ ) 
+        {
+            final int x = rnd.nextInt( 100 );
+            final int y = rnd.nextInt( 70 );
+            final byte status = rnd.nextBoolean() ? IScene.FREE : IScene.OCCUPIED;
+            scene.write( x , y , status );
+            expected.write( x , y , status );
+        }
+        for ( int y = 0 ; y < 70 ; y++ ) 
+        {
+            for ( int x = 0 ; x < 100 ; x++ ) 
+            {
+                assertEquals( expected.read( x , y ) , scene.read( x , y ) );
+                final Rec2 square = scene.getFreeSquare( x , y );
+                if ( ! expected.isFree( x , y ) ) {
+                    assertNull( square );
+                    continue;
+                }
+                assertTrue( square.x1 <= x && x < square.x2 && square.y1 <= y && y < square.y2 );
+                for ( int sy = square.y1 ; sy < square.y2 ; sy++ ) {
+                    for ( int sx = square.x1 ; sx < square.x2 ; sx++ ) {
+                        assertTrue( expected.isFree( sx , sy ) );
+                    }
+                }
+            }
+        }
+    }
+
+    public void testUniformRegionsAreMerged() 
+    {
+        final RegionQuadTree tree = new RegionQuadTree(256,256);
+        for ( int y = 64 ; y < 128 ; y++ ) {
+            for ( int x = 0 ; x < 64 ; x++ ) {
+                tree.set( x , y , true );
+            }
+        }
+        // root, one inner node for the upper left 128x128 quadrant and their 7 leaves
+        assertEquals( 9 , tree.getNodeCount() );
+        assertEquals( new Rec2(64,0,128,64) , tree.getFreeRegion( 100 , 10 ) );
+        assertEquals( new Rec2(128,0,256,128) , tree.getFreeRegion( 200 , 10 ) );
+
+        tree.set( 10 , 70 , false );
+        assertTrue( tree.getNodeCount() > 9 );
+        assertFalse( tree.isOccupied( 10 , 70 ) );
+        assertTrue( tree.isOccupied( 11 , 70 ) );
+
+        tree.set( 10 , 70 , true );
+        assertEquals( 9 , tree.getNodeCount() );
+
+        for ( int y = 64 ; y < 128 ; y++ ) {
+            for ( int x = 0 ; x < 64 ; x++ ) {
+                tree.set( x , y , false );
+            }
+        }
+        assertEquals( 1 , tree.getNodeCount() );
+    }
+}
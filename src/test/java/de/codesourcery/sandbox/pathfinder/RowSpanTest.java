@@ -0,0 +1,174 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.IScene.IRowSpanVisitor;
+import de.codesourcery.sandbox.pathfinder.MappedScene.Layout;
+
+public class RowSpanTest extends TestCase
+{
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 140;
+
+    private File file;
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if ( file != null ) {
+            file.delete();
+        }
+    }
+
+    public void testByteScene()
+    {
+        final Scene scene = new Scene( WIDTH , HEIGHT );
+        fill( scene );
+        // adjacent runs with different values are separate spans
+        scene.write( 10 , 3 , (byte) 2 );
+        scene.write( 11 , 3 , (byte) 2 );
+        scene.write( 12 , 3 , IScene.OCCUPIED );
+        assertSpans( scene );
+        assertTrue( collect( scene , 3 , 4 ).contains( new RowSpan( 3 , 10 , 12 , (byte) 2 ) ) );
+    }
+
+    public void testPackedScene() {
+        assertSpans( fill( new PackedScene( WIDTH , HEIGHT ) ) );
+    }
+
+    public void testChunkedScene() {
+        assertSpans( fill( new ChunkedScene( WIDTH , HEIGHT ) ) );
+    }
+
+    public void testQuadTreeScene() {
+        assertSpans( fill( new QuadTreeScene( WIDTH , HEIGHT , QuadTreeScene.Mode.REGIONS ) ) );
+    }
+
+    public void testMappedScene() throws Exception
+    {
+        file = File.createTempFile( "scene" , ".map" );
+        for ( Layout layout : Layout.values() )
+        {
+            final MappedScene scene = MappedScene.create( file , WIDTH , HEIGHT , layout );
+            try {
+                assertSpans( fill( scene ) );
+            } finally {
+                scene.close();
+            }
+        }
+    }
+
+    public void testParallelStream()
+    {
+        final IScene scene = fill( new PackedScene( WIDTH , HEIGHT ) );
+        final List<RowSpan> expected = collect( scene , 0 , HEIGHT );
+        assertEquals( expected , RowSpan.stream( scene ).collect( Collectors.toList() ) );
+        assertEquals( expected , RowSpan.stream( scene ).parallel().collect( Collectors.toList() ) );
+
+        int occupied = 0;
+        for ( int y = 0 ; y < HEIGHT ; y++ ) {
+            for ( int x = 0 ; x < WIDTH ; x++ ) {
+                occupied += scene.isFree( x , y ) ? 0 : 1;
+            }
+        }
+        assertEquals( occupied , RowSpan.stream( scene ).parallel().mapToInt( RowSpan::length ).sum() );
+    }
+
+    public void testTryAdvance()
+    {
+        final IScene scene = fill( new Scene( WIDTH , HEIGHT ) );
+        final RowSpanSpliterator spliterator = new RowSpanSpliterator( scene , 20 , 60 );
+        final List<RowSpan> actual = new ArrayList<>();
+        // mix single steps and bulk traversal
+        for ( int i = 0 ; i < 25 ; i++ ) {
+            assertTrue( spliterator.tryAdvance( actual::add ) );
+        }
+        spliterator.forEachRemaining( actual::add );
+        assertFalse( spliterator.tryAdvance( actual::add ) );
+        assertEquals( collect( scene , 20 , 60 ) , actual );
+    }
+
+    private static IScene fill(IScene scene)
+    {
+        final Random rnd = new Random(0x5eed);
+        for ( int y = 0 ; y < scene.getHeight() ; y++ )
+        {
+            for ( int x = 0 ; x < scene.getWidth() ; x++ )
+            {
+                if ( rnd.nextFloat() < 0.3f ) {
+                    scene.write( x , y , IScene.OCCUPIED );
+                }
+            }
+        }
+        // runs crossing 64-bit words / chunks, up to the right border
+        for ( int x = 30 ; x < scene.getWidth() ; x++ ) {
+            scene.write( x , 5 , IScene.OCCUPIED );
+        }
+        for ( int x = 0 ; x < scene.getWidth() ; x++ ) {
+            scene.write( x , 7 , IScene.OCCUPIED );
+        }
+        // a completely occupied chunk
+        for ( int y = 64 ; y < 128 ; y++ ) {
+            for ( int x = 64 ; x < 128 ; x++ ) {
+                scene.write( x , y , IScene.OCCUPIED );
+            }
+        }
+        return scene;
+    }
+
+    private static void assertSpans(IScene scene)
+    {
+        assertEquals( expectedSpans( scene , 0 , HEIGHT ) , collect( scene , 0 , HEIGHT ) );
+        assertEquals( expectedSpans( scene , 63 , 65 ) , collect( scene , 63 , 65 ) );
+        assertTrue( collect( scene , 10 , 10 ).isEmpty() );
+
+        final List<RowSpan> all = new ArrayList<>();
+        scene.visitOccupiedSpans( new IRowSpanVisitor() {
+
+            @Override
+            public void visit(int y, int startX, int endX, byte cellStatus) {
+                all.add( new RowSpan( y , startX , endX , cellStatus ) );
+            }
+        });
+        assertEquals( expectedSpans( scene , 0 , HEIGHT ) , all );
+    }
+
+    private static List<RowSpan> collect(IScene scene,int firstRow,int endRow)
+    {
+        final List<RowSpan> result = new ArrayList<>();
+        scene.visitOccupiedSpans( firstRow , endRow , new IRowSpanVisitor() {
+
+            @Override
+            public void visit(int y, int startX, int endX, byte cellStatus) {
+                result.add( new RowSpan( y , startX , endX , cellStatus ) );
+            }
+        });
+        return result;
+    }
+
+    private static List<RowSpan> expectedSpans(IScene scene,int firstRow,int endRow)
+    {
+        final List<RowSpan> result = new ArrayList<>();
+        for ( int y = firstRow ; y < endRow ; y++ )
+        {
+            int x = 0;
+            while ( x < scene.getWidth() )
+            {
+                final byte value = scene.read( x , y );
+                final int start = x;
+                while ( x < scene.getWidth() && scene.read( x , y ) == value ) {
+                    x++;
+                }
+                if ( value != IScene.FREE ) {
+                    result.add( new RowSpan( y , start , x , value ) );
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.SceneFormat.ISceneFactory;
+
+public class SceneFormatTest extends TestCase
+{
+    private static final ISceneFactory SCENE_FACTORY = new ISceneFactory() {
+
+        @Override
+        public IScene createScene(int width, int height) {
+            return new Scene(width,height);
+        }
+    };
+
+    private static final ISceneFactory PACKED_SCENE_FACTORY = new ISceneFactory() {
+
+        @Override
+        public IScene createScene(int width, int height) {
+            return new PackedScene(width,height);
+        }
+    };
+
+    public void testRoundTrip() throws IOException 
+    {
+        final IScene scene = PathFinderTest.randomScene( new Random(0xdeadbeef) , 300 , 130 , 0.3f );
+        final byte[] data = write( scene , 16 );
+        assertSameCells( scene , SceneFormat.read( new ByteArrayInputStream( data ) , SCENE_FACTORY ) );
+        assertSameCells( scene , SceneFormat.read( new ByteArrayInputStream( data ) , PACKED_SCENE_FACTORY ) );
+    }
+
+    public void testParallelDecoding() throws IOException 
+    {
+        final IScene scene = PathFinderTest.randomScene( new Random(0xcafebabe) , 200 , 500 , 0.1f );
+        final byte[] data = write( scene , 8 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try {
+            assertSameCells( scene , SceneFormat.read( new ByteArrayInputStream( data ) , SCENE_FACTORY , executor ) );
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testEmptySceneIsSmall() throws IOException 
+    {
+        // a single two-byte run per row plus chunk headers
+        final byte[] data = write( new Scene(1000,1000) , 64 );
+        assertTrue( data.length < 3000 );
+    }
+
+    public void testDetectsCorruptedChunk() throws IOException 
+    {
+        final IScene scene = PathFinderTest.randomScene( new Random(0x1234) , 50 , 50 , 0.3f );
+        final byte[] data = write( scene , 10 );
+        data[ data.length - 5 ] ^= 0x40;
+        try {
+            SceneFormat.read( new ByteArrayInputStream( data ) , SCENE_FACTORY );
+            fail("Should have failed");
+        } 
+        catch(IOException e) {
+            // ok
+        }
+    }
+
+    public void testDetectsTruncatedStream() throws IOException 
+    {
+        final IScene scene = PathFinderTest.randomScene( new Random(0x1234) , 50 , 50 , 0.3f );
+        final byte[] data = write( scene , 10 );
+        try {
+            SceneFormat.read( new ByteArrayInputStream( data , 0 , data.length - 1 ) , SCENE_FACTORY );
+            fail("Should have failed");
+        } 
+        catch(IOException e) {
+            // ok
+        }
+    }
+
+    public void testRejectsOversizedChunk() throws IOException 
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream dataOut = new DataOutputStream( out );
+        for ( int value : new int[] { SceneFormat.MAGIC , SceneFormat.FORMAT_VERSION , 10 , 1 , 64 , 1 } ) {
+            dataOut.writeInt( value );
+        }
+        // first row, row count, payload length, checksum
+        for ( int value : new int[] { 0 , 1 , Integer.MAX_VALUE - 8 , 0 } ) {
+            dataOut.writeInt( value );
+        }
+        try {
+            SceneFormat.read( new ByteArrayInputStream( out.toByteArray() ) , SCENE_FACTORY );
+            fail("Should have failed");
+        } 
+        catch(IOException e) {
+            // ok
+        }
+    }
+
+    private static byte[] write(IScene scene,int rowsPerChunk) throws IOException 
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SceneFormat.write( scene , out , rowsPerChunk );
+        return out.toByteArray();
+    }
+
+    private static void assertSameCells(IScene expected,IScene actual) 
+    {
+        assertEquals( expected.getWidth() , actual.getWidth() );
+        assertEquals( expected.getHeight() , actual.getHeight() );
+        for ( int y = 0 ; y < expected.getHeight() ; y++ ) {
+            for ( int x = 0 ; x < expected.getWidth() ; x++ ) {
+                assertEquals( expected.isFree( x , y ) , actual.isFree( x , y ) );
+            }
+        }
+    }
+}
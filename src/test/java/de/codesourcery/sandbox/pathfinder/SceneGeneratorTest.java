@@ -0,0 +1,95 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import junit.framework.TestCase;
+
+public class SceneGeneratorTest extends TestCase
+{
+    public void testSameSeedSameScene() 
+    {
+        for ( SceneGenerator generator : SceneGenerator.values() ) 
+        {
+            final IScene scene1 = generator.generate( new Scene(101,73) , 42 );
+            final IScene scene2 = generator.generate( new PackedScene(101,73) , 42 );
+            final IScene scene3 = generator.generate( new QuadTreeScene(101,73,QuadTreeScene.Mode.REGIONS) , 42 );
+            for ( int y = 0 ; y < 73 ; y++ ) 
+            {
+                for ( int x = 0 ; x < 101 ; x++ ) 
+                {
+                    assertEquals( generator.name() , scene1.isFree( x , y ) , scene2.isFree( x , y ) );
+                    assertEquals( generator.name() , scene1.isFree( x , y ) , scene3.isFree( x , y ) );
+                }
+            }
+        }
+    }
+
+    public void testNoiseDensity() 
+    {
+        final IScene scene = SceneGenerator.NOISE_25.generate( new Scene(200,200) , 1 );
+        final float density = occupied( scene ) / (float) ( 200 * 200 );
+        assertEquals( 0.25f , density , 0.02f );
+        assertEquals( 0 , occupied( SceneGenerator.OPEN.generate( new Scene(50,50) , 1 ) ) );
+    }
+
+    public void testMazeAndRoomsAreConnected() 
+    {
+        for ( SceneGenerator generator : new SceneGenerator[] { SceneGenerator.MAZE , SceneGenerator.ROOMS } ) 
+        {
+            for ( long seed = 0 ; seed < 5 ; seed++ ) 
+            {
+                final IScene scene = generator.generate( new Scene(120,80) , seed );
+                final int free = 120 * 80 - occupied( scene );
+                assertTrue( free > 0 );
+                assertEquals( generator.name() , free , reachableCells( scene ) );
+            }
+        }
+    }
+
+    private static int occupied(IScene scene) 
+    {
+        final int[] count = { 0 };
+        scene.visitOccupiedCells( new IScene.ISceneVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte cellStatus) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Counts the free cells 4-connected to the first free cell.
+     */
+    private static int reachableCells(IScene scene) 
+    {
+        final int width = scene.getWidth();
+        final int height = scene.getHeight();
+        final boolean[] seen = new boolean[ width * height ];
+        final int[] queue = new int[ width * height ];
+        int head = 0;
+        int tail = 0;
+        for ( int i = 0 ; i < width * height && tail == 0 ; i++ ) 
+        {
+            if ( scene.isFree( i % width , i / width ) ) {
+                seen[i] = true;
+                queue[ tail++ ] = i;
+            }
+        }
+        final int[] dx = {1,-1,0,0};
+        final int[] dy = {0,0,1,-1};
+        while ( head < tail ) 
+        {
+            final int cell = queue[ head++ ];
+            for ( int d = 0 ; d < 4 ; d++ ) 
+            {
+                final int x = cell % width + dx[d];
+                final int y = cell / width + dy[d];
+                if ( x >= 0 && y >= 0 && x < width && y < height && ! seen[ y * width + x ] && scene.isFree( x , y ) ) {
+                    seen[ y * width + x ] = true;
+                    queue[ tail++ ] = y * width + x;
+                }
+            }
+        }
+        return tail;
+    }
+}
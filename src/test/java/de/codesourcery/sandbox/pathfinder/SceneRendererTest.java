@@ -0,0 +1,135 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.SceneRenderer.MarkerType;
+import de.codesourcery.sandbox.pathfinder.SceneRenderer.RenderMode;
+
+public class SceneRendererTest extends TestCase
+{
+    // scene spans several tiles, the last ones only partially
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 280;
+
+    private static final Dimension CANVAS = new Dimension( 2 * WIDTH , 2 * HEIGHT );
+
+    private IScene scene;
+    private SceneRenderer direct;
+    private SceneRenderer tiles;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        scene = PathFinderTest.randomScene( new Random(0x4242) , WIDTH , HEIGHT , 0.2f );
+        direct = new SceneRenderer( scene , null );
+        tiles = new SceneRenderer( scene , null );
+        tiles.setRenderMode( RenderMode.TILES );
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        tiles.dispose();
+    }
+
+    public void testInitialRendering() {
+        assertSameImage();
+    }
+
+    public void testWritesInvalidateTiles()
+    {
+        assertSameImage();
+        final Random rnd = new Random(0x1234);
+        for ( int i = 0 ; i < 20 ; i++ ) 
+        {
+            final int x = rnd.nextInt( WIDTH );
+            final int y = rnd.nextInt( HEIGHT );
+            scene.write( x , y , scene.isFree( x , y ) ? IScene.OCCUPIED : IScene.FREE );
+            assertSameImage();
+        }
+        // write along tile borders
+        scene.write( 255 , 255 , IScene.OCCUPIED );
+        scene.write( 256 , 256 , IScene.OCCUPIED );
+        scene.write( WIDTH - 1 , HEIGHT - 1 , IScene.OCCUPIED );
+        assertSameImage();
+    }
+
+    public void testMarkerChangesInvalidateOverlay()
+    {
+        for ( SceneRenderer renderer : new SceneRenderer[] { direct , tiles } ) {
+            renderer.addMarker( 10 , 20 , Color.GREEN , MarkerType.ENDPOINT );
+        }
+        assertSameImage();
+
+        final long[] ids = new long[2];
+        int i = 0;
+        for ( SceneRenderer renderer : new SceneRenderer[] { direct , tiles } ) {
+            ids[i++] = renderer.addMarker( 100 , 200 , Color.BLUE , MarkerType.REGULAR );
+        }
+        assertSameImage();
+
+        direct.clearMarker( ids[0] );
+        tiles.clearMarker( ids[1] );
+        assertSameImage();
+
+        direct.clearAllMarkers();
+        tiles.clearAllMarkers();
+        assertSameImage();
+    }
+
+    public void testSwitchBackToDirect()
+    {
+        tiles.setRenderMode( RenderMode.DIRECT );
+        scene.write( 1 , 1 , IScene.OCCUPIED );
+        assertSameImage();
+        assertEquals( RenderMode.DIRECT , tiles.getRenderMode() );
+    }
+
+    public void testRejectsNullPath()
+    {
+        try {
+            direct.addMarkers( (Path) null , Color.BLUE );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            direct.addMarkers( (PathFinder.PathNode) null , Color.BLUE );
+            fail("Should've failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    private void assertSameImage()
+    {
+        final BufferedImage expected = render( direct );
+        final BufferedImage actual = render( tiles );
+        for ( int y = 0 ; y < CANVAS.height ; y++ ) 
+        {
+            for ( int x = 0 ; x < CANVAS.width ; x++ ) 
+            {
+                if ( expected.getRGB( x , y ) != actual.getRGB( x , y ) ) {
+                    fail("Pixel ("+x+","+y+") differs, expected "+Integer.toHexString( expected.getRGB( x , y ) )+
+                            " but got "+Integer.toHexString( actual.getRGB( x , y ) ) );
+                }
+            }
+        }
+    }
+
+    private static BufferedImage render(SceneRenderer renderer)
+    {
+        final BufferedImage image = new BufferedImage( CANVAS.width , CANVAS.height , BufferedImage.TYPE_INT_RGB );
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            renderer.renderScene( CANVAS , graphics );
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+}
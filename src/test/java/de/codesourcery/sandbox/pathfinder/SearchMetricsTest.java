@@ -0,0 +1,127 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class SearchMetricsTest extends TestCase
+{
+    public void testStatistics() 
+    {
+        final Random rnd = new Random(0x5eed);
+        final IScene scene = PathFinderTest.randomScene( rnd , 80 , 60 , 0.25f );
+        final ArrayPathFinder finder = new ArrayPathFinder( scene , true );
+        final List<SearchStatistics> recorded = new ArrayList<>();
+        finder.setSearchListener( new ISearchListener() {
+
+            @Override
+            public void searchFinished(IPathFinder f, SearchStatistics statistics) 
+            {
+                assertSame( finder , f );
+                recorded.add( statistics );
+            }
+        });
+
+        for ( int i = 0 ; i < 30 ; i++ ) 
+        {
+            final PathNode path = finder.findPath( PathFinderTest.randomFreeCell( rnd , scene ) , PathFinderTest.randomFreeCell( rnd , scene ) );
+            assertEquals( i + 1 , recorded.size() );
+            final SearchStatistics stats = recorded.get( i );
+            assertEquals( path != null , stats.isPathFound() );
+            assertEquals( finder.getExpandedNodes() , stats.getExpandedNodes() );
+            assertTrue( stats.getGeneratedNodes() >= stats.getExpandedNodes() );
+            assertTrue( stats.getPeakOpenListSize() <= stats.getGeneratedNodes() );
+            // one heuristic evaluation per push
+            assertEquals( stats.getGeneratedNodes() + stats.getDuplicatePushes() , stats.getHeuristicCalls() );
+            assertTrue( stats.getWallTimeNanos() >= 0 );
+        }
+
+        finder.setSearchListener( null );
+        finder.findPath( new PathNode(0,0) , new PathNode(1,1) );
+        assertEquals( 30 , recorded.size() );
+    }
+
+    public void testLegacyPathFinderStatistics() 
+    {
+        final Random rnd = new Random(0x1e9a);
+        final IScene scene = PathFinderTest.randomScene( rnd , 40 , 30 , 0.25f );
+        final PathFinder finder = new PathFinder( scene , true );
+        final List<SearchStatistics> recorded = new ArrayList<>();
+        // through the interface, like Main and PathService do
+        ((IPathFinder) finder).setSearchListener( new ISearchListener() {
+
+            @Override
+            public void searchFinished(IPathFinder f, SearchStatistics statistics) {
+                recorded.add( statistics );
+            }
+        });
+
+        for ( int i = 0 ; i < 20 ; i++ ) 
+        {
+            final PathNode path = finder.findPath( PathFinderTest.randomFreeCell( rnd , scene ) , PathFinderTest.randomFreeCell( rnd , scene ) );
+            assertEquals( i + 1 , recorded.size() );
+            final SearchStatistics stats = recorded.get( i );
+            assertEquals( path != null , stats.isPathFound() );
+            assertEquals( finder.getExpandedNodes() , stats.getExpandedNodes() );
+            assertTrue( stats.getPeakOpenListSize() <= stats.getGeneratedNodes() );
+            assertTrue( stats.getHeuristicCalls() >= stats.getGeneratedNodes() + stats.getDuplicatePushes() );
+        }
+    }
+
+    public void testHistogram() 
+    {
+        final Histogram histogram = new Histogram();
+        assertEquals( 0 , histogram.snapshot().getP99() );
+        for ( int i = 0 ; i < 100 ; i++ ) {
+            histogram.record( i );
+        }
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals( 100 , snapshot.getCount() );
+        assertEquals( 0 , snapshot.getMin() );
+        assertEquals( 99 , snapshot.getMax() );
+        assertEquals( 49.5 , snapshot.getMean() , 0.001 );
+        assertEquals( 63 , snapshot.getP50() );
+        assertEquals( 99 , snapshot.getP99() );
+        assertEquals( 1 , snapshot.getBuckets()[0] );
+        assertEquals( 32 , snapshot.getBuckets()[6] );
+
+        histogram.reset();
+        assertEquals( 0 , histogram.snapshot().getCount() );
+    }
+
+    public void testJmxExport() throws Exception 
+    {
+        final SearchMetrics metrics = new SearchMetrics();
+        final ObjectName name = metrics.register( new ObjectName( SearchMetrics.DEFAULT_OBJECT_NAME+",name=test" ) );
+        try 
+        {
+            final IScene scene = new Scene(20,20);
+            final ArrayPathFinder finder = new ArrayPathFinder( scene );
+            finder.setSearchListener( metrics );
+            finder.findPath( new PathNode(0,0) , new PathNode(19,19) );
+            scene.write( 5 , 5 , IScene.OCCUPIED );
+            finder.findPath( new PathNode(0,0) , new PathNode(5,5) );
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals( 2L , server.getAttribute( name , "QueryCount" ) );
+            assertEquals( 1L , server.getAttribute( name , "NoPathCount" ) );
+            final CompositeData expanded = (CompositeData) server.getAttribute( name , "ExpandedNodes" );
+            assertEquals( 2L , expanded.get( "count" ) );
+            assertEquals( metrics.getExpandedNodes().getMax() , expanded.get( "max" ) );
+
+            server.invoke( name , "reset" , new Object[0] , new String[0] );
+            assertEquals( 0 , metrics.getQueryCount() );
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+    }
+}
@@ -0,0 +1,211 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.IScene.ISceneListener;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+import de.codesourcery.sandbox.pathfinder.PathService.PathQuery;
+
+public class SnapshotTest extends TestCase
+{
+    public void testChunkedSceneSnapshotIsStable()
+    {
+        final Random rnd = new Random(0xbeef);
+        final ChunkedScene scene = new ChunkedScene( 200 , 150 );
+        randomWrites( scene , rnd , 3000 );
+
+        final IScene snapshot = scene.snapshot();
+        final Scene expected = Scene.readOnlyCopy( scene );
+        assertSame( snapshot , scene.snapshot() );
+        assertSame( snapshot , snapshot.snapshot() );
+        assertEquals( scene.getVersion() , snapshot.getVersion() );
+
+        randomWrites( scene , rnd , 3000 );
+        assertSameCells( expected , snapshot );
+        assertNotSame( snapshot , scene.snapshot() );
+        assertSameCells( scene , scene.snapshot() );
+
+        try {
+            snapshot.write( 0 , 0 , IScene.OCCUPIED );
+            fail("Should've failed");
+        } catch(IllegalStateException e) {
+            // ok
+        }
+    }
+
+    public void testUnchangedChunksAreShared()
+    {
+        final ChunkedScene scene = new ChunkedScene( 256 , 256 );
+        scene.write( 10 , 10 , IScene.OCCUPIED );
+        scene.write( 100 , 100 , IScene.OCCUPIED );
+        final ChunkedScene snapshot = (ChunkedScene) scene.snapshot();
+
+        scene.write( 11 , 10 , IScene.OCCUPIED );
+        assertFalse( scene.isSameChunk( snapshot , 0 , 0 ) );
+        assertTrue( scene.isSameChunk( snapshot , 1 , 1 ) );
+        assertTrue( snapshot.isFree( 11 , 10 ) );
+        assertFalse( scene.isFree( 11 , 10 ) );
+    }
+
+    public void testByteSceneSnapshot()
+    {
+        final Scene scene = new Scene( 50 , 40 );
+        scene.write( 3 , 4 , (byte) 5 );
+        final IScene snapshot = scene.snapshot();
+        scene.write( 3 , 4 , IScene.FREE );
+        assertEquals( 5 , snapshot.read( 3 , 4 ) );
+        assertSame( snapshot , snapshot.snapshot() );
+    }
+
+    public void testSnapshotViewReportsChangedChunks()
+    {
+        final ChunkedScene scene = new ChunkedScene( 200 , 150 );
+        final SnapshotView view = new SnapshotView( scene );
+        final List<int[]> changes = new ArrayList<>();
+        view.addSceneListener( new ISceneListener() {
+
+            @Override
+            public void cellsChanged(IScene scene, int x, int y, int width, int height) {
+                changes.add( new int[] { x , y , width , height } );
+            }
+        });
+
+        scene.write( 130 , 140 , IScene.OCCUPIED );
+        assertTrue( view.isFree( 130 , 140 ) );
+        assertTrue( changes.isEmpty() );
+
+        assertTrue( view.refresh() );
+        assertFalse( view.isFree( 130 , 140 ) );
+        assertEquals( 1 , changes.size() );
+        assertEquals( "[128, 128, 64, 22]" , Arrays.toString( changes.get(0) ) );
+        assertFalse( view.refresh() );
+    }
+
+    public void testConcurrentReaderSeesStableSnapshot() throws Exception
+    {
+        final ChunkedScene scene = new ChunkedScene( 300 , 300 );
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                randomWrites( scene , new Random(0x1234) , 200000 );
+            }
+        };
+        writer.start();
+        try 
+        {
+            while ( writer.isAlive() && failure.get() == null ) 
+            {
+                final IScene snapshot = scene.snapshot();
+                final Scene copy = Scene.readOnlyCopy( snapshot );
+                Thread.yield();
+                try {
+                    assertSameCells( copy , snapshot );
+                } catch(Throwable t) {
+                    failure.set( t );
+                }
+            }
+        } finally {
+            writer.join();
+        }
+        if ( failure.get() != null ) {
+            throw new AssertionError( failure.get() );
+        }
+    }
+
+    public void testViewForwardsAreaChecks()
+    {
+        final Random rnd = new Random(0xa5ea);
+        final ChunkedScene scene = new ChunkedScene( 150 , 100 );
+        randomWrites( scene , rnd , 200 );
+        final SnapshotView chunkedView = new SnapshotView( scene );
+        final Scene plain = new Scene( 150 , 100 );
+        scene.visitOccupiedCells( new IScene.ISceneVisitor() {
+
+            @Override
+            public void visit(int x, int y, byte cellStatus) {
+                plain.write( x , y , cellStatus );
+            }
+        });
+        final SnapshotView plainView = new SnapshotView( plain );
+        assertTrue( chunkedView.hasChunkSummaries() );
+        assertFalse( plainView.hasChunkSummaries() );
+        for ( int i = 0 ; i < 500 ; i++ )
+        {
+            final int x = rnd.nextInt( 150 );
+            final int y = rnd.nextInt( 100 );
+            final int w = 1 + rnd.nextInt( 40 );
+            final int h = 1 + rnd.nextInt( 40 );
+            assertEquals( scene.isAreaFree( x , y , w , h ) , chunkedView.isAreaFree( x , y , w , h ) );
+            assertEquals( scene.isAreaFree( x , y , w , h ) , plainView.isAreaFree( x , y , w , h ) );
+        }
+    }
+
+    public void testPathServiceWithSnapshotIsolation() throws Exception
+    {
+        final ChunkedScene scene = new ChunkedScene( 100 , 100 );
+        final PathService service = new PathService( scene , SearchMode.ASTAR , 2 , true );
+        try 
+        {
+            final PathNode start = new PathNode( 0 , 50 );
+            final PathNode target = new PathNode( 99 , 50 );
+            assertNotNull( service.findPath( start , target ).get() );
+
+            // wall across the scene
+            for ( int y = 0 ; y < 100 ; y++ ) {
+                scene.write( 50 , y , IScene.OCCUPIED );
+            }
+            assertNull( service.findPath( start , target ).get() );
+        } finally {
+            service.shutdown( 10 , TimeUnit.SECONDS );
+        }
+    }
+
+    public void testPathServiceSharesOneSnapshotPerBatch() throws Exception
+    {
+        final IScene scene = new Scene( 60 , 60 );
+        final PathService service = new PathService( scene , SearchMode.ARRAY_ASTAR , 4 , true );
+        try 
+        {
+            final List<PathQuery> queries = new ArrayList<>();
+            for ( int i = 0 ; i < 50 ; i++ ) {
+                queries.add( new PathQuery( new PathNode( 0 , i ) , new PathNode( 59 , 59 - i ) ) );
+            }
+            final List<Future<PathNode>> results = service.findPaths( queries , false );
+            // not visible to the batch, the snapshot was taken on submission
+            for ( int y = 0 ; y < 60 ; y++ ) {
+                scene.write( 30 , y , IScene.OCCUPIED );
+            }
+            for ( Future<PathNode> result : results ) {
+                assertNotNull( result.get( 10 , TimeUnit.SECONDS ) );
+            }
+            assertNull( service.findPath( new PathNode( 0 , 0 ) , new PathNode( 59 , 59 ) ).get( 10 , TimeUnit.SECONDS ) );
+        } finally {
+            service.shutdown( 10 , TimeUnit.SECONDS );
+        }
+    }
+
+    private static void randomWrites(IScene scene,Random rnd,int count)
+    {
+        for ( int i = 0 ; i < count ; i++ ) {
+            scene.write( rnd.nextInt( scene.getWidth() ) , rnd.nextInt( scene.getHeight() ) , rnd.nextBoolean() ? IScene.OCCUPIED : IScene.FREE );
+        }
+    }
+
+    private static void assertSameCells(IScene expected,IScene actual)
+    {
+        for ( int y = 0 ; y < expected.getHeight() ; y++ ) {
+            for ( int x = 0 ; x < expected.getWidth() ; x++ ) {
+                assertEquals( "Cell "+x+","+y , expected.isFree( x , y ) , actual.isFree( x , y ) );
+            }
+        }
+    }
+}
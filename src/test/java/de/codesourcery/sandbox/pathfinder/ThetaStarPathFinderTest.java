@@ -0,0 +1,51 @@
+package de.codesourcery.sandbox.pathfinder;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.sandbox.pathfinder.PathFinder.PathNode;
+
+public class ThetaStarPathFinderTest extends TestCase
+{
+    public void testStraightLineInEmptyScene() 
+    {
+        final IScene scene = new Scene(50,50);
+        final PathNode path = new ThetaStarPathFinder( scene ).findPath( new PathNode(2,3) , new PathNode(40,20) );
+        assertEquals( 2 , path.getNodeCount() );
+        assertEquals( (int) Math.round( 10 * Math.sqrt( 38 * 38 + 17 * 17 ) ) , path.g() );
+    }
+
+    public void testPathsAreShorterThanGridPaths() 
+    {
+        final Random rnd = new Random(0xcafebabe);
+        for ( int i = 0 ; i < 10 ; i++ ) 
+        {
+            final IScene scene = PathFinderTest.randomScene( rnd , 60 , 40 , 0.2f );
+            final ThetaStarPathFinder finder = new ThetaStarPathFinder( scene );
+            final ArrayPathFinder gridFinder = new ArrayPathFinder( scene , true );
+            for ( int j = 0 ; j < 20 ; j++ ) 
+            {
+                final PathNode start = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode target = PathFinderTest.randomFreeCell( rnd , scene );
+                final PathNode expected = gridFinder.findPath( start , target );
+                final PathNode path = finder.findPath( start , target );
+                if ( expected == null ) {
+                    assertNull( path );
+                    continue;
+                }
+                assertNotNull( path );
+                assertTrue( path.g() <= expected.g() );
+                assertTrue( path.getNodeCount() <= expected.getNodeCount() );
+                assertEquals( new Vec2( target.x , target.y ) , path );
+
+                PathNode current = path;
+                while ( current.parent() != null ) 
+                {
+                    assertTrue( scene.hasLineOfSight( current.parent().x , current.parent().y , current.x , current.y ) );
+                    current = current.parent();
+                }
+                assertEquals( new Vec2( start.x , start.y ) , current );
+            }
+        }
+    }
+}